@@ -7,11 +7,13 @@ import spark.Spark;
 import test.APIFunctionalTest;
 import test.AccountFunctionalTest;
 import test.CustomerFunctionalTest;
+import test.JournalFunctionalTest;
 import test.TransactionFunctionalTest;
+import test.TransferConcurrencyFunctionalTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({APIFunctionalTest.class, AccountFunctionalTest.class, CustomerFunctionalTest.class,
-        TransactionFunctionalTest.class})
+        TransactionFunctionalTest.class, TransferConcurrencyFunctionalTest.class, JournalFunctionalTest.class})
 public class FunctionalTest {
     @BeforeClass
     public static void setUp() throws InterruptedException {
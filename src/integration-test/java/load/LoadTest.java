@@ -0,0 +1,313 @@
+package load;
+
+import app.Application;
+import app.constants.RouteConstants;
+import app.metrics.Histogram;
+import app.models.Account;
+import app.models.Transaction;
+import app.transformers.ObjectTransformer;
+import app.utils.ConfigUtils;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Spark;
+import utils.TestData;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop HTTP load test
+ * Starts application on random port, seeds accounts and sends requests at fixed rate with non blocking client, so
+ * slow responses do not slow down sending. Latency is measured from the time request was scheduled to be sent, which
+ * includes time request waited in client queues. Workload is a mix of transfers and reads, transfers are skewed
+ * towards few hot accounts.
+ * Reports throughput, latency percentiles and errors by status code for every operation. With loadMaxP99Micros or
+ * loadMaxErrorPercent provided, exits with status 1 when transfers exceed the limit.
+ */
+public class LoadTest {
+    private static final String VAR_RATE = "loadRate";
+    private static final String VAR_DURATION_SECONDS = "loadDurationSeconds";
+    private static final String VAR_WARMUP_SECONDS = "loadWarmupSeconds";
+    private static final String VAR_ACCOUNTS = "loadAccounts";
+    private static final String VAR_TRANSFER_PERCENT = "loadTransferPercent";
+    private static final String VAR_HOT_ACCOUNTS = "loadHotAccounts";
+    private static final String VAR_HOT_PERCENT = "loadHotPercent";
+    private static final String VAR_TIMEOUT_MILLIS = "loadTimeoutMillis";
+    private static final String VAR_MAX_P99_MICROS = "loadMaxP99Micros";
+    private static final String VAR_MAX_ERROR_PERCENT = "loadMaxErrorPercent";
+    private static final String VAR_REPORT = "loadReport";
+    private static final String DEFAULT_REPORT = "build/reports/load/results.json";
+    private static final BigDecimal ACCOUNT_BALANCE = BigDecimal.valueOf(1_000_000_000);
+    private static final BigDecimal TRANSFER_AMOUNT = BigDecimal.valueOf(0.01);
+    private static final String STATUS_FAILED = "failed";
+    private static Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private final int rate = ConfigUtils.getIntProperty(VAR_RATE, 500);
+    private final int durationSeconds = ConfigUtils.getIntProperty(VAR_DURATION_SECONDS, 30);
+    private final int warmupSeconds = ConfigUtils.getIntProperty(VAR_WARMUP_SECONDS, 5);
+    private final int accountCount = ConfigUtils.getIntProperty(VAR_ACCOUNTS, 100);
+    private final int transferPercent = ConfigUtils.getIntProperty(VAR_TRANSFER_PERCENT, 50);
+    private final int hotAccounts = ConfigUtils.getIntProperty(VAR_HOT_ACCOUNTS, 2);
+    private final int hotPercent = ConfigUtils.getIntProperty(VAR_HOT_PERCENT, 50);
+    private final int timeoutMillis = ConfigUtils.getIntProperty(VAR_TIMEOUT_MILLIS, 10000);
+
+    private final Map<Operation, OperationStats> stats = new LinkedHashMap<>();
+    private final AtomicLong lastResponse = new AtomicLong();
+    private String baseUrl;
+    private long[] accountIds;
+    private long measureStart;
+
+    /**
+     * Load test operation
+     */
+    private enum Operation {
+        TRANSFER, GET_ACCOUNT, GET_ACCOUNT_TRANSACTIONS
+    }
+
+    /**
+     * Latency and status codes of measured requests of one operation
+     */
+    private static class OperationStats {
+        private final Histogram latencyMicros = new Histogram();
+        private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+
+        private void record(long latencyNanos, String status, boolean error) {
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (error)
+                errors.increment();
+        }
+    }
+
+    /**
+     * Run load test
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int status = new LoadTest().run();
+        System.exit(status);
+    }
+
+    private int run() throws Exception {
+        int port = getFreePort();
+        System.setProperty("sparkPort", String.valueOf(port));
+        Application.main(new String[]{});
+        Spark.awaitInitialization();
+        baseUrl = "http://localhost:" + port;
+
+        TestData testData = new TestData();
+        testData.deleteTestData();
+        List<Account> accounts = testData.createLoadTestAccounts(Math.max(2, accountCount), ACCOUNT_BALANCE);
+        accountIds = accounts.stream().mapToLong(Account::getId).toArray();
+        for (Operation operation : Operation.values())
+            stats.put(operation, new OperationStats());
+
+        HttpClient client = new HttpClient();
+        client.setMaxConnectionsPerDestination(1024);
+        client.setMaxRequestsQueuedPerDestination(Math.max(1024, rate * timeoutMillis / 1000));
+        client.start();
+        try {
+            logger.info("Running {} requests/s for {}s after {}s warmup", rate, durationSeconds, warmupSeconds);
+            this.generateLoad(client);
+        } finally {
+            client.stop();
+            Spark.stop();
+            Spark.awaitStop();
+        }
+        return this.report();
+    }
+
+    /**
+     * Send requests at fixed rate until test ends and wait for responses
+     *
+     * @param client
+     * @throws InterruptedException
+     */
+    private void generateLoad(HttpClient client) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        long total = (long) Math.max(1, rate) * (warmupSeconds + durationSeconds);
+        long start = System.nanoTime();
+        measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        CountDownLatch completed = new CountDownLatch((int) total);
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            this.send(client, intended, intended >= measureStart, completed);
+        }
+        if (!completed.await(timeoutMillis, TimeUnit.MILLISECONDS))
+            logger.warn("{} requests did not complete", completed.getCount());
+    }
+
+    /**
+     * Send random operation of workload
+     *
+     * @param client
+     * @param intended time request was scheduled to be sent
+     * @param measured false for warmup requests
+     * @param completed
+     */
+    private void send(HttpClient client, long intended, boolean measured, CountDownLatch completed) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation operation;
+        Request request;
+        if (random.nextInt(100) < transferPercent) {
+            operation = Operation.TRANSFER;
+            long sender = this.pickAccount(random);
+            long receiver = this.pickAccount(random);
+            while (receiver == sender)
+                receiver = this.pickAccount(random);
+            Transaction transaction = new Transaction();
+            transaction.setTitle("Load test transfer");
+            transaction.setAmount(TRANSFER_AMOUNT);
+            transaction.setSenderAccountId(sender);
+            transaction.setReceiverAccountId(receiver);
+            request = client.newRequest(baseUrl + RouteConstants.Path.TRANSACTION)
+                    .method(HttpMethod.POST)
+                    .content(new StringContentProvider(ObjectTransformer.objectToString(transaction),
+                            StandardCharsets.UTF_8), "application/json");
+        } else if (random.nextBoolean()) {
+            operation = Operation.GET_ACCOUNT;
+            request = client.newRequest(baseUrl + RouteConstants.Path.ACCOUNT + "/" + this.pickAccount(random));
+        } else {
+            operation = Operation.GET_ACCOUNT_TRANSACTIONS;
+            request = client.newRequest(baseUrl + RouteConstants.Path.ACCOUNT + "/" + this.pickAccount(random) +
+                    RouteConstants.Path.TRANSACTION + "?" + RouteConstants.Query.LIMIT + "=20");
+        }
+        request.timeout(timeoutMillis, TimeUnit.MILLISECONDS).send(result -> {
+            if (measured)
+                this.record(operation, intended, result);
+            completed.countDown();
+        });
+    }
+
+    private void record(Operation operation, long intended, Result result) {
+        long now = System.nanoTime();
+        long latency = now - intended;
+        lastResponse.accumulateAndGet(now, Math::max);
+        if (result.isFailed() && result.getResponse().getStatus() == 0) {
+            stats.get(operation).record(latency, STATUS_FAILED, true);
+            return;
+        }
+        int status = result.getResponse().getStatus();
+        stats.get(operation).record(latency, String.valueOf(status), result.isFailed() || status >= 400);
+    }
+
+    /**
+     * Pick account id, hot accounts are picked with configured probability
+     *
+     * @param random
+     * @return
+     */
+    private long pickAccount(ThreadLocalRandom random) {
+        int hot = Math.min(Math.max(1, hotAccounts), accountIds.length);
+        if (random.nextInt(100) < hotPercent)
+            return accountIds[random.nextInt(hot)];
+        return accountIds[random.nextInt(accountIds.length)];
+    }
+
+    /**
+     * Print and save report, check limits
+     *
+     * @return process exit status
+     * @throws IOException
+     */
+    private int report() throws IOException {
+        //Throughput is measured until the last response, so it drops when server falls behind the rate
+        double seconds = Math.max(durationSeconds, (lastResponse.get() - measureStart) / 1e9);
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Object> operations = new LinkedHashMap<>();
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            long count = operationStats.latencyMicros.getCount();
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("requests", count);
+            operation.put("throughput", count / seconds);
+            operation.put("errors", operationStats.errors.sum());
+            operation.put("errorPercent", percent(operationStats.errors.sum(), count));
+            Map<String, Long> statuses = new TreeMap<>();
+            operationStats.statuses.forEach((status, n) -> statuses.put(status, n.sum()));
+            operation.put("statuses", statuses);
+            operation.put("latencyMicros", operationStats.latencyMicros.getSnapshot());
+            operations.put(entry.getKey().name().toLowerCase(), operation);
+            requests += count;
+            errors += operationStats.errors.sum();
+        }
+        result.put("rate", rate);
+        result.put("durationSeconds", durationSeconds);
+        result.put("requests", requests);
+        result.put("throughput", requests / seconds);
+        result.put("errors", errors);
+        result.put("errorPercent", percent(errors, requests));
+        result.put("operations", operations);
+
+        String json = ObjectTransformer.objectToString(result);
+        System.out.println(json);
+        Path report = Paths.get(ConfigUtils.getStringProperty(VAR_REPORT, DEFAULT_REPORT));
+        if (report.getParent() != null)
+            Files.createDirectories(report.getParent());
+        Files.write(report, json.getBytes(StandardCharsets.UTF_8));
+        logger.info("Report saved to {}", report.toAbsolutePath());
+        return this.checkLimits();
+    }
+
+    /**
+     * Check transfer latency and error limits
+     *
+     * @return 0 if limits are met, 1 otherwise
+     */
+    private int checkLimits() {
+        OperationStats transfers = stats.get(Operation.TRANSFER);
+        int maxP99Micros = ConfigUtils.getIntProperty(VAR_MAX_P99_MICROS, -1);
+        int maxErrorPercent = ConfigUtils.getIntProperty(VAR_MAX_ERROR_PERCENT, -1);
+        long p99 = transfers.latencyMicros.getPercentile(99);
+        double errorPercent = percent(transfers.errors.sum(), transfers.latencyMicros.getCount());
+        int status = 0;
+        if (maxP99Micros >= 0 && p99 > maxP99Micros) {
+            logger.error("Transfer p99 latency {}us exceeds limit {}us", p99, maxP99Micros);
+            status = 1;
+        }
+        if (maxErrorPercent >= 0 && errorPercent > maxErrorPercent) {
+            logger.error("Transfer error rate {}% exceeds limit {}%", errorPercent, maxErrorPercent);
+            status = 1;
+        }
+        return status;
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package test;
 
+import app.constants.MetricConstants;
 import app.constants.RouteConstants;
+import app.metrics.PrometheusFormatter;
 import app.transformers.ObjectTransformer;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Assert;
@@ -9,6 +11,7 @@ import org.junit.Test;
 import utils.ApiClient;
 
 import java.io.IOException;
+import java.util.Map;
 
 import static app.constants.ErrorMessages.ERROR_NOT_FOUND;
 
@@ -36,4 +39,62 @@ public class APIFunctionalTest {
         Assert.assertEquals(HttpStatus.NOT_FOUND_404, apiClientResult.getStatus());
         Assert.assertEquals(ERROR_NOT_FOUND, errorResponse.getError());
     }
+
+    @Test
+    public void shouldTryToGetMetrics() throws IOException {
+        String requests = String.format(MetricConstants.HTTP_REQUESTS, "GET", RouteConstants.Path.HEALTH, 2);
+        String duration = String.format(MetricConstants.HTTP_REQUEST_DURATION_MICROS, "GET",
+                RouteConstants.Path.HEALTH);
+        String unmatched = String.format(MetricConstants.HTTP_REQUESTS, "GET", "unmatched", 4);
+        Map<String, Object> before = this.getMetrics();
+
+        for (int i = 0; i < 3; i++)
+            Assert.assertEquals(HttpStatus.OK_200, ApiClient.get(rootPathUrl + RouteConstants.Path.HEALTH).getStatus());
+        ApiClient.get(rootPathUrl + "/unknown_route/12");
+        Map<String, Object> after = this.getMetrics();
+
+        //Requests are counted by route and status class
+        Assert.assertEquals(3, this.getCount(after, requests) - this.getCount(before, requests));
+        Assert.assertEquals(1, this.getCount(after, unmatched) - this.getCount(before, unmatched));
+        Map<String, Number> durationSnapshot = (Map<String, Number>) after.get(duration);
+        Assert.assertNotNull(durationSnapshot);
+        Assert.assertTrue(durationSnapshot.get("count").longValue() >= 3);
+        Assert.assertTrue(durationSnapshot.containsKey("p99"));
+    }
+
+    @Test
+    public void shouldTryToGetMetricsInPrometheusFormat() throws IOException {
+        for (int i = 0; i < 3; i++)
+            ApiClient.get(rootPathUrl + RouteConstants.Path.HEALTH);
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.get(rootPathUrl + RouteConstants.Path.METRICS + "?" +
+                RouteConstants.Query.FORMAT + "=" + RouteConstants.Query.FORMAT_PROMETHEUS);
+
+        Assert.assertEquals(HttpStatus.OK_200, apiClientResult.getStatus());
+        Assert.assertTrue(apiClientResult.getHeader("Content-Type").startsWith(PrometheusFormatter.CONTENT_TYPE));
+        String result = apiClientResult.getResult();
+        String labels = "method=\"GET\",route=\"" + RouteConstants.Path.HEALTH + "\"";
+        Assert.assertTrue(result, result.contains("# TYPE http_requests counter\n"));
+        Assert.assertTrue(result, result.matches("(?s).*\nhttp_requests\\{" + labels +
+                ",status=\"2xx\"} [1-9]\\d*\n.*"));
+        Assert.assertTrue(result, result.contains("# TYPE http_request_duration_micros summary\n"));
+        for (String quantile : new String[]{"0.5", "0.9", "0.99", "0.999"})
+            Assert.assertTrue(result, result.matches("(?s).*\nhttp_request_duration_micros\\{" + labels +
+                    ",quantile=\"" + quantile + "\"} \\d+\n.*"));
+        Assert.assertTrue(result, result.matches("(?s).*\nhttp_request_duration_micros_count\\{" + labels +
+                "} [1-9]\\d*\n.*"));
+        Assert.assertTrue(result, result.contains("# TYPE http_request_duration_micros_max gauge\n"));
+        Assert.assertTrue(result, result.contains("# TYPE http_in_flight gauge\n"));
+    }
+
+    private Map<String, Object> getMetrics() throws IOException {
+        ApiClient.ApiClientResult apiClientResult = ApiClient.get(rootPathUrl + RouteConstants.Path.METRICS);
+        Assert.assertEquals(HttpStatus.OK_200, apiClientResult.getStatus());
+        return ObjectTransformer.getObject(apiClientResult.getResult(), Map.class);
+    }
+
+    private long getCount(Map<String, Object> metrics, String name) {
+        Number count = (Number) metrics.get(name);
+        return count == null ? 0 : count.longValue();
+    }
 }
@@ -1,11 +1,15 @@
 package test;
 
+import app.constants.ConfigConstants;
 import app.constants.ModelConstants;
 import app.constants.RouteConstants;
 import app.models.Account;
+import app.models.AccountSummary;
 import app.models.Customer;
+import app.models.ImportResult;
 import app.models.Transaction;
 import app.transformers.ObjectTransformer;
+import app.utils.RequestUtils;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Assert;
 import org.junit.Before;
@@ -15,9 +19,16 @@ import utils.ApiClient;
 import utils.TestData;
 import utils.Validators;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -25,11 +36,14 @@ import java.util.stream.Collectors;
 
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_ACCOUNT;
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_CUSTOMER;
+import static app.constants.ErrorMessages.ERROR_INVALID_PROPERTY_TITLE;
+import static app.constants.ErrorMessages.ERROR_LINE_TOO_LONG;
 
 public class AccountFunctionalTest {
     private static String rootPathUrl;
     private TestData testData = new TestData();
     private Long nonExistingAccountId = Long.valueOf(-123456);
+    private Long nonExistingCustomerId = Long.valueOf(-155478);
 
     public AccountFunctionalTest() throws SQLException {
     }
@@ -276,6 +290,39 @@ public class AccountFunctionalTest {
         });
     }
 
+    @Test
+    public void shouldTryToGetAccountTransactionsByPages() throws IOException, SQLException {
+        testData.createTestAccountTransactions();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account account = existingAccounts.get(0);
+        List<Long> accountTransactionIds = testData.getTestTransactions().stream()
+                .filter(t -> t.getSenderAccountId().equals(account.getId())
+                        || t.getReceiverAccountId().equals(account.getId()))
+                .map(Transaction::getId)
+                .sorted()
+                .collect(Collectors.toList());
+
+        Assert.assertTrue(accountTransactionIds.size() > 2);
+
+        List<Long> receivedTransactionIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            String url = rootPathUrl + "/" + account.getId() + RouteConstants.Path.TRANSACTION + "?" +
+                    RouteConstants.Query.LIMIT + "=2";
+            if (cursor != null)
+                url += "&" + RouteConstants.Query.AFTER + "=" + cursor;
+            ApiClient.ApiClientResult apiClientResult = ApiClient.get(url);
+
+            Assert.assertEquals(HttpStatus.OK_200, apiClientResult.getStatus());
+            Arrays.stream(ObjectTransformer.getObject(apiClientResult.getResult(), Transaction[].class))
+                    .forEach(t -> receivedTransactionIds.add(t.getId()));
+            cursor = apiClientResult.getHeader(RouteConstants.Header.NEXT_CURSOR);
+        } while (cursor != null);
+
+        //Pages are ordered by id and contain both sent and received transactions
+        Assert.assertEquals(accountTransactionIds, receivedTransactionIds);
+    }
+
     @Test
     public void shouldTryToGetAllTransactionsOfNonExistingAccount() throws IOException, SQLException {
         testData.createTestAccounts();
@@ -292,4 +339,194 @@ public class AccountFunctionalTest {
         Assert.assertEquals(HttpStatus.NOT_FOUND_404, apiClientResult.getStatus());
         Assert.assertEquals(ERROR_COULD_NOT_FIND_ACCOUNT, errorResponse.getError());
     }
+
+    @Test
+    public void shouldGetAccountSummaryOfTransfers() throws IOException, SQLException {
+        testData.createTestAccounts();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account senderAccount = existingAccounts.get(0);
+        Account receiverAccount = existingAccounts.get(1);
+        String transactionUrl = "http://127.0.0.1:" + spark.Spark.port() + RouteConstants.Path.TRANSACTION;
+
+        BigDecimal[] amounts = {BigDecimal.valueOf(1.5), BigDecimal.valueOf(2.25), BigDecimal.valueOf(3)};
+        for (BigDecimal amount : amounts) {
+            Transaction transaction = new Transaction();
+            transaction.setTitle("Summary transfer");
+            transaction.setAmount(amount);
+            transaction.setSenderAccountId(senderAccount.getId());
+            transaction.setReceiverAccountId(receiverAccount.getId());
+            Assert.assertEquals(HttpStatus.CREATED_201, ApiClient.post(transactionUrl, transaction).getStatus());
+        }
+
+        String today = LocalDate.now().toString();
+        ApiClient.ApiClientResult apiClientResult = ApiClient.get(rootPathUrl + "/" + senderAccount.getId() +
+                RouteConstants.Path.SUMMARY + "?from=" + today + "&to=" + today);
+        Assert.assertEquals(HttpStatus.OK_200, apiClientResult.getStatus());
+        AccountSummary senderSummary = ObjectTransformer.getObject(apiClientResult.getResult(), AccountSummary.class);
+        Assert.assertEquals(3, senderSummary.getDebitCount());
+        Assert.assertEquals(0, BigDecimal.valueOf(6.75).compareTo(senderSummary.getDebitSum()));
+        Assert.assertEquals(0, senderSummary.getCreditCount());
+        Assert.assertEquals(1, senderSummary.getDays().size());
+        Assert.assertEquals(today, senderSummary.getDays().get(0).getDate());
+
+        AccountSummary receiverSummary = ObjectTransformer.getObject(ApiClient.get(rootPathUrl + "/" +
+                receiverAccount.getId() + RouteConstants.Path.SUMMARY).getResult(), AccountSummary.class);
+        Assert.assertEquals(3, receiverSummary.getCreditCount());
+        Assert.assertEquals(0, BigDecimal.valueOf(6.75).compareTo(receiverSummary.getCreditSum()));
+
+        //Days outside of range are not summarized
+        String tomorrow = LocalDate.now().plusDays(1).toString();
+        AccountSummary emptySummary = ObjectTransformer.getObject(ApiClient.get(rootPathUrl + "/" +
+                senderAccount.getId() + RouteConstants.Path.SUMMARY + "?from=" + tomorrow).getResult(),
+                AccountSummary.class);
+        Assert.assertEquals(0, emptySummary.getDebitCount());
+        Assert.assertTrue(emptySummary.getDays().isEmpty());
+
+        Assert.assertEquals(HttpStatus.BAD_REQUEST_400, ApiClient.get(rootPathUrl + "/" + senderAccount.getId() +
+                RouteConstants.Path.SUMMARY + "?from=" + tomorrow + "&to=" + today).getStatus());
+    }
+
+    @Test
+    public void shouldStreamAccountTransactionEvents() throws IOException, SQLException {
+        testData.createTestAccounts();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account senderAccount = existingAccounts.get(0);
+        Account receiverAccount = existingAccounts.get(1);
+        String transactionUrl = "http://127.0.0.1:" + spark.Spark.port() + RouteConstants.Path.TRANSACTION;
+
+        Transaction transaction = new Transaction();
+        transaction.setTitle("Event transfer");
+        transaction.setAmount(BigDecimal.valueOf(1.5));
+        transaction.setSenderAccountId(senderAccount.getId());
+        transaction.setReceiverAccountId(receiverAccount.getId());
+        Transaction missed = ObjectTransformer.getObject(ApiClient.post(transactionUrl, transaction).getResult(),
+                Transaction.class);
+
+        //Resume before missed transaction, so it is replayed from DB before live events
+        HttpURLConnection connection = (HttpURLConnection) new URL(rootPathUrl + "/" + receiverAccount.getId() +
+                RouteConstants.Path.EVENTS).openConnection();
+        connection.setRequestProperty(RouteConstants.Header.LAST_EVENT_ID, String.valueOf(missed.getId() - 1));
+        connection.setReadTimeout(5000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            Assert.assertEquals(HttpStatus.OK_200, connection.getResponseCode());
+            Assert.assertTrue(connection.getContentType().startsWith("text/event-stream"));
+            Validators.verifyTransactionEqualsFull(missed, readEvent(reader));
+
+            transaction.setAmount(BigDecimal.valueOf(2));
+            Transaction live = ObjectTransformer.getObject(ApiClient.post(transactionUrl, transaction).getResult(),
+                    Transaction.class);
+            Validators.verifyTransactionEqualsFull(live, readEvent(reader));
+        } finally {
+            connection.disconnect();
+        }
+
+        Assert.assertEquals(HttpStatus.NOT_FOUND_404, ApiClient.get(rootPathUrl + "/" + nonExistingAccountId +
+                RouteConstants.Path.EVENTS).getStatus());
+    }
+
+    @Test
+    public void shouldTryToImportAccounts() throws IOException, SQLException {
+        testData.createTestCustomers();
+        List<Customer> customers = testData.getTestCustomers();
+        String csv = "customerId,title\n" +
+                customers.get(0).getId() + ",Imported savings\n" +
+                nonExistingCustomerId + ",Unknown customer\n" +
+                customers.get(1).getId() + ",\n" +
+                customers.get(1).getId() + ",\"Imported, family\"\n";
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.postContent(rootPathUrl + RouteConstants.Path.IMPORT,
+                csv, RequestUtils.CONTENT_TYPE_CSV);
+
+        //Verify imported accounts, unknown customer and invalid line are rejected
+        Assert.assertEquals(HttpStatus.MULTI_STATUS_207, apiClientResult.getStatus());
+        ImportResult result = ObjectTransformer.getObject(apiClientResult.getResult(), ImportResult.class);
+        Assert.assertEquals(2, result.getImported());
+        Assert.assertEquals(2, result.getFailed());
+        Assert.assertEquals(2, result.getErrors().size());
+        Assert.assertEquals(3, result.getErrors().get(0).getLine());
+        Assert.assertEquals(ERROR_COULD_NOT_FIND_CUSTOMER, result.getErrors().get(0).getError());
+        Assert.assertEquals(4, result.getErrors().get(1).getLine());
+        Assert.assertEquals(ERROR_INVALID_PROPERTY_TITLE, result.getErrors().get(1).getError());
+
+        //Imported accounts have default balance
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Assert.assertEquals(2, existingAccounts.size());
+        existingAccounts.forEach(a -> Assert.assertEquals(0,
+                ModelConstants.ACCOUNT_DEFAULT_BALANCE.compareTo(a.getBalance())));
+        Assert.assertTrue(existingAccounts.stream().anyMatch(a ->
+                "Imported savings".equals(a.getTitle()) && customers.get(0).getId().equals(a.getCustomerId())));
+        Assert.assertTrue(existingAccounts.stream().anyMatch(a ->
+                "Imported, family".equals(a.getTitle()) && customers.get(1).getId().equals(a.getCustomerId())));
+    }
+
+    @Test
+    public void shouldTryToImportAccountsFromNdjson() throws IOException, SQLException {
+        testData.createTestCustomers();
+        Long customerId = testData.getTestCustomers().get(0).getId();
+        String ndjson = "{\"customerId\":" + customerId + ",\"title\":\"First imported\"}\n" +
+                "\n" +
+                "{\"customerId\":" + customerId + ",\"title\":\"Second imported\",\"balance\":1000000}\n";
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.postContent(rootPathUrl + RouteConstants.Path.IMPORT,
+                ndjson, RequestUtils.CONTENT_TYPE_NDJSON);
+
+        Assert.assertEquals(HttpStatus.CREATED_201, apiClientResult.getStatus());
+        ImportResult result = ObjectTransformer.getObject(apiClientResult.getResult(), ImportResult.class);
+        Assert.assertEquals(2, result.getImported());
+        Assert.assertEquals(0, result.getFailed());
+        Assert.assertTrue(result.getErrors().isEmpty());
+
+        //Provided balance is ignored
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Assert.assertEquals(2, existingAccounts.size());
+        existingAccounts.forEach(a -> Assert.assertEquals(0,
+                ModelConstants.ACCOUNT_DEFAULT_BALANCE.compareTo(a.getBalance())));
+    }
+
+    @Test
+    public void shouldRejectTooLongImportLine() throws IOException, SQLException {
+        testData.createTestCustomers();
+        Long customerId = testData.getTestCustomers().get(0).getId();
+        StringBuilder longTitle = new StringBuilder();
+        while (longTitle.length() <= ConfigConstants.DEFAULT_IMPORT_MAX_LINE_LENGTH)
+            longTitle.append("Long title ");
+        String ndjson = "{\"customerId\":" + customerId + ",\"title\":\"" + longTitle + "\"}\r\n" +
+                "{\"customerId\":" + customerId + ",\"title\":\"After long line\"}\r\n";
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.postContent(rootPathUrl + RouteConstants.Path.IMPORT,
+                ndjson, RequestUtils.CONTENT_TYPE_NDJSON);
+
+        //Rest of long line is skipped and next line is imported
+        Assert.assertEquals(HttpStatus.MULTI_STATUS_207, apiClientResult.getStatus());
+        ImportResult result = ObjectTransformer.getObject(apiClientResult.getResult(), ImportResult.class);
+        Assert.assertEquals(1, result.getImported());
+        Assert.assertEquals(1, result.getFailed());
+        Assert.assertEquals(1, result.getErrors().get(0).getLine());
+        Assert.assertEquals(String.format(ERROR_LINE_TOO_LONG, ConfigConstants.DEFAULT_IMPORT_MAX_LINE_LENGTH),
+                result.getErrors().get(0).getError());
+        Assert.assertEquals("After long line", testData.getTestAccounts().get(0).getTitle());
+    }
+
+    /**
+     * Read next transaction event from server-sent event stream
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    private static Transaction readEvent(BufferedReader reader) throws IOException {
+        String id = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("id: "))
+                id = line.substring(4);
+            else if (line.startsWith("data: ")) {
+                Transaction transaction = ObjectTransformer.getObject(line.substring(6), Transaction.class);
+                Assert.assertEquals(id, String.valueOf(transaction.getId()));
+                return transaction;
+            }
+        }
+        throw new IOException("Event stream ended");
+    }
 }
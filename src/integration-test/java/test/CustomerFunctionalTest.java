@@ -3,6 +3,7 @@ package test;
 import app.constants.RouteConstants;
 import app.models.Account;
 import app.models.Customer;
+import app.models.ImportResult;
 import app.transformers.ObjectTransformer;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Assert;
@@ -291,4 +292,29 @@ public class CustomerFunctionalTest {
     @Test
     public void shouldTryToGetListOfAccountsByNonExistingCustomerId() {
     }
+
+    @Test
+    public void shouldTryToImportCustomers() throws IOException, SQLException {
+        String csv = "firstName,lastName\n" +
+                "Thomas,Fin\n" +
+                "\"Anna, Marie\",\"O\"\"Neil\"\n" +
+                ",Missing\n";
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.postContent(rootPathUrl + RouteConstants.Path.IMPORT,
+                csv, "text/csv");
+
+        //Verify imported customers and error of invalid line
+        Assert.assertEquals(HttpStatus.MULTI_STATUS_207, apiClientResult.getStatus());
+        ImportResult result = ObjectTransformer.getObject(apiClientResult.getResult(), ImportResult.class);
+        Assert.assertEquals(2, result.getImported());
+        Assert.assertEquals(1, result.getFailed());
+        Assert.assertEquals(1, result.getErrors().size());
+        Assert.assertEquals(4, result.getErrors().get(0).getLine());
+        Assert.assertEquals(ERROR_INVALID_PROPERTY_FIRSTNAME, result.getErrors().get(0).getError());
+
+        List<Customer> existingCustomers = testData.getTestCustomers();
+        Assert.assertEquals(2, existingCustomers.size());
+        Assert.assertTrue(existingCustomers.stream().anyMatch(c ->
+                "Anna, Marie".equals(c.getFirstName()) && "O\"Neil".equals(c.getLastName())));
+    }
 }
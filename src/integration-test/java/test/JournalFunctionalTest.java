@@ -0,0 +1,142 @@
+package test;
+
+import app.constants.ConfigConstants;
+import app.journal.Journal;
+import app.ledger.LedgerModule;
+import app.models.Account;
+import app.models.Transaction;
+import app.services.TransactionService;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import utils.TestData;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Journal recovery tests
+ * Lost DB writes are simulated by deleting transactions and restoring account balances while journal is stopped
+ */
+public class JournalFunctionalTest {
+    private static final int TRANSFERS = 20;
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(3.17);
+
+    private TestData testData = new TestData();
+    private Path journalDir;
+    private Account sender;
+    private Account receiver;
+
+    public JournalFunctionalTest() throws SQLException {
+    }
+
+    @Before
+    public void beforeEach() throws SQLException, IOException {
+        testData.deleteTestData();
+        testData.createTestAccounts();
+        List<Account> accounts = testData.getTestAccounts();
+        sender = accounts.get(0);
+        receiver = accounts.get(1);
+
+        journalDir = Files.createTempDirectory("payment-journal");
+        System.setProperty(ConfigConstants.VAR_JOURNAL_DIR, journalDir.toString());
+    }
+
+    @After
+    public void afterEach() throws IOException {
+        System.clearProperty(ConfigConstants.VAR_JOURNAL_DIR);
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void shouldRecoverTransfersMissingInDB() throws Exception {
+        Injector injector = Guice.createInjector(new LedgerModule());
+        Journal journal = injector.getInstance(Journal.class);
+        journal.start();
+        this.transfer(injector, TRANSFERS);
+        journal.stop();
+
+        Assert.assertEquals(TRANSFERS, testData.getTestTransactions().size());
+
+        //Lose all transfers in DB and leave torn record at journal end
+        testData.deleteTestTransactionsAfter(0L);
+        testData.updateTestAccountBalance(sender.getId(), sender.getBalance());
+        testData.updateTestAccountBalance(receiver.getId(), receiver.getBalance());
+        Files.write(journalDir.resolve(String.format("journal-%020d.log", 999)),
+                new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5});
+
+        Injector recoveredInjector = Guice.createInjector(new LedgerModule());
+        Journal recoveredJournal = recoveredInjector.getInstance(Journal.class);
+        recoveredJournal.start();
+        this.verifyState(TRANSFERS);
+
+        //Sequence continues after recovery, so new transfer does not collide with replayed ones
+        this.transfer(recoveredInjector, 1);
+        recoveredJournal.stop();
+        this.verifyState(TRANSFERS + 1);
+    }
+
+    @Test
+    public void shouldReplayOnlyRecordsAfterSnapshot() throws Exception {
+        Injector injector = Guice.createInjector(new LedgerModule());
+        Journal journal = injector.getInstance(Journal.class);
+        journal.start();
+        this.transfer(injector, TRANSFERS);
+        journal.snapshot();
+        List<Transaction> snapshotTransactions = testData.getTestTransactions();
+        List<Account> snapshotAccounts = testData.getTestAccounts();
+        this.transfer(injector, TRANSFERS);
+        journal.stop();
+
+        //Lose transfers made after snapshot
+        Long lastSnapshotTransactionId = snapshotTransactions.stream().mapToLong(Transaction::getId).max().getAsLong();
+        testData.deleteTestTransactionsAfter(lastSnapshotTransactionId);
+        for (Account account : snapshotAccounts)
+            testData.updateTestAccountBalance(account.getId(), account.getBalance());
+
+        Journal recoveredJournal = Guice.createInjector(new LedgerModule()).getInstance(Journal.class);
+        recoveredJournal.start();
+        recoveredJournal.stop();
+        this.verifyState(2 * TRANSFERS);
+    }
+
+    private void transfer(Injector injector, int count) throws Exception {
+        TransactionService transactionService = injector.getInstance(TransactionService.class);
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction();
+            transaction.setTitle("Journaled transfer");
+            transaction.setAmount(AMOUNT);
+            transaction.setSenderAccountId(sender.getId());
+            transaction.setReceiverAccountId(receiver.getId());
+            transactionService.createTransaction(transaction);
+        }
+    }
+
+    private void verifyState(int transfers) throws SQLException {
+        List<Transaction> transactions = testData.getTestTransactions();
+        Assert.assertEquals(transfers, transactions.size());
+        transactions.forEach(t -> {
+            Assert.assertEquals(0, AMOUNT.compareTo(t.getAmount()));
+            Assert.assertEquals(sender.getId(), t.getSenderAccountId());
+            Assert.assertEquals(receiver.getId(), t.getReceiverAccountId());
+        });
+
+        BigDecimal total = AMOUNT.multiply(BigDecimal.valueOf(transfers));
+        List<Account> accounts = testData.getTestAccounts();
+        Account updatedSender = accounts.stream().filter(a -> a.equals(sender)).findFirst().get();
+        Account updatedReceiver = accounts.stream().filter(a -> a.equals(receiver)).findFirst().get();
+        Assert.assertEquals(0, sender.getBalance().subtract(total).compareTo(updatedSender.getBalance()));
+        Assert.assertEquals(0, receiver.getBalance().add(total).compareTo(updatedReceiver.getBalance()));
+    }
+}
@@ -3,7 +3,9 @@ package test;
 import app.constants.RouteConstants;
 import app.exceptions.InvalidRequestData;
 import app.models.Account;
+import app.models.AsyncTransfer;
 import app.models.Transaction;
+import app.models.TransactionBatchItem;
 import app.transformers.ObjectTransformer;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Assert;
@@ -18,12 +20,15 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import static app.constants.ErrorMessages.ERROR_BATCH_ABORTED;
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_TRANSACTION;
 import static app.constants.ErrorMessages.ERROR_INSUFFICIENT_BALANCE;
+import static app.constants.ErrorMessages.ERROR_INVALID_PAGE_CURSOR;
 
 public class TransactionFunctionalTest {
     private static String rootPathUrl;
@@ -60,6 +65,51 @@ public class TransactionFunctionalTest {
         });
     }
 
+    @Test
+    public void shouldTryToGetAllTransactionsByPages() throws IOException, SQLException {
+        testData.createTestAccountTransactions();
+        List<Transaction> existingTransactions = testData.getTestTransactions();
+
+        Assert.assertTrue(existingTransactions.size() > 2);
+
+        List<Transaction> receivedTransactions = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String url = rootPathUrl + "?" + RouteConstants.Query.LIMIT + "=2";
+            if (cursor != null)
+                url += "&" + RouteConstants.Query.AFTER + "=" + cursor;
+            ApiClient.ApiClientResult apiClientResult = ApiClient.get(url);
+
+            Assert.assertEquals(HttpStatus.OK_200, apiClientResult.getStatus());
+            List<Transaction> page =
+                    Arrays.asList(ObjectTransformer.getObject(apiClientResult.getResult(), Transaction[].class));
+            Assert.assertTrue(page.size() <= 2);
+            receivedTransactions.addAll(page);
+            cursor = apiClientResult.getHeader(RouteConstants.Header.NEXT_CURSOR);
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals((existingTransactions.size() + 1) / 2, pages);
+        Assert.assertEquals(existingTransactions.size(), receivedTransactions.size());
+        for (int i = 1; i < receivedTransactions.size(); i++)
+            Assert.assertTrue(receivedTransactions.get(i - 1).getId() < receivedTransactions.get(i).getId());
+        existingTransactions.forEach(t -> Assert.assertTrue(receivedTransactions.contains(t)));
+    }
+
+    @Test
+    public void shouldTryToGetTransactionsPageWithInvalidParameters() throws IOException {
+        ApiClient.ApiClientResult apiClientResult =
+                ApiClient.get(rootPathUrl + "?" + RouteConstants.Query.LIMIT + "=0");
+        Assert.assertEquals(HttpStatus.BAD_REQUEST_400, apiClientResult.getStatus());
+
+        apiClientResult = ApiClient.get(rootPathUrl + "?" + RouteConstants.Query.AFTER + "=not-a-cursor");
+        Assert.assertEquals(HttpStatus.BAD_REQUEST_400, apiClientResult.getStatus());
+        Assert.assertEquals(ERROR_INVALID_PAGE_CURSOR,
+                ObjectTransformer.getObject(apiClientResult.getResult(), ObjectTransformer.ErrorResponse.class)
+                        .getError());
+    }
+
     @Test
     public void shouldTryToGetTransactionById() throws IOException, SQLException {
         testData.createTestAccountTransactions();
@@ -151,6 +201,107 @@ public class TransactionFunctionalTest {
         Assert.assertEquals(receiverAccount.getBalance().add(amount), receiverAccountUpd.getBalance());
     }
 
+    @Test
+    public void shouldGetUpdatedBalanceOfCachedAccountAfterTransaction() throws IOException, SQLException {
+        testData.createTestAccounts();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account senderAccount = existingAccounts.get(0);
+        Account receiverAccount = existingAccounts.get(1);
+        String senderUrl = "http://127.0.0.1:" + spark.Spark.port() + RouteConstants.Path.ACCOUNT + "/" +
+                senderAccount.getId();
+
+        //Read account twice, so second read is served from cache
+        ApiClient.get(senderUrl);
+        Account cachedAccount = ObjectTransformer.getObject(ApiClient.get(senderUrl).getResult(), Account.class);
+        Assert.assertEquals(senderAccount.getBalance(), cachedAccount.getBalance());
+
+        BigDecimal amount = BigDecimal.valueOf(10.5);
+        Transaction newTransactionReq = new Transaction();
+        newTransactionReq.setTitle("Cached account transfer");
+        newTransactionReq.setAmount(amount);
+        newTransactionReq.setSenderAccountId(senderAccount.getId());
+        newTransactionReq.setReceiverAccountId(receiverAccount.getId());
+        Assert.assertEquals(HttpStatus.CREATED_201, ApiClient.post(rootPathUrl, newTransactionReq).getStatus());
+
+        Account updatedAccount = ObjectTransformer.getObject(ApiClient.get(senderUrl).getResult(), Account.class);
+        Assert.assertEquals(senderAccount.getBalance().subtract(amount), updatedAccount.getBalance());
+    }
+
+    @Test
+    public void shouldCreateTransactionOnceWithIdempotencyKey() throws IOException, SQLException {
+        testData.createTestAccounts();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account senderAccount = existingAccounts.get(0);
+        Account receiverAccount = existingAccounts.get(1);
+
+        BigDecimal amount = BigDecimal.valueOf(7.25);
+        Transaction newTransactionReq = new Transaction();
+        newTransactionReq.setTitle("Retried transfer");
+        newTransactionReq.setAmount(amount);
+        newTransactionReq.setSenderAccountId(senderAccount.getId());
+        newTransactionReq.setReceiverAccountId(receiverAccount.getId());
+        String key = "retried-transfer-" + senderAccount.getId();
+
+        ApiClient.ApiClientResult first =
+                ApiClient.post(rootPathUrl, newTransactionReq, RouteConstants.Header.IDEMPOTENCY_KEY, key);
+        ApiClient.ApiClientResult retry =
+                ApiClient.post(rootPathUrl, newTransactionReq, RouteConstants.Header.IDEMPOTENCY_KEY, key);
+        Assert.assertEquals(HttpStatus.CREATED_201, first.getStatus());
+        Assert.assertEquals(HttpStatus.CREATED_201, retry.getStatus());
+        Transaction created = ObjectTransformer.getObject(first.getResult(), Transaction.class);
+        Transaction replayed = ObjectTransformer.getObject(retry.getResult(), Transaction.class);
+        Validators.verifyTransactionEqualsFull(created, replayed);
+
+        List<Transaction> transactions = testData.getTestTransactions();
+        Assert.assertEquals(1, transactions.size());
+        Account senderAccountUpd = testData.getTestAccounts().stream().filter(a -> a.equals(senderAccount))
+                .findFirst().get();
+        Assert.assertEquals(senderAccount.getBalance().subtract(amount), senderAccountUpd.getBalance());
+
+        //Same key can not be used for different transfer
+        newTransactionReq.setAmount(amount.add(BigDecimal.ONE));
+        Assert.assertEquals(HttpStatus.BAD_REQUEST_400,
+                ApiClient.post(rootPathUrl, newTransactionReq, RouteConstants.Header.IDEMPOTENCY_KEY, key).getStatus());
+    }
+
+    @Test
+    public void shouldProcessAsyncTransaction() throws IOException, SQLException {
+        testData.createTestAccounts();
+        List<Account> existingAccounts = testData.getTestAccounts();
+        Account senderAccount = existingAccounts.get(0);
+        Account receiverAccount = existingAccounts.get(1);
+
+        BigDecimal amount = BigDecimal.valueOf(3.5);
+        Transaction newTransactionReq = new Transaction();
+        newTransactionReq.setTitle("Async transfer");
+        newTransactionReq.setAmount(amount);
+        newTransactionReq.setSenderAccountId(senderAccount.getId());
+        newTransactionReq.setReceiverAccountId(receiverAccount.getId());
+
+        ApiClient.ApiClientResult submitted = ApiClient.post(rootPathUrl + RouteConstants.Path.ASYNC,
+                newTransactionReq);
+        Assert.assertEquals(HttpStatus.ACCEPTED_202, submitted.getStatus());
+        AsyncTransfer transfer = ObjectTransformer.getObject(submitted.getResult(), AsyncTransfer.class);
+        Assert.assertNotNull(transfer.getId());
+
+        String transferUrl = rootPathUrl + RouteConstants.Path.ASYNC + "/" + transfer.getId();
+        ApiClient.ApiClientResult processed = ApiClient.get(transferUrl + "?" + RouteConstants.Query.WAIT + "=2000");
+        Assert.assertEquals(HttpStatus.OK_200, processed.getStatus());
+        transfer = ObjectTransformer.getObject(processed.getResult(), AsyncTransfer.class);
+        Assert.assertEquals(AsyncTransfer.Status.COMPLETED, transfer.getStatus());
+        Assert.assertEquals(0, amount.compareTo(transfer.getTransaction().getAmount()));
+
+        Transaction createdTransaction = ObjectTransformer.getObject(ApiClient.get(rootPathUrl + "/" +
+                transfer.getTransaction().getId()).getResult(), Transaction.class);
+        Validators.verifyTransactionEqualsFull(transfer.getTransaction(), createdTransaction);
+        Account senderAccountUpd = testData.getTestAccounts().stream().filter(a -> a.equals(senderAccount))
+                .findFirst().get();
+        Assert.assertEquals(senderAccount.getBalance().subtract(amount), senderAccountUpd.getBalance());
+
+        Assert.assertEquals(HttpStatus.NOT_FOUND_404,
+                ApiClient.get(rootPathUrl + RouteConstants.Path.ASYNC + "/unknown").getStatus());
+    }
+
     @Ignore
     @Test
     public void shouldTryToCreateTransactionWithUnknownSender() {
@@ -208,4 +359,116 @@ public class TransactionFunctionalTest {
         Validators.verifyAccountEqualsFull(receiverAccount, receiverAccountUpd);
         Assert.assertEquals(receiverAccount.getBalance(), receiverAccountUpd.getBalance());
     }
+
+    @Test
+    public void shouldTryToCreateTransactionsBatch() throws IOException, SQLException {
+        testData.createTestAccountTransactions();
+        List<Transaction> existingTransactions = testData.getTestTransactions();
+        List<Account> existingAccounts = testData.getTestAccounts();
+
+        Account firstAccount = existingAccounts.get(0);
+        Account secondAccount = existingAccounts.get(1);
+        BigDecimal amount = BigDecimal.valueOf(10.25);
+
+        List<Transaction> batch = Arrays.asList(
+                createTransactionRequest(firstAccount, secondAccount, amount),
+                createTransactionRequest(secondAccount, firstAccount, amount),
+                createTransactionRequest(firstAccount, secondAccount, amount));
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.post(rootPathUrl + RouteConstants.Path.BATCH, batch);
+
+        Assert.assertEquals(HttpStatus.CREATED_201, apiClientResult.getStatus());
+        List<TransactionBatchItem> receivedItems = Arrays.asList(
+                ObjectTransformer.getObject(apiClientResult.getResult(), TransactionBatchItem[].class));
+        Assert.assertEquals(batch.size(), receivedItems.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), receivedItems.get(i).getIndex());
+            Assert.assertEquals(Integer.valueOf(HttpStatus.CREATED_201), receivedItems.get(i).getStatus());
+            Assert.assertNotNull(receivedItems.get(i).getTransaction().getId());
+            Assert.assertEquals(batch.get(i).getSenderAccountId(),
+                    receivedItems.get(i).getTransaction().getSenderAccountId());
+        }
+
+        //Verify against database
+        List<Transaction> existingTransactionsUpdated = testData.getTestTransactions();
+        Assert.assertEquals(existingTransactions.size() + batch.size(), existingTransactionsUpdated.size());
+        receivedItems.forEach(item -> Validators.verifyTransactionEqualsFull(
+                existingTransactionsUpdated.stream().filter(t -> t.equals(item.getTransaction())).findFirst().get(),
+                item.getTransaction()));
+
+        existingAccounts = testData.getTestAccounts();
+        Account firstAccountUpd = existingAccounts.stream().filter(a -> a.equals(firstAccount)).findFirst().get();
+        Assert.assertEquals(firstAccount.getBalance().subtract(amount), firstAccountUpd.getBalance());
+        Account secondAccountUpd = existingAccounts.stream().filter(a -> a.equals(secondAccount)).findFirst().get();
+        Assert.assertEquals(secondAccount.getBalance().add(amount), secondAccountUpd.getBalance());
+    }
+
+    @Test
+    public void shouldTryToCreateAtomicTransactionsBatchWithInsufficientBalance() throws IOException, SQLException {
+        testData.createTestAccountTransactions();
+        List<Transaction> existingTransactions = testData.getTestTransactions();
+        List<Account> existingAccounts = testData.getTestAccounts();
+
+        Account firstAccount = existingAccounts.get(0);
+        Account secondAccount = existingAccounts.get(1);
+
+        List<Transaction> batch = Arrays.asList(
+                createTransactionRequest(firstAccount, secondAccount, BigDecimal.ONE),
+                createTransactionRequest(firstAccount, secondAccount, firstAccount.getBalance()));
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.post(rootPathUrl + RouteConstants.Path.BATCH, batch);
+
+        Assert.assertEquals(HttpStatus.MULTI_STATUS_207, apiClientResult.getStatus());
+        List<TransactionBatchItem> receivedItems = Arrays.asList(
+                ObjectTransformer.getObject(apiClientResult.getResult(), TransactionBatchItem[].class));
+        Assert.assertEquals(Integer.valueOf(HttpStatus.FAILED_DEPENDENCY_424), receivedItems.get(0).getStatus());
+        Assert.assertEquals(ERROR_BATCH_ABORTED, receivedItems.get(0).getError());
+        Assert.assertEquals(Integer.valueOf(HttpStatus.BAD_REQUEST_400), receivedItems.get(1).getStatus());
+        Assert.assertEquals(ERROR_INSUFFICIENT_BALANCE, receivedItems.get(1).getError());
+
+        //Verify against database that nothing changed
+        Assert.assertEquals(existingTransactions.size(), testData.getTestTransactions().size());
+        Account firstAccountUpd = testData.getTestAccounts().stream().filter(a -> a.equals(firstAccount))
+                .findFirst().get();
+        Validators.verifyAccountEqualsFull(firstAccount, firstAccountUpd);
+    }
+
+    @Test
+    public void shouldTryToCreatePartialTransactionsBatchWithInsufficientBalance() throws IOException, SQLException {
+        testData.createTestAccountTransactions();
+        List<Transaction> existingTransactions = testData.getTestTransactions();
+        List<Account> existingAccounts = testData.getTestAccounts();
+
+        Account firstAccount = existingAccounts.get(0);
+        Account secondAccount = existingAccounts.get(1);
+
+        List<Transaction> batch = Arrays.asList(
+                createTransactionRequest(firstAccount, secondAccount, BigDecimal.ONE),
+                createTransactionRequest(firstAccount, secondAccount, firstAccount.getBalance()));
+
+        ApiClient.ApiClientResult apiClientResult = ApiClient.post(rootPathUrl + RouteConstants.Path.BATCH + "?" +
+                RouteConstants.Query.MODE + "=" + RouteConstants.Query.MODE_PARTIAL, batch);
+
+        Assert.assertEquals(HttpStatus.MULTI_STATUS_207, apiClientResult.getStatus());
+        List<TransactionBatchItem> receivedItems = Arrays.asList(
+                ObjectTransformer.getObject(apiClientResult.getResult(), TransactionBatchItem[].class));
+        Assert.assertEquals(Integer.valueOf(HttpStatus.CREATED_201), receivedItems.get(0).getStatus());
+        Assert.assertEquals(Integer.valueOf(HttpStatus.BAD_REQUEST_400), receivedItems.get(1).getStatus());
+        Assert.assertEquals(ERROR_INSUFFICIENT_BALANCE, receivedItems.get(1).getError());
+
+        //Verify against database that only first transaction was created
+        Assert.assertEquals(existingTransactions.size() + 1, testData.getTestTransactions().size());
+        Account firstAccountUpd = testData.getTestAccounts().stream().filter(a -> a.equals(firstAccount))
+                .findFirst().get();
+        Assert.assertEquals(firstAccount.getBalance().subtract(BigDecimal.ONE), firstAccountUpd.getBalance());
+    }
+
+    private static Transaction createTransactionRequest(Account sender, Account receiver, BigDecimal amount) {
+        Transaction transaction = new Transaction();
+        transaction.setTitle("Batch transaction title");
+        transaction.setAmount(amount);
+        transaction.setSenderAccountId(sender.getId());
+        transaction.setReceiverAccountId(receiver.getId());
+        return transaction;
+    }
 }
@@ -0,0 +1,209 @@
+package test;
+
+import app.constants.ConfigConstants;
+import app.constants.ModelConstants;
+import app.exceptions.InvalidRequestData;
+import app.ledger.GroupCommitLedgerEngine;
+import app.ledger.LedgerEngine;
+import app.ledger.PartitionedLedgerEngine;
+import app.ledger.SqlLedgerEngine;
+import app.ledger.StripedLockLedgerEngine;
+import app.metrics.Histogram;
+import app.metrics.MetricsRegistry;
+import app.models.Account;
+import app.models.Transaction;
+import app.services.TransactionService;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.TestData;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static app.constants.ErrorMessages.ERROR_INSUFFICIENT_BALANCE;
+import static app.constants.MetricConstants.GROUP_COMMIT_SIZE;
+
+/**
+ * Concurrency benchmark for ledger engines
+ * Many clients transfer money between the same pair of accounts in both directions and final balances are verified
+ * against number of successful transfers, so any lost update is detected
+ */
+public class TransferConcurrencyFunctionalTest {
+    private static Logger logger = LoggerFactory.getLogger(TransferConcurrencyFunctionalTest.class);
+    private static final int CLIENTS = 64;
+    private static final int TRANSFERS_PER_CLIENT = 50;
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(7.31);
+
+    private TestData testData = new TestData();
+
+    public TransferConcurrencyFunctionalTest() throws SQLException {
+    }
+
+    @Before
+    public void beforeEach() throws SQLException {
+        testData.deleteTestData();
+        testData.createTestAccounts();
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesWithSqlLedgerEngine() throws Exception {
+        this.hammerAccountPair(SqlLedgerEngine.class.getSimpleName(),
+                binder -> binder.bind(LedgerEngine.class).to(SqlLedgerEngine.class));
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesWithStripedLockLedgerEngine() throws Exception {
+        this.hammerAccountPair(StripedLockLedgerEngine.class.getSimpleName(),
+                binder -> binder.bind(LedgerEngine.class).to(StripedLockLedgerEngine.class));
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesWithPartitionedLedgerEngine() throws Exception {
+        System.setProperty(ConfigConstants.VAR_LEDGER_PARTITIONS, "2");
+        try {
+            Injector injector = Guice.createInjector(
+                    binder -> binder.bind(LedgerEngine.class).to(PartitionedLedgerEngine.class));
+            PartitionedLedgerEngine engine = (PartitionedLedgerEngine) injector.getInstance(LedgerEngine.class);
+
+            //Transfer within one partition runs on partition thread, transfer between partitions is handed off
+            Account[] samePartition = this.findAccountPair(engine, true);
+            Account[] otherPartitions = this.findAccountPair(engine, false, samePartition);
+            this.hammerAccountPair(PartitionedLedgerEngine.class.getSimpleName() + " same partition", injector,
+                    samePartition[0], samePartition[1]);
+            this.hammerAccountPair(PartitionedLedgerEngine.class.getSimpleName() + " two partitions", injector,
+                    otherPartitions[0], otherPartitions[1]);
+        } finally {
+            System.clearProperty(ConfigConstants.VAR_LEDGER_PARTITIONS);
+        }
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesWithGroupCommitLedgerEngine() throws Exception {
+        Injector injector = this.hammerAccountPair(GroupCommitLedgerEngine.class.getSimpleName(), binder -> {
+            binder.bind(LedgerEngine.class).annotatedWith(Names.named(GroupCommitLedgerEngine.DELEGATE))
+                    .to(StripedLockLedgerEngine.class);
+            binder.bind(LedgerEngine.class).to(GroupCommitLedgerEngine.class);
+        });
+
+        //Every transfer was committed as part of some group
+        Histogram groupSizes = injector.getInstance(MetricsRegistry.class).histogram(GROUP_COMMIT_SIZE);
+        logger.info("Group commit sizes: {}", groupSizes.getSnapshot());
+        Assert.assertEquals(CLIENTS * TRANSFERS_PER_CLIENT, groupSizes.getSum());
+    }
+
+    /**
+     * Find pair of test accounts in the same or in different partitions
+     * More accounts are created when existing ones do not have such pair
+     *
+     * @param engine
+     * @param samePartition
+     * @param excluded      accounts which are not used
+     * @return
+     * @throws SQLException
+     */
+    private Account[] findAccountPair(PartitionedLedgerEngine engine, boolean samePartition, Account... excluded)
+            throws SQLException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<Account> accounts = testData.getTestAccounts();
+            accounts.removeAll(Arrays.asList(excluded));
+            for (Account first : accounts) {
+                for (Account second : accounts) {
+                    if (!first.equals(second) && samePartition ==
+                            (engine.partition(first.getId()) == engine.partition(second.getId())))
+                        return new Account[]{first, second};
+                }
+            }
+            testData.createLoadTestAccounts(16, ModelConstants.ACCOUNT_DEFAULT_BALANCE);
+        }
+        Assert.fail("Could not find accounts " + (samePartition ? "in the same partition" : "in two partitions"));
+        return null;
+    }
+
+    private Injector hammerAccountPair(String engine, Module module) throws Exception {
+        Injector injector = Guice.createInjector(module);
+        List<Account> accounts = testData.getTestAccounts();
+        this.hammerAccountPair(engine, injector, accounts.get(0), accounts.get(1));
+        return injector;
+    }
+
+    private void hammerAccountPair(String engine, Injector injector, Account firstAccount, Account secondAccount)
+            throws Exception {
+        TransactionService transactionService = injector.getInstance(TransactionService.class);
+        //Balances before this run, accounts may have been used by previous run
+        List<Account> accounts = testData.getTestAccounts();
+        Account first = accounts.stream().filter(a -> a.equals(firstAccount)).findFirst().get();
+        Account second = accounts.stream().filter(a -> a.equals(secondAccount)).findFirst().get();
+        int existingTransactions = testData.getTestTransactions().size();
+
+        AtomicInteger firstToSecond = new AtomicInteger();
+        AtomicInteger secondToFirst = new AtomicInteger();
+        AtomicInteger insufficientBalance = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            // Most clients drain first account, so insufficient balance check is exercised as well
+            boolean fromFirst = i % 4 != 0;
+            Account sender = fromFirst ? first : second;
+            Account receiver = fromFirst ? second : first;
+            AtomicInteger counter = fromFirst ? firstToSecond : secondToFirst;
+            clients.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < TRANSFERS_PER_CLIENT; j++) {
+                    Transaction transaction = new Transaction();
+                    transaction.setTitle("Concurrent transfer");
+                    transaction.setAmount(AMOUNT);
+                    transaction.setSenderAccountId(sender.getId());
+                    transaction.setReceiverAccountId(receiver.getId());
+                    try {
+                        transactionService.createTransaction(transaction);
+                        counter.incrementAndGet();
+                    } catch (InvalidRequestData e) {
+                        Assert.assertEquals(ERROR_INSUFFICIENT_BALANCE, e.getMessage());
+                        insufficientBalance.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> client : clients)
+            client.get(2, TimeUnit.MINUTES);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+
+        int succeeded = firstToSecond.get() + secondToFirst.get();
+        logger.info("{}: {} clients, {} transfers ({} insufficient balance) in {} ms, {} transfers/s",
+                engine, CLIENTS, succeeded, insufficientBalance.get(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), succeeded * 1_000_000_000L / elapsedNanos);
+
+        Assert.assertEquals(CLIENTS * TRANSFERS_PER_CLIENT, succeeded + insufficientBalance.get());
+        Assert.assertEquals(existingTransactions + succeeded, testData.getTestTransactions().size());
+
+        BigDecimal net = AMOUNT.multiply(BigDecimal.valueOf(firstToSecond.get() - secondToFirst.get()));
+        List<Account> updatedAccounts = testData.getTestAccounts();
+        Account firstUpdated = updatedAccounts.stream().filter(a -> a.equals(first)).findFirst().get();
+        Account secondUpdated = updatedAccounts.stream().filter(a -> a.equals(second)).findFirst().get();
+        Assert.assertEquals(0, first.getBalance().subtract(net).compareTo(firstUpdated.getBalance()));
+        Assert.assertEquals(0, second.getBalance().add(net).compareTo(secondUpdated.getBalance()));
+        Assert.assertTrue(firstUpdated.getBalance().signum() >= 0);
+    }
+}
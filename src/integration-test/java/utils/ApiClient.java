@@ -1,6 +1,7 @@
 package utils;
 
 import app.transformers.ObjectTransformer;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.fluent.Request;
 import org.apache.http.entity.ContentType;
@@ -22,12 +23,18 @@ public class ApiClient {
     public static class ApiClientResult {
         private int status;
         private String result;
+        private Header[] headers = new Header[0];
 
         public ApiClientResult(int status, String result) {
             this.status = status;
             this.result = result;
         }
 
+        public ApiClientResult(int status, String result, Header[] headers) {
+            this(status, result);
+            this.headers = headers;
+        }
+
         public int getStatus() {
             return status;
         }
@@ -35,6 +42,14 @@ public class ApiClient {
         public String getResult() {
             return result;
         }
+
+        public String getHeader(String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name))
+                    return header.getValue();
+            }
+            return null;
+        }
     }
 
     /**
@@ -51,7 +66,8 @@ public class ApiClient {
 
             ApiClientResult apiClientResult = new ApiClientResult(
                     httpResponse.getStatusLine().getStatusCode(),
-                    EntityUtils.toString(httpResponse.getEntity())
+                    EntityUtils.toString(httpResponse.getEntity()),
+                    httpResponse.getAllHeaders()
             );
             return apiClientResult;
         } catch (IOException e) {
@@ -69,10 +85,28 @@ public class ApiClient {
      * @throws IOException
      */
     public static ApiClientResult post(String url, Object objectToSend) throws IOException {
+        return post(url, objectToSend, null, null);
+    }
+
+    /**
+     * POST operation with request header
+     *
+     * @param url
+     * @param objectToSend
+     * @param headerName
+     * @param headerValue
+     * @return
+     * @throws IOException
+     */
+    public static ApiClientResult post(String url, Object objectToSend, String headerName, String headerValue)
+            throws IOException {
         try {
             String json = ObjectTransformer.objectToString(objectToSend);
-            HttpResponse httpResponse = Request.Post(url).connectTimeout(3000).socketTimeout(3000).bodyString(json,
-                    ContentType.APPLICATION_JSON).execute().returnResponse();
+            Request request = Request.Post(url).connectTimeout(3000).socketTimeout(3000).bodyString(json,
+                    ContentType.APPLICATION_JSON);
+            if (headerName != null)
+                request.addHeader(headerName, headerValue);
+            HttpResponse httpResponse = request.execute().returnResponse();
 
             ApiClientResult apiClientResult = new ApiClientResult(
                     httpResponse.getStatusLine().getStatusCode(),
@@ -85,6 +119,29 @@ public class ApiClient {
         }
     }
 
+    /**
+     * POST operation with raw body, e.g. CSV import
+     *
+     * @param url
+     * @param body
+     * @param contentType
+     * @return
+     * @throws IOException
+     */
+    public static ApiClientResult postContent(String url, String body, String contentType) throws IOException {
+        try {
+            HttpResponse httpResponse = Request.Post(url).connectTimeout(3000).socketTimeout(3000)
+                    .bodyString(body, ContentType.create(contentType, "UTF-8")).execute().returnResponse();
+            return new ApiClientResult(
+                    httpResponse.getStatusLine().getStatusCode(),
+                    EntityUtils.toString(httpResponse.getEntity())
+            );
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * PATCH operation
      *
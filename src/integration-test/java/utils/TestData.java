@@ -22,6 +22,7 @@ public class TestData {
         try (Connection con = dataSource.getConnection();
              Statement st = con.createStatement()) {
             st.execute("DELETE FROM account_transaction");
+            st.execute("DELETE FROM account_daily_summary");
             st.execute("DELETE FROM account");
             st.execute("DELETE FROM customer");
         }
@@ -79,6 +80,24 @@ public class TestData {
         }
     }
 
+    public List<Account> createLoadTestAccounts(int count, BigDecimal balance) throws SQLException {
+        this.createTestCustomers();
+        Customer customer = this.getTestCustomers().get(0);
+        String sql = "INSERT INTO account (customer_id, title, balance, updated, created) VALUES (?, ?, ?, NOW(), NOW" +
+                "())";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            for (int i = 0; i < count; i++) {
+                pst.setLong(1, customer.getId());
+                pst.setString(2, String.format("Load test account %d", i));
+                pst.setBigDecimal(3, balance);
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+        return this.getTestAccounts();
+    }
+
     public List<Account> getTestAccounts() throws SQLException {
         List<Account> result = new ArrayList<Account>();
         try (Connection con = dataSource.getConnection();
@@ -91,6 +110,23 @@ public class TestData {
         return result;
     }
 
+    public void deleteTestTransactionsAfter(Long transactionId) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement("DELETE FROM account_transaction WHERE id > ?")) {
+            pst.setLong(1, transactionId);
+            pst.execute();
+        }
+    }
+
+    public void updateTestAccountBalance(Long accountId, BigDecimal balance) throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement("UPDATE account SET balance = ? WHERE id = ?")) {
+            pst.setBigDecimal(1, balance);
+            pst.setLong(2, accountId);
+            pst.execute();
+        }
+    }
+
     public void createTestAccountTransactions() throws SQLException {
         this.createTestAccounts();
         List<Account> accounts = this.getTestAccounts();
@@ -0,0 +1,87 @@
+package app.ledger;
+
+import app.constants.ConfigConstants;
+import app.db.DataSource;
+import app.exceptions.PaymentAPIException;
+import app.models.Account;
+import app.models.Customer;
+import app.models.Transaction;
+import app.services.AccountService;
+import app.services.CustomerService;
+import app.services.TransactionService;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single transfer through ledger engine and through transaction service
+ * Run with gc profiler (-DjmhProfiler=gc) and compare bytes allocated per transfer (gc.alloc.rate.norm) of memory
+ * engine, which computes balances in long cents, with sql engine, which leaves balance arithmetic to DB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DjdbcUrl=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+public class LedgerTransferBenchmark {
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(0.01);
+
+    @Param({ConfigConstants.LEDGER_ENGINE_MEMORY, ConfigConstants.LEDGER_ENGINE_SQL})
+    private String engine;
+
+    private LedgerEngine ledgerEngine;
+    private TransactionService transactionService;
+    private long[] accountIds = new long[2];
+    private int transfers;
+
+    @Setup
+    public void setUp() throws PaymentAPIException {
+        System.setProperty(ConfigConstants.VAR_LEDGER_ENGINE, engine);
+        Injector injector = Guice.createInjector(new LedgerModule());
+        injector.getInstance(DataSource.class).cleanDB();
+        ledgerEngine = injector.getInstance(LedgerEngine.class);
+        transactionService = injector.getInstance(TransactionService.class);
+
+        Customer customer = new Customer();
+        customer.setFirstName("Benchmark");
+        customer.setLastName("Customer");
+        customer = injector.getInstance(CustomerService.class).createCustomer(customer);
+        AccountService accountService = injector.getInstance(AccountService.class);
+        for (int i = 0; i < accountIds.length; i++) {
+            Account account = new Account();
+            account.setCustomerId(customer.getId());
+            account.setTitle("Benchmark account " + i);
+            account.setBalance(BigDecimal.valueOf(1_000_000_000));
+            accountIds[i] = accountService.createAccount(account).getId();
+        }
+    }
+
+    @Benchmark
+    public Long engineTransfer() throws PaymentAPIException {
+        return ledgerEngine.transfer(this.nextTransaction());
+    }
+
+    @Benchmark
+    public Transaction serviceTransfer() throws PaymentAPIException {
+        return transactionService.createTransaction(this.nextTransaction());
+    }
+
+    /**
+     * Create transfer, direction alternates so balances stay the same
+     *
+     * @return
+     */
+    private Transaction nextTransaction() {
+        int sender = transfers++ & 1;
+        Transaction transaction = new Transaction();
+        transaction.setTitle("Benchmark transfer");
+        transaction.setAmount(AMOUNT);
+        transaction.setSenderAccountId(accountIds[sender]);
+        transaction.setReceiverAccountId(accountIds[1 - sender]);
+        return transaction;
+    }
+}
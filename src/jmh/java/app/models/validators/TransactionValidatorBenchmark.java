@@ -0,0 +1,53 @@
+package app.models.validators;
+
+import app.exceptions.InvalidRequestData;
+import app.models.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transaction validation for valid data and for data rejected with exception
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionValidatorBenchmark {
+    private Transaction validTransaction;
+    private Transaction invalidTransaction;
+
+    @Setup
+    public void setUp() {
+        validTransaction = new Transaction();
+        validTransaction.setTitle("Rent for last month");
+        validTransaction.setAmount(BigDecimal.valueOf(124.36));
+        validTransaction.setSenderAccountId(1L);
+        validTransaction.setReceiverAccountId(2L);
+
+        invalidTransaction = new Transaction();
+        invalidTransaction.setTitle("Rent for last month");
+        invalidTransaction.setAmount(BigDecimal.valueOf(124.36));
+        invalidTransaction.setSenderAccountId(1L);
+        invalidTransaction.setReceiverAccountId(1L);
+    }
+
+    @Benchmark
+    public Transaction validateValid() throws InvalidRequestData {
+        TransactionValidator.validateTransactionData(validTransaction);
+        return validTransaction;
+    }
+
+    @Benchmark
+    public String validateInvalid() {
+        try {
+            TransactionValidator.validateTransactionData(invalidTransaction);
+            return null;
+        } catch (InvalidRequestData e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package app.server;
+
+import app.Application;
+import app.constants.ConfigConstants;
+import app.constants.RouteConstants;
+import app.db.DataSource;
+import org.eclipse.jetty.client.HttpClient;
+import org.openjdk.jmh.annotations.*;
+import spark.Spark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares platform and virtual server threads
+ * Every invocation sends burst of concurrent account requests and waits for all responses, so number of in flight
+ * requests is much bigger than server thread pool. Virtual mode needs JDK 21 or newer and fails on older JDK, forks can
+ * run on JDK 21 while Gradle runs on older JDK with -DjmhJvm=path to JDK 21 java. Failed request fails the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-DjdbcUrl=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "-DserverMaxQueueWaitMillis=60000", "-DdbConnectionTimeoutMillis=60000"})
+public class ServerThreadModeBenchmark {
+    private static final int CONCURRENCY = 512;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    private HttpClient client;
+    private String accountUrl;
+    private final LongAdder errors = new LongAdder();
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("virtual".equals(mode) && !supportsVirtualThreads())
+            throw new IllegalStateException("Virtual threads are not supported by JDK " +
+                    System.getProperty("java.version") + ", run benchmark with -DjmhJvm=path to JDK 21 java");
+        System.setProperty(ConfigConstants.VAR_SERVER_VIRTUAL_THREADS, String.valueOf("virtual".equals(mode)));
+        int port = getFreePort();
+        System.setProperty("sparkPort", String.valueOf(port));
+        Application.main(new String[]{});
+        Spark.awaitInitialization();
+        accountUrl = "http://localhost:" + port + RouteConstants.Path.ACCOUNT + "/" + createAccount();
+
+        client = new HttpClient();
+        client.setMaxConnectionsPerDestination(CONCURRENCY);
+        client.setMaxRequestsQueuedPerDestination(CONCURRENCY);
+        client.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.stop();
+        Spark.stop();
+        Spark.awaitStop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENCY)
+    public void getAccountBurst() throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            client.newRequest(accountUrl).send(result -> {
+                if (result.isFailed() || result.getResponse().getStatus() != 200)
+                    errors.increment();
+                completed.countDown();
+            });
+        }
+        completed.await();
+        if (errors.sum() > 0)
+            throw new IllegalStateException("Failed requests: " + errors.sum());
+    }
+
+    private static long createAccount() throws SQLException {
+        try (Connection con = new DataSource().getConnection();
+             Statement st = con.createStatement()) {
+            st.execute("INSERT INTO customer (first_name, last_name, updated, created) " +
+                    "VALUES ('Benchmark', 'Customer', NOW(), NOW())");
+            st.execute("INSERT INTO account (customer_id, title, balance, updated, created) " +
+                    "SELECT MAX(id), 'Benchmark account', 2500, NOW(), NOW() FROM customer");
+            ResultSet rs = st.executeQuery("SELECT MAX(id) FROM account");
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static boolean supportsVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
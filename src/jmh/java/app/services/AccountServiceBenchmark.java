@@ -0,0 +1,61 @@
+package app.services;
+
+import app.constants.ConfigConstants;
+import app.db.DataSource;
+import app.exceptions.DataBaseException;
+import app.ledger.LedgerModule;
+import app.models.Account;
+import app.models.Customer;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures account lookup by id against embedded in-memory H2, with and without account cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DjdbcUrl=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+public class AccountServiceBenchmark {
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"0", "10000"})
+    private int accountCacheSize;
+
+    private AccountService accountService;
+    private long firstAccountId;
+
+    @Setup
+    public void setUp() throws DataBaseException {
+        System.setProperty(ConfigConstants.VAR_ACCOUNT_CACHE_SIZE, String.valueOf(accountCacheSize));
+        Injector injector = Guice.createInjector(new LedgerModule());
+        injector.getInstance(DataSource.class).cleanDB();
+        accountService = injector.getInstance(AccountService.class);
+
+        Customer customer = new Customer();
+        customer.setFirstName("Benchmark");
+        customer.setLastName("Customer");
+        customer = injector.getInstance(CustomerService.class).createCustomer(customer);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setCustomerId(customer.getId());
+            account.setTitle("Benchmark account " + i);
+            account.setBalance(BigDecimal.valueOf(2500));
+            Long id = accountService.createAccount(account).getId();
+            if (i == 0)
+                firstAccountId = id;
+        }
+    }
+
+    @Benchmark
+    public Account getAccount() throws DataBaseException {
+        return accountService.getAccount(firstAccountId + ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+}
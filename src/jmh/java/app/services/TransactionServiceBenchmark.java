@@ -0,0 +1,90 @@
+package app.services;
+
+import app.constants.ConfigConstants;
+import app.db.DataSource;
+import app.exceptions.PaymentAPIException;
+import app.ledger.LedgerModule;
+import app.models.Account;
+import app.models.Customer;
+import app.models.Transaction;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transfer creation under contention
+ * Transfers go between few accounts, so concurrent threads compete for the same accounts. Balances are big enough
+ * to never run out during the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-DjdbcUrl=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+public class TransactionServiceBenchmark {
+    private static final int ACCOUNTS = 16;
+    private static final BigDecimal AMOUNT = BigDecimal.valueOf(0.01);
+
+    @Param({ConfigConstants.LEDGER_ENGINE_MEMORY, ConfigConstants.LEDGER_ENGINE_PARTITIONED,
+            ConfigConstants.LEDGER_ENGINE_SQL})
+    private String engine;
+
+    private TransactionService transactionService;
+    private long[] accountIds = new long[ACCOUNTS];
+
+    @Setup
+    public void setUp() throws PaymentAPIException {
+        System.setProperty(ConfigConstants.VAR_LEDGER_ENGINE, engine);
+        Injector injector = Guice.createInjector(new LedgerModule());
+        injector.getInstance(DataSource.class).cleanDB();
+        transactionService = injector.getInstance(TransactionService.class);
+
+        Customer customer = new Customer();
+        customer.setFirstName("Benchmark");
+        customer.setLastName("Customer");
+        customer = injector.getInstance(CustomerService.class).createCustomer(customer);
+        AccountService accountService = injector.getInstance(AccountService.class);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setCustomerId(customer.getId());
+            account.setTitle("Benchmark account " + i);
+            account.setBalance(BigDecimal.valueOf(1_000_000_000));
+            accountIds[i] = accountService.createAccount(account).getId();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Transaction transfer1Thread() throws PaymentAPIException {
+        return this.transfer();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Transaction transfer8Threads() throws PaymentAPIException {
+        return this.transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Transaction transfer64Threads() throws PaymentAPIException {
+        return this.transfer();
+    }
+
+    private Transaction transfer() throws PaymentAPIException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(ACCOUNTS);
+        int receiver = (sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        Transaction transaction = new Transaction();
+        transaction.setTitle("Benchmark transfer");
+        transaction.setAmount(AMOUNT);
+        transaction.setSenderAccountId(accountIds[sender]);
+        transaction.setReceiverAccountId(accountIds[receiver]);
+        return transactionService.createTransaction(transaction);
+    }
+}
@@ -0,0 +1,118 @@
+package app.transformers;
+
+import app.models.Account;
+import app.models.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ObjectTransformer shared reader/writer path with ObjectMapper created for every call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectTransformerBenchmark {
+    private Account account;
+    private Transaction transaction;
+    private List<Transaction> transactions;
+    private String transactionJson;
+
+    @Setup
+    public void setUp() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        account = new Account();
+        account.setId(1L);
+        account.setCustomerId(1L);
+        account.setTitle("Savings account");
+        account.setBalance(BigDecimal.valueOf(2500.58));
+        account.setUpdated(now);
+        account.setCreated(now);
+
+        transactions = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            Transaction t = new Transaction();
+            t.setId(i);
+            t.setTitle("Rent for last month");
+            t.setAmount(BigDecimal.valueOf(124.36));
+            t.setSenderAccountId(1L);
+            t.setReceiverAccountId(2L);
+            t.setUpdated(now);
+            t.setCreated(now);
+            transactions.add(t);
+        }
+        transaction = transactions.get(0);
+        transactionJson = ObjectTransformer.objectToString(transaction);
+    }
+
+    @Benchmark
+    public String accountToStringLegacy() throws IOException {
+        return legacyObjectToString(account);
+    }
+
+    @Benchmark
+    public String accountToString() {
+        return ObjectTransformer.objectToString(account);
+    }
+
+    @Benchmark
+    public String transactionToStringLegacy() throws IOException {
+        return legacyObjectToString(transaction);
+    }
+
+    @Benchmark
+    public String transactionToString() {
+        return ObjectTransformer.objectToString(transaction);
+    }
+
+    @Benchmark
+    public String transactionListToStringLegacy() throws IOException {
+        return legacyObjectToString(transactions);
+    }
+
+    @Benchmark
+    public String transactionListToString() {
+        return ObjectTransformer.objectToString(transactions);
+    }
+
+    @Benchmark
+    public Transaction transactionFromStringLegacy() throws IOException {
+        return new ObjectMapper().readValue(transactionJson, Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction transactionFromString() throws IOException {
+        return ObjectTransformer.getObject(transactionJson, Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction transactionRoundTrip() throws IOException {
+        return ObjectTransformer.getObject(ObjectTransformer.objectToString(transaction), Transaction.class);
+    }
+
+    /**
+     * Serialization as it was done before shared writers were introduced
+     *
+     * @param obj
+     * @return
+     * @throws IOException
+     */
+    private static String legacyObjectToString(Object obj) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        StringWriter sw = new StringWriter();
+        mapper.writeValue(sw, obj);
+        return sw.toString();
+    }
+}
@@ -1,18 +1,39 @@
 package app;
 
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
 import app.constants.RouteConstants;
 import app.controllers.AccountController;
 import app.controllers.CustomerController;
 import app.controllers.TransactionController;
 import app.db.DataSource;
+import app.db.RequestConnection;
+import app.events.TransactionEvents;
+import app.exceptions.DataBaseException;
 import app.exceptions.PaymentAPIException;
+import app.journal.Journal;
+import app.ledger.LedgerEngine;
+import app.ledger.LedgerModule;
+import app.metrics.MetricsModule;
+import app.metrics.MetricsRegistry;
+import app.metrics.PrometheusFormatter;
+import app.metrics.RequestMetrics;
+import app.server.LoadShedder;
+import app.server.ServerThreadPool;
+import app.server.ThreadPoolTuner;
+import app.services.TransactionService;
 import app.transformers.ObjectTransformer;
+import app.utils.ConfigUtils;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.eclipse.jetty.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Optional;
 
 import static app.constants.ErrorMessages.ERROR_INTERNAL_SERVER_ERROR;
@@ -33,21 +54,50 @@ public class Application {
      * @param args
      */
     public static void main(String[] args) {
-        port(getSparkPort());
+        Injector injector = Guice.createInjector(new LedgerModule(), new MetricsModule());
 
-        //Enable multi threads
-        int maxThreads = 8;
-        int minThreads = 2;
-        int timeOutMillis = 30000;
-        threadPool(maxThreads, minThreads, timeOutMillis);
+        //Enable multi threads, pool size is configured with system properties
+        ServerThreadPool threadPool = injector.getInstance(ServerThreadPool.class);
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(threadPool));
+        port(getSparkPort());
+        logger.info("Server threads between {} and {}", threadPool.getMinThreads(), threadPool.getMaxThreads());
 
-        Injector injector = Guice.createInjector();
         DataSource dataSource = injector.getInstance(DataSource.class);
-        dataSource.cleanDB();
+        Journal journal = injector.getInstance(Journal.class);
+        if (journal.isEnabled()) {
+            //Persistence mode, keep existing data and recover transfers from journal
+            dataSource.createDB();
+            startJournal(journal);
+        } else
+            dataSource.cleanDB();
+        startEvents(injector.getInstance(TransactionEvents.class), injector.getInstance(TransactionService.class));
+        //Stop ledger threads before journal, so every acknowledged transfer is journaled
+        LedgerEngine ledgerEngine = injector.getInstance(LedgerEngine.class);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ledgerEngine.stop();
+            try {
+                journal.stop();
+            } catch (IOException e) {
+                logger.error("Error while closing journal", e);
+            }
+        }, "shutdown"));
 
+        //Request metrics wrap all other filters
+        RequestMetrics requestMetrics = injector.getInstance(RequestMetrics.class);
+        before("/*", requestMetrics.start);
+        afterAfter(requestMetrics.finish);
         before("/*", (req, res) -> {
             logger.debug(req.toString());
         });
+        //Reject requests early when server is saturated
+        LoadShedder loadShedder = injector.getInstance(LoadShedder.class);
+        before("/*", loadShedder);
+        //Services called by one request share one pooled connection
+        if (ConfigUtils.getBooleanProperty(ConfigConstants.VAR_DB_REQUEST_CONNECTION, true)) {
+            before("/*", (req, res) -> RequestConnection.begin());
+            afterAfter((req, res) -> RequestConnection.end());
+        }
+        injector.getInstance(ThreadPoolTuner.class).start();
         //Define paths
         path(RouteConstants.Path.ACCOUNT, injector.getInstance(AccountController.class));
         path(RouteConstants.Path.CUSTOMER, injector.getInstance(CustomerController.class));
@@ -59,10 +109,27 @@ public class Application {
             return "{\"status\":\"OK\"}";
         });
 
+        //Metrics endpoint
+        MetricsRegistry metricsRegistry = injector.getInstance(MetricsRegistry.class);
+        metricsRegistry.gauge(MetricConstants.HTTP_IN_FLIGHT, requestMetrics::getInFlight);
+        metricsRegistry.gauge(MetricConstants.DB_POOL_ACTIVE, dataSource::getActiveConnections);
+        metricsRegistry.gauge(MetricConstants.DB_POOL_IDLE, dataSource::getIdleConnections);
+        metricsRegistry.gauge(MetricConstants.DB_POOL_WAITING, dataSource::getThreadsAwaitingConnection);
+        get(RouteConstants.Path.METRICS, (req, res) -> {
+            res.status(HttpStatus.OK_200);
+            if (RouteConstants.Query.FORMAT_PROMETHEUS.equals(req.queryParams(RouteConstants.Query.FORMAT))) {
+                res.type(PrometheusFormatter.CONTENT_TYPE);
+                return PrometheusFormatter.format(metricsRegistry);
+            }
+            return ObjectTransformer.objectToString(metricsRegistry.getSnapshot());
+        });
+
         //Handle exceptions
         exception(PaymentAPIException.class, (e, req, res) -> {
             logger.warn(e.getMessage());
             res.status(e.getStatus());
+            if (e.getStatus() == HttpStatus.SERVICE_UNAVAILABLE_503)
+                res.header(RouteConstants.Header.RETRY_AFTER, "1");
             res.body(ObjectTransformer.exceptionToString(e));
         });
         exception(Exception.class, (e, req, res) -> {
@@ -80,10 +147,41 @@ public class Application {
         });
         after("/*", (req, res) -> {
             logger.debug(res.body());
-            res.type("application/json");
+            //Keep content type set by route
+            if (res.type() == null)
+                res.type("application/json");
         });
     }
 
+    /**
+     * Recover DB from journal and open it for new transfers
+     *
+     * @param journal
+     */
+    private static void startJournal(Journal journal) {
+        try {
+            journal.start();
+        } catch (IOException | SQLException e) {
+            logger.error("Error while recovering journal", e);
+            throw new RuntimeException("Could not recover journal");
+        }
+    }
+
+    /**
+     * Start transaction events after transactions committed before start
+     *
+     * @param transactionEvents
+     * @param transactionService
+     */
+    private static void startEvents(TransactionEvents transactionEvents, TransactionService transactionService) {
+        try {
+            transactionEvents.start(transactionService.getLastTransactionId());
+        } catch (DataBaseException e) {
+            logger.error("Error while reading last transaction", e);
+            throw new RuntimeException("Could not start transaction events");
+        }
+    }
+
     /**
      * Get Spark server port
      *
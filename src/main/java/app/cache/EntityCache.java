@@ -0,0 +1,122 @@
+package app.cache;
+
+import app.constants.MetricConstants;
+import app.exceptions.DataBaseException;
+import app.metrics.MetricsRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read through cache of entities by id
+ * Cache is bounded by size and entries expire after TTL. Writers must invalidate entity after the change is
+ * committed to DB. Entity loaded from DB is cached only if it was not invalidated while loading, so a load racing
+ * with a write can not put stale entity back into cache.
+ * Cached entities are shared between callers and must not be modified.
+ *
+ * @param <T> entity type
+ */
+public class EntityCache<T> {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<Long, T> cache;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Entity loader
+     *
+     * @param <T> entity type
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load(Long id) throws DataBaseException;
+    }
+
+    /**
+     * Create cache
+     *
+     * @param name            used in metric names
+     * @param maxSize         maximum number of cached entities, 0 disables caching
+     * @param ttlSeconds      time after which cached entity is reloaded
+     * @param metricsRegistry
+     */
+    public EntityCache(String name, int maxSize, int ttlSeconds, MetricsRegistry metricsRegistry) {
+        this.hits = metricsRegistry.counter(String.format(MetricConstants.CACHE_HITS, name));
+        this.misses = metricsRegistry.counter(String.format(MetricConstants.CACHE_MISSES, name));
+        this.evictions = metricsRegistry.counter(String.format(MetricConstants.CACHE_EVICTIONS, name));
+        this.cache = maxSize <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Math.max(1, ttlSeconds), TimeUnit.SECONDS)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * Get cached entity or load it
+     * Missing entities are not cached
+     *
+     * @param id
+     * @param loader
+     * @return
+     * @throws DataBaseException
+     */
+    public T get(Long id, Loader<T> loader) throws DataBaseException {
+        if (cache == null)
+            return loader.load(id);
+        T entity = cache.getIfPresent(id);
+        if (entity != null) {
+            hits.increment();
+            return entity;
+        }
+        misses.increment();
+        int stripe = stripe(id);
+        long version = versions.get(stripe);
+        entity = loader.load(id);
+        if (entity != null) {
+            cache.put(id, entity);
+            //Entity was changed while loading, cached copy may be stale
+            if (versions.get(stripe) != version)
+                cache.invalidate(id);
+        }
+        return entity;
+    }
+
+    /**
+     * Invalidate entity after it was changed in DB
+     *
+     * @param id
+     */
+    public void invalidate(Long id) {
+        if (cache == null || id == null)
+            return;
+        versions.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    /**
+     * Invalidate all entities
+     */
+    public void invalidateAll() {
+        if (cache == null)
+            return;
+        for (int i = 0; i < VERSION_STRIPES; i++)
+            versions.incrementAndGet(i);
+        cache.invalidateAll();
+    }
+
+    private void onRemoval(RemovalNotification<Long, T> notification) {
+        if (notification.wasEvicted())
+            evictions.increment();
+    }
+
+    private static int stripe(Long id) {
+        return (int) (id ^ (id >>> 32)) & (VERSION_STRIPES - 1);
+    }
+}
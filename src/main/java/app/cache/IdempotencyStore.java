@@ -0,0 +1,85 @@
+package app.cache;
+
+import app.constants.ConfigConstants;
+import app.exceptions.ApplicationException;
+import app.exceptions.PaymentAPIException;
+import app.models.Transaction;
+import app.utils.ConfigUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recently used idempotency keys with results of their transfers
+ * Store is bounded by size and keys expire after TTL. Expired keys are removed by background thread, so memory is
+ * released even when no new keys arrive. Only requests with the same key wait for each other. Transactions table has
+ * unique index on idempotency key, so it stays the source of truth for keys evicted from this store.
+ */
+@Singleton
+public class IdempotencyStore {
+    private static final long CLEANUP_INTERVAL_MILLIS = 1000;
+
+    private final Cache<String, CompletableFuture<Transaction>> cache = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_IDEMPOTENCY_CACHE_SIZE,
+                    ConfigConstants.DEFAULT_IDEMPOTENCY_CACHE_SIZE)))
+            .expireAfterWrite(Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_IDEMPOTENCY_TTL_SECONDS,
+                    ConfigConstants.DEFAULT_IDEMPOTENCY_TTL_SECONDS)), TimeUnit.SECONDS)
+            .build();
+
+    public IdempotencyStore() {
+        ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "idempotency-store-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(cache::cleanUp, CLEANUP_INTERVAL_MILLIS, CLEANUP_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserve key for transfer
+     *
+     * @param key
+     * @param result completed by caller when transfer finishes
+     * @return result of earlier transfer with the same key, null if key was reserved
+     */
+    public CompletableFuture<Transaction> reserve(String key, CompletableFuture<Transaction> result) {
+        return cache.asMap().putIfAbsent(key, result);
+    }
+
+    /**
+     * Release key of failed transfer, so it can be retried
+     *
+     * @param key
+     * @param result
+     */
+    public void release(String key, CompletableFuture<Transaction> result) {
+        cache.asMap().remove(key, result);
+    }
+
+    /**
+     * Wait for result of earlier transfer
+     *
+     * @param result
+     * @return
+     * @throws PaymentAPIException error of earlier transfer
+     */
+    public static Transaction await(CompletableFuture<Transaction> result) throws PaymentAPIException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PaymentAPIException)
+                throw (PaymentAPIException) e.getCause();
+            throw new ApplicationException(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while waiting for transfer with the same idempotency key");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package app.constants;
+
+/**
+ * System property names used for application configuration
+ */
+public class ConfigConstants {
+    public static final String VAR_JSON_INDENT_OUTPUT = "jsonIndentOutput";
+    public static final String VAR_JDBC_URL = "jdbcUrl";
+    public static final String VAR_LEDGER_ENGINE = "ledgerEngine";
+    public static final String VAR_LEDGER_LOCK_STRIPES = "ledgerLockStripes";
+    public static final String VAR_LEDGER_PARTITIONS = "ledgerPartitions";
+    public static final String VAR_LEDGER_PARTITION_QUEUE_SIZE = "ledgerPartitionQueueSize";
+    public static final String VAR_LEDGER_GROUP_COMMIT = "ledgerGroupCommit";
+    public static final String VAR_GROUP_COMMIT_WINDOW_MICROS = "groupCommitWindowMicros";
+    public static final String VAR_GROUP_COMMIT_MAX_SIZE = "groupCommitMaxSize";
+    public static final String VAR_GROUP_COMMIT_QUEUE_SIZE = "groupCommitQueueSize";
+    public static final String VAR_TRANSACTION_BATCH_MAX_SIZE = "transactionBatchMaxSize";
+    public static final String VAR_TRANSACTION_BATCH_COMMIT_SIZE = "transactionBatchCommitSize";
+    public static final String VAR_IMPORT_BATCH_SIZE = "importBatchSize";
+    public static final String VAR_IMPORT_MAX_ERRORS = "importMaxErrors";
+    public static final String VAR_IMPORT_MAX_LINE_LENGTH = "importMaxLineLength";
+    public static final String VAR_PAGE_DEFAULT_LIMIT = "pageDefaultLimit";
+    public static final String VAR_PAGE_MAX_LIMIT = "pageMaxLimit";
+    public static final String VAR_STREAM_PAGE_SIZE = "streamPageSize";
+    public static final String VAR_JOURNAL_DIR = "journalDir";
+    public static final String VAR_JOURNAL_SEGMENT_SIZE = "journalSegmentSize";
+    public static final String VAR_JOURNAL_SNAPSHOT_INTERVAL = "journalSnapshotInterval";
+    public static final String VAR_SERVER_MAX_THREADS = "serverMaxThreads";
+    public static final String VAR_SERVER_MIN_THREADS = "serverMinThreads";
+    public static final String VAR_SERVER_IDLE_TIMEOUT_MILLIS = "serverIdleTimeoutMillis";
+    public static final String VAR_SERVER_QUEUE_SIZE = "serverQueueSize";
+    public static final String VAR_SERVER_MAX_QUEUE_WAIT_MILLIS = "serverMaxQueueWaitMillis";
+    public static final String VAR_SERVER_ADAPTIVE = "serverAdaptive";
+    public static final String VAR_SERVER_ADAPTIVE_MAX_THREADS = "serverAdaptiveMaxThreads";
+    public static final String VAR_SERVER_VIRTUAL_THREADS = "serverVirtualThreads";
+    public static final String VAR_DB_POOL_SIZE = "dbPoolSize";
+    public static final String VAR_DB_CONNECTION_TIMEOUT_MILLIS = "dbConnectionTimeoutMillis";
+    public static final String VAR_DB_REQUEST_CONNECTION = "dbRequestConnection";
+    public static final String VAR_ACCOUNT_CACHE_SIZE = "accountCacheSize";
+    public static final String VAR_CUSTOMER_CACHE_SIZE = "customerCacheSize";
+    public static final String VAR_CACHE_TTL_SECONDS = "cacheTtlSeconds";
+    public static final String VAR_IDEMPOTENCY_CACHE_SIZE = "idempotencyCacheSize";
+    public static final String VAR_IDEMPOTENCY_TTL_SECONDS = "idempotencyTtlSeconds";
+    public static final String VAR_ASYNC_TRANSFER_QUEUE_SIZE = "asyncTransferQueueSize";
+    public static final String VAR_ASYNC_TRANSFER_WORKERS = "asyncTransferWorkers";
+    public static final String VAR_ASYNC_TRANSFER_TTL_SECONDS = "asyncTransferTtlSeconds";
+    public static final String VAR_ASYNC_TRANSFER_MAX_WAIT_MILLIS = "asyncTransferMaxWaitMillis";
+    public static final String VAR_ASYNC_TRANSFER_MAX_RETAINED = "asyncTransferMaxRetained";
+    public static final String VAR_ASYNC_TRANSFER_MAX_WAITERS = "asyncTransferMaxWaiters";
+    public static final String VAR_EVENT_QUEUE_SIZE = "eventQueueSize";
+    public static final String VAR_EVENT_BUFFER_SIZE = "eventBufferSize";
+    public static final String VAR_EVENT_MAX_SUBSCRIBERS = "eventMaxSubscribers";
+    public static final String VAR_EVENT_OVERFLOW = "eventOverflow";
+    public static final String VAR_EVENT_HEARTBEAT_MILLIS = "eventHeartbeatMillis";
+
+    public static final String DEFAULT_JDBC_URL = "jdbc:h2:~/payment;LOCK_TIMEOUT=10000";
+    public static final String LEDGER_ENGINE_MEMORY = "memory";
+    public static final String LEDGER_ENGINE_SQL = "sql";
+    public static final String LEDGER_ENGINE_PARTITIONED = "partitioned";
+    public static final String EVENT_OVERFLOW_DISCONNECT = "disconnect";
+    public static final String EVENT_OVERFLOW_DROP_OLDEST = "drop-oldest";
+
+    public static final int DEFAULT_LEDGER_LOCK_STRIPES = 1024;
+    public static final int DEFAULT_LEDGER_PARTITIONS = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_LEDGER_PARTITION_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_GROUP_COMMIT_WINDOW_MICROS = 1000;
+    public static final int DEFAULT_GROUP_COMMIT_MAX_SIZE = 256;
+    public static final int DEFAULT_GROUP_COMMIT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_TRANSACTION_BATCH_MAX_SIZE = 10000;
+    public static final int DEFAULT_TRANSACTION_BATCH_COMMIT_SIZE = 500;
+    public static final int DEFAULT_IMPORT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_IMPORT_MAX_ERRORS = 1000;
+    public static final int DEFAULT_IMPORT_MAX_LINE_LENGTH = 8192;
+    public static final int DEFAULT_PAGE_DEFAULT_LIMIT = 100;
+    public static final int DEFAULT_PAGE_MAX_LIMIT = 1000;
+    public static final int DEFAULT_STREAM_PAGE_SIZE = 1000;
+    public static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_JOURNAL_SNAPSHOT_INTERVAL = 100000;
+    public static final int DEFAULT_SERVER_MAX_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_SERVER_MIN_THREADS = 2;
+    public static final int DEFAULT_SERVER_IDLE_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_SERVER_QUEUE_SIZE = 1024;
+    public static final int DEFAULT_SERVER_MAX_QUEUE_WAIT_MILLIS = 1000;
+    public static final int DEFAULT_DB_CONNECTION_TIMEOUT_MILLIS = 1000;
+    public static final int DEFAULT_ACCOUNT_CACHE_SIZE = 10000;
+    public static final int DEFAULT_CUSTOMER_CACHE_SIZE = 10000;
+    public static final int DEFAULT_CACHE_TTL_SECONDS = 60;
+    public static final int DEFAULT_IDEMPOTENCY_CACHE_SIZE = 100000;
+    public static final int DEFAULT_IDEMPOTENCY_TTL_SECONDS = 24 * 60 * 60;
+    public static final int DEFAULT_ASYNC_TRANSFER_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_ASYNC_TRANSFER_WORKERS = 2;
+    public static final int DEFAULT_ASYNC_TRANSFER_TTL_SECONDS = 60 * 60;
+    public static final int DEFAULT_ASYNC_TRANSFER_MAX_WAIT_MILLIS = 30000;
+    public static final int DEFAULT_ASYNC_TRANSFER_MAX_RETAINED = 100000;
+    public static final int DEFAULT_EVENT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_EVENT_BUFFER_SIZE = 1000;
+    public static final int DEFAULT_EVENT_HEARTBEAT_MILLIS = 15000;
+}
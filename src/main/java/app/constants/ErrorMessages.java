@@ -19,9 +19,39 @@ public class ErrorMessages {
     public static final String ERROR_INVALID_PROPERTY_RECEIVER_ACCOUNT_ID = "Property receiver_account_id is required";
     public static final String ERROR_SAME_ACCOUNT = "Sender can not be same as receiver";
     public static final String ERROR_UNKNOWN_SENDER = "Unknown sender account";
-    public static final String ERROR_UNKNOWN_RECEIVER = "Unknown sender account";
-    public static final String ERROR_INSUFFICIENT_BALANCE = "Unknown sender account";
+    public static final String ERROR_UNKNOWN_RECEIVER = "Unknown receiver account";
+    public static final String ERROR_INSUFFICIENT_BALANCE = "Insufficient sender account balance";
+    public static final String ERROR_BALANCE_OVERFLOW = "Account balance would exceed maximum value";
+    public static final String ERROR_INVALID_REQUEST_DATA = "Invalid request data";
+    public static final String ERROR_INVALID_BATCH_SIZE = "Transaction batch should contain between 1 and %d " +
+            "transactions";
+    public static final String ERROR_INVALID_BATCH_MODE = "Invalid value for mode. Value should be atomic or partial";
+    public static final String ERROR_BATCH_ABORTED = "Transaction was not executed, because other batch transaction " +
+            "failed";
+    public static final String ERROR_INVALID_PAGE_LIMIT = "Invalid value for limit. Value should be between 1 and %d";
+    public static final String ERROR_INVALID_PAGE_CURSOR = "Invalid value for after. Value should be cursor " +
+            "returned in X-Next-Cursor header";
+    public static final String ERROR_INVALID_IDEMPOTENCY_KEY = "Invalid value for Idempotency-Key header. Value " +
+            "should be between 1 and 255 characters";
+    public static final String ERROR_IDEMPOTENCY_KEY_REUSED = "Idempotency-Key was already used for different " +
+            "transaction";
+    public static final String ERROR_COULD_NOT_FIND_TRANSFER = "Could not find asynchronous transfer with provided id";
+    public static final String ERROR_TRANSFER_QUEUE_FULL = "Asynchronous transfer queue is full. Try again later";
+    public static final String ERROR_TOO_MANY_TRANSFER_WAITERS =
+            "Too many requests wait for asynchronous transfers. Try again later";
+    public static final String ERROR_INVALID_WAIT = "Invalid value for wait. Value should be between 0 and %d";
+    public static final String ERROR_INVALID_DATE_RANGE = "Invalid value for from or to. Values should be dates " +
+            "in format yyyy-MM-dd and from should not be after to";
+    public static final String ERROR_INVALID_LAST_EVENT_ID = "Invalid value for Last-Event-ID. Value should be " +
+            "transaction id";
+    public static final String ERROR_TOO_MANY_SUBSCRIBERS = "Too many event subscribers. Try again later";
+    public static final String ERROR_INVALID_IMPORT_TYPE = "Invalid Content-Type for import. Value should be " +
+            "application/x-ndjson or text/csv";
+    public static final String ERROR_INVALID_CSV_HEADER = "First CSV line should contain property names";
+    public static final String ERROR_EMPTY_IMPORT = "Import should contain at least one record";
+    public static final String ERROR_LINE_TOO_LONG = "Line is too long. Maximum length is %d characters";
     public static final String ERROR_NOT_IMPLEMENTED = "Not implemented";
     public static final String ERROR_NOT_FOUND = "Route not found";
     public static final String ERROR_INTERNAL_SERVER_ERROR = "Internal server error";
+    public static final String ERROR_SERVICE_UNAVAILABLE = "Server is overloaded. Try again later";
 }
@@ -0,0 +1,40 @@
+package app.constants;
+
+/**
+ * Metric names
+ * Labels are part of the name in Prometheus format, e.g. name{label="value"}
+ */
+public class MetricConstants {
+    public static final String GROUP_COMMIT_SIZE = "ledger.groupCommit.size";
+    public static final String GROUP_COMMIT_DURATION_MICROS = "ledger.groupCommit.durationMicros";
+    public static final String SERVER_QUEUE_WAIT_MICROS = "server.queueWaitMicros";
+    public static final String SERVER_SHED_REQUESTS = "server.shedRequests";
+    public static final String CACHE_HITS = "cache.%s.hits";
+    public static final String CACHE_MISSES = "cache.%s.misses";
+    public static final String CACHE_EVICTIONS = "cache.%s.evictions";
+    public static final String IDEMPOTENCY_REPLAYS = "idempotency.replays";
+    public static final String ASYNC_TRANSFERS_QUEUED = "ledger.async.queued";
+    public static final String ASYNC_TRANSFERS_REJECTED = "ledger.async.rejected";
+    public static final String ASYNC_TRANSFER_DURATION_MICROS = "ledger.async.durationMicros";
+    public static final String ASYNC_TRANSFER_BATCH_SIZE = "ledger.async.batchSize";
+    public static final String ASYNC_TRANSFER_WAITERS = "ledger.async.waiters";
+    public static final String EVENTS_SUBSCRIBERS = "events.subscribers";
+    public static final String EVENTS_PUBLISHED = "events.published";
+    public static final String EVENTS_DROPPED = "events.dropped";
+    public static final String EVENTS_SUBSCRIPTIONS_CLOSED = "events.subscriptionsClosed";
+    public static final String IMPORT_RECORDS_IMPORTED = "import.records{outcome=\"imported\"}";
+    public static final String IMPORT_RECORDS_FAILED = "import.records{outcome=\"failed\"}";
+    public static final String HTTP_REQUESTS = "http.requests{method=\"%s\",route=\"%s\",status=\"%dxx\"}";
+    public static final String HTTP_REQUEST_DURATION_MICROS =
+            "http.request.durationMicros{method=\"%s\",route=\"%s\"}";
+    public static final String HTTP_IN_FLIGHT = "http.inFlight";
+    public static final String SERVICE_DURATION_MICROS = "service.durationMicros{service=\"%s\",method=\"%s\"}";
+    public static final String DB_POOL_ACTIVE = "db.pool.active";
+    public static final String DB_POOL_IDLE = "db.pool.idle";
+    public static final String DB_POOL_WAITING = "db.pool.waiting";
+    public static final String TRANSFERS_SUCCESS = "ledger.transfers{outcome=\"success\"}";
+    public static final String TRANSFERS_INSUFFICIENT_BALANCE = "ledger.transfers{outcome=\"insufficientBalance\"}";
+    public static final String TRANSFERS_CONFLICT = "ledger.transfers{outcome=\"conflict\"}";
+    public static final String TRANSFERS_REJECTED = "ledger.transfers{outcome=\"rejected\"}";
+    public static final String TRANSFERS_ERROR = "ledger.transfers{outcome=\"error\"}";
+}
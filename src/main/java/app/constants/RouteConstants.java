@@ -14,6 +14,12 @@ public class RouteConstants {
         public final static String CUSTOMER = "/customer";
         public final static String TRANSACTION = "/transaction";
         public final static String HEALTH = "/health";
+        public final static String METRICS = "/metrics";
+        public final static String BATCH = "/batch";
+        public final static String ASYNC = "/async";
+        public final static String SUMMARY = "/summary";
+        public final static String EVENTS = "/events";
+        public final static String IMPORT = "/import";
     }
 
     /**
@@ -23,5 +29,35 @@ public class RouteConstants {
         public final static String CUSTOMER_ID = ":cid";
         public final static String ACCOUNT_ID = ":aid";
         public final static String TRANSACTION_ID = ":tid";
+        public final static String TRANSFER_ID = ":transferId";
+    }
+
+    /**
+     * Query parameter constants
+     */
+    public static class Query {
+        public final static String MODE = "mode";
+        public final static String MODE_ATOMIC = "atomic";
+        public final static String MODE_PARTIAL = "partial";
+        public final static String LIMIT = "limit";
+        public final static String AFTER = "after";
+        public final static String FORMAT = "format";
+        public final static String FORMAT_PROMETHEUS = "prometheus";
+        public final static String WAIT = "wait";
+        public final static String FROM = "from";
+        public final static String TO = "to";
+        public final static String LAST_EVENT_ID = "lastEventId";
+    }
+
+    /**
+     * Response header constants
+     */
+    public static class Header {
+        public final static String NEXT_CURSOR = "X-Next-Cursor";
+        public final static String IDEMPOTENCY_KEY = "Idempotency-Key";
+        public final static String RETRY_AFTER = "Retry-After";
+        public final static String LOCATION = "Location";
+        public final static String LAST_EVENT_ID = "Last-Event-ID";
+        public final static String CACHE_CONTROL = "Cache-Control";
     }
 }
@@ -2,17 +2,25 @@ package app.controllers;
 
 import app.constants.ModelConstants;
 import app.constants.RouteConstants;
+import app.events.EventStream;
+import app.events.TransactionEvents;
+import app.exceptions.DataBaseException;
 import app.exceptions.InvalidRequestData;
 import app.exceptions.NotFoundException;
 import app.exceptions.NotImplementedException;
 import app.models.Account;
 import app.models.Customer;
+import app.models.ImportResult;
 import app.models.Transaction;
 import app.models.validators.AccountValidator;
 import app.services.AccountService;
 import app.services.CustomerService;
+import app.services.ImportService;
 import app.services.TransactionService;
+import app.transformers.JsonArrayStream;
 import app.transformers.ObjectTransformer;
+import app.transformers.RecordReader;
+import app.utils.PagingUtils;
 import app.utils.RequestUtils;
 import com.google.inject.Inject;
 import org.eclipse.jetty.http.HttpStatus;
@@ -22,11 +30,14 @@ import spark.Response;
 import spark.Route;
 import spark.RouteGroup;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_ACCOUNT;
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_CUSTOMER;
+import static app.constants.ErrorMessages.ERROR_INVALID_DATE_RANGE;
 import static spark.Spark.*;
 
 /**
@@ -39,6 +50,10 @@ public class AccountController implements RouteGroup {
     private CustomerService customerService;
     @Inject
     private TransactionService transactionService;
+    @Inject
+    private TransactionEvents transactionEvents;
+    @Inject
+    private ImportService importService;
 
     /**
      * Create AccountController routes
@@ -47,6 +62,7 @@ public class AccountController implements RouteGroup {
     public void addRoutes() {
         get(RouteConstants.Path.EMPTY, MimeTypes.Type.APPLICATION_JSON.asString(), this.getAllAccounts);
         post(RouteConstants.Path.EMPTY, MimeTypes.Type.APPLICATION_JSON.asString(), this.createAccount);
+        post(RouteConstants.Path.IMPORT, this.importAccounts);
         get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.ACCOUNT_ID,
                 MimeTypes.Type.APPLICATION_JSON.asString(), this.getAccount);
         patch(RouteConstants.Path.SEPARATOR + RouteConstants.Params.ACCOUNT_ID,
@@ -55,14 +71,34 @@ public class AccountController implements RouteGroup {
                 MimeTypes.Type.APPLICATION_JSON.asString(), this.notImplemented);
         get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.ACCOUNT_ID + RouteConstants.Path.TRANSACTION,
                 MimeTypes.Type.APPLICATION_JSON.asString(), this.getAccountTransactions);
+        get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.ACCOUNT_ID + RouteConstants.Path.SUMMARY,
+                MimeTypes.Type.APPLICATION_JSON.asString(), this.getAccountSummary);
+        get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.ACCOUNT_ID + RouteConstants.Path.EVENTS,
+                this.getAccountEvents);
     }
 
     /**
      * Get all account despite of customer
+     * Accounts are streamed directly to response output stream, unless single page is requested
      */
     private Route getAllAccounts = (Request req, Response res) -> {
-        List<Account> result = this.accountService.getAccounts();
-        return ObjectTransformer.objectToString(result);
+        if (PagingUtils.isPageRequest(req)) {
+            int limit = PagingUtils.getLimit(req);
+            List<Account> accounts = this.accountService.getAccountsPage(PagingUtils.getAfterId(req), limit + 1);
+            res.status(HttpStatus.OK_200);
+            return ObjectTransformer.objectToString(PagingUtils.toPage(res, accounts, limit, Account::getId));
+        }
+        res.status(HttpStatus.OK_200);
+        res.type(MimeTypes.Type.APPLICATION_JSON.asString());
+        JsonArrayStream stream = ObjectTransformer.createArrayStream(res.raw().getOutputStream());
+        try {
+            this.accountService.streamAccounts(stream::write);
+        } catch (DataBaseException | RuntimeException e) {
+            stream.abort(res.raw(), e);
+            throw e;
+        }
+        stream.close();
+        return "";
     };
 
     /**
@@ -98,6 +134,18 @@ public class AccountController implements RouteGroup {
         return ObjectTransformer.objectToString(account);
     };
 
+    /**
+     * Import accounts from NDJSON or CSV request body
+     */
+    private Route importAccounts = (Request req, Response res) -> {
+        ImportResult result;
+        try (RecordReader<Account> reader = RequestUtils.getRecordReader(req, Account.class)) {
+            result = importService.importAccounts(reader);
+        }
+        res.status(result.getFailed() == 0 ? HttpStatus.CREATED_201 : HttpStatus.MULTI_STATUS_207);
+        return ObjectTransformer.objectToString(result);
+    };
+
     /**
      * Update existing account
      */
@@ -116,7 +164,7 @@ public class AccountController implements RouteGroup {
 
         AccountValidator.validateAccountData(updateAccount);
 
-        updateAccount = accountService.updateAccount(updateAccount);
+        updateAccount = accountService.updateAccount(existingAccount.get(), updateAccount);
         res.status(HttpStatus.OK_200);
         return ObjectTransformer.objectToString(updateAccount);
     };
@@ -138,10 +186,62 @@ public class AccountController implements RouteGroup {
         if (!existingAccount.isPresent())
             throw new NotFoundException(ERROR_COULD_NOT_FIND_ACCOUNT);
 
-        List<Transaction> transactions =
-                this.transactionService.getTransactionsByAccountId(existingAccount.get().getId());
+        List<Transaction> transactions;
+        if (PagingUtils.isPageRequest(req)) {
+            int limit = PagingUtils.getLimit(req);
+            transactions = PagingUtils.toPage(res, this.transactionService.getTransactionsPageByAccountId(
+                    existingAccount.get().getId(), PagingUtils.getAfterId(req), limit + 1), limit,
+                    Transaction::getId);
+        } else
+            transactions = this.transactionService.getTransactionsByAccountId(existingAccount.get().getId());
 
         res.status(HttpStatus.OK_200);
         return ObjectTransformer.objectToString(transactions);
     };
+
+    /**
+     * Get account debit and credit totals by day
+     * Optional query parameters from and to (yyyy-MM-dd) limit date range, both days included
+     */
+    private Route getAccountSummary = (Request req, Response res) -> {
+        Long accountId = RequestUtils.getIdFromRequest(req, RouteConstants.Params.ACCOUNT_ID);
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = parseDate(req.queryParams(RouteConstants.Query.FROM));
+            to = parseDate(req.queryParams(RouteConstants.Query.TO));
+        } catch (DateTimeParseException e) {
+            throw new InvalidRequestData(ERROR_INVALID_DATE_RANGE);
+        }
+        if (from != null && to != null && from.isAfter(to))
+            throw new InvalidRequestData(ERROR_INVALID_DATE_RANGE);
+
+        Optional<Account> existingAccount = Optional.ofNullable(accountService.getAccount(accountId));
+        if (!existingAccount.isPresent())
+            throw new NotFoundException(ERROR_COULD_NOT_FIND_ACCOUNT);
+
+        res.status(HttpStatus.OK_200);
+        return ObjectTransformer.objectToString(transactionService.getAccountSummary(accountId, from, to));
+    };
+
+    /**
+     * Stream committed transactions of account as server-sent events
+     * Client resumes after reconnect with Last-Event-ID header or lastEventId query parameter
+     */
+    private Route getAccountEvents = (Request req, Response res) -> {
+        Long accountId = RequestUtils.getIdFromRequest(req, RouteConstants.Params.ACCOUNT_ID);
+        Long lastEventId = RequestUtils.getLastEventId(req);
+
+        Optional<Account> existingAccount = Optional.ofNullable(accountService.getAccount(accountId));
+        if (!existingAccount.isPresent())
+            throw new NotFoundException(ERROR_COULD_NOT_FIND_ACCOUNT);
+
+        EventStream.stream(res, transactionEvents, accountId, lastEventId, (afterId, limit) ->
+                transactionService.getTransactionsPageByAccountId(accountId, afterId, limit));
+        return "";
+    };
+
+    private static LocalDate parseDate(String date) {
+        return date == null || date.isEmpty() ? null : LocalDate.parse(date);
+    }
 }
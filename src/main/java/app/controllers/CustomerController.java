@@ -1,17 +1,24 @@
 package app.controllers;
 
 import app.constants.RouteConstants;
+import app.exceptions.DataBaseException;
 import app.exceptions.NotFoundException;
 import app.exceptions.NotImplementedException;
 import app.models.Account;
 import app.models.Customer;
+import app.models.ImportResult;
 import app.models.validators.CustomerValidator;
 import app.services.AccountService;
 import app.services.CustomerService;
+import app.services.ImportService;
+import app.transformers.JsonArrayStream;
 import app.transformers.ObjectTransformer;
+import app.transformers.RecordReader;
+import app.utils.PagingUtils;
 import app.utils.RequestUtils;
 import com.google.inject.Inject;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.MimeTypes;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -31,6 +38,8 @@ public class CustomerController implements RouteGroup {
     private CustomerService customerService;
     @Inject
     private AccountService accountService;
+    @Inject
+    private ImportService importService;
 
     /**
      * Add CustomerController routes
@@ -40,6 +49,7 @@ public class CustomerController implements RouteGroup {
         get(RouteConstants.Path.EMPTY, this.getAllCustomers);
         get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.CUSTOMER_ID, this.getCustomer);
         post(RouteConstants.Path.EMPTY, "application/json", this.createCustomer);
+        post(RouteConstants.Path.IMPORT, this.importCustomers);
         patch(RouteConstants.Path.SEPARATOR + RouteConstants.Params.CUSTOMER_ID, "application/json",
                 this.updateCustomer);
         delete(RouteConstants.Path.SEPARATOR + RouteConstants.Params.CUSTOMER_ID, this.deleteCustomer);
@@ -49,10 +59,26 @@ public class CustomerController implements RouteGroup {
 
     /**
      * Get all customers
+     * Customers are streamed directly to response output stream, unless single page is requested
      */
     private Route getAllCustomers = (Request req, Response res) -> {
-        List<Customer> customers = this.customerService.getCustomers();
-        return ObjectTransformer.objectToString(customers);
+        if (PagingUtils.isPageRequest(req)) {
+            int limit = PagingUtils.getLimit(req);
+            List<Customer> customers = this.customerService.getCustomersPage(PagingUtils.getAfterId(req), limit + 1);
+            res.status(HttpStatus.OK_200);
+            return ObjectTransformer.objectToString(PagingUtils.toPage(res, customers, limit, Customer::getId));
+        }
+        res.status(HttpStatus.OK_200);
+        res.type(MimeTypes.Type.APPLICATION_JSON.asString());
+        JsonArrayStream stream = ObjectTransformer.createArrayStream(res.raw().getOutputStream());
+        try {
+            this.customerService.streamCustomers(stream::write);
+        } catch (DataBaseException | RuntimeException e) {
+            stream.abort(res.raw(), e);
+            throw e;
+        }
+        stream.close();
+        return "";
     };
 
     /**
@@ -80,6 +106,18 @@ public class CustomerController implements RouteGroup {
         return ObjectTransformer.objectToString(customer);
     };
 
+    /**
+     * Import customers from NDJSON or CSV request body
+     */
+    private Route importCustomers = (Request req, Response res) -> {
+        ImportResult result;
+        try (RecordReader<Customer> reader = RequestUtils.getRecordReader(req, Customer.class)) {
+            result = importService.importCustomers(reader);
+        }
+        res.status(result.getFailed() == 0 ? HttpStatus.CREATED_201 : HttpStatus.MULTI_STATUS_207);
+        return ObjectTransformer.objectToString(result);
+    };
+
     /**
      * Update existing customer
      */
@@ -1,22 +1,33 @@
 package app.controllers;
 
+import app.constants.ConfigConstants;
 import app.constants.RouteConstants;
+import app.events.EventStream;
+import app.events.TransactionEvents;
+import app.exceptions.DataBaseException;
 import app.exceptions.InvalidRequestData;
 import app.exceptions.NotFoundException;
-import app.models.Account;
+import app.exceptions.ServiceUnavailableException;
+import app.models.AsyncTransfer;
 import app.models.Transaction;
+import app.models.TransactionBatchItem;
 import app.models.validators.TransactionValidator;
-import app.services.AccountService;
+import app.services.AsyncTransferService;
 import app.services.TransactionService;
+import app.transformers.JsonArrayStream;
 import app.transformers.ObjectTransformer;
+import app.utils.ConfigUtils;
+import app.utils.PagingUtils;
 import app.utils.RequestUtils;
 import com.google.inject.Inject;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.MimeTypes;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 import spark.RouteGroup;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,25 +39,53 @@ import static spark.Spark.post;
  * Transaction controller
  */
 public class TransactionController implements RouteGroup {
-    @Inject
-    private AccountService accountService;
     @Inject
     private TransactionService transactionService;
+    @Inject
+    private AsyncTransferService asyncTransferService;
+    @Inject
+    private TransactionEvents transactionEvents;
+
+    private final int batchMaxSize = ConfigUtils.getIntProperty(ConfigConstants.VAR_TRANSACTION_BATCH_MAX_SIZE,
+            ConfigConstants.DEFAULT_TRANSACTION_BATCH_MAX_SIZE);
+    private final int asyncMaxWaitMillis = ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_ASYNC_TRANSFER_MAX_WAIT_MILLIS, ConfigConstants.DEFAULT_ASYNC_TRANSFER_MAX_WAIT_MILLIS);
 
     @Override
     public void addRoutes() {
         get(RouteConstants.Path.EMPTY, this.getAllTransactions);
         post(RouteConstants.Path.EMPTY, this.createTransaction);
+        post(RouteConstants.Path.BATCH, this.createTransactions);
+        post(RouteConstants.Path.ASYNC, this.submitTransaction);
+        get(RouteConstants.Path.ASYNC + RouteConstants.Path.SEPARATOR + RouteConstants.Params.TRANSFER_ID,
+                this.getAsyncTransfer);
+        get(RouteConstants.Path.EVENTS, this.getTransactionEvents);
         get(RouteConstants.Path.SEPARATOR + RouteConstants.Params.TRANSACTION_ID, this.getTransaction);
     }
 
     /**
      * Get all transactions
+     * Transactions are streamed directly to response output stream, unless single page is requested
      */
     private Route getAllTransactions = (Request req, Response res) -> {
-        List<Transaction> transactions = this.transactionService.getTransactions();
+        if (PagingUtils.isPageRequest(req)) {
+            int limit = PagingUtils.getLimit(req);
+            List<Transaction> transactions =
+                    this.transactionService.getTransactionsPage(PagingUtils.getAfterId(req), limit + 1);
+            res.status(HttpStatus.OK_200);
+            return ObjectTransformer.objectToString(PagingUtils.toPage(res, transactions, limit, Transaction::getId));
+        }
         res.status(HttpStatus.OK_200);
-        return ObjectTransformer.objectToString(transactions);
+        res.type(MimeTypes.Type.APPLICATION_JSON.asString());
+        JsonArrayStream stream = ObjectTransformer.createArrayStream(res.raw().getOutputStream());
+        try {
+            this.transactionService.streamTransactions(stream::write);
+        } catch (DataBaseException | RuntimeException e) {
+            stream.abort(res.raw(), e);
+            throw e;
+        }
+        stream.close();
+        return "";
     };
 
     /**
@@ -64,35 +103,117 @@ public class TransactionController implements RouteGroup {
 
     /**
      * Create transaction
+     * Optional Idempotency-Key header makes retries of the same request safe
      */
     private Route createTransaction = (Request req, Response res) -> {
         Transaction createTransaction = ObjectTransformer.getRequestObject(req.body(), Transaction.class);
         TransactionValidator.validateTransactionData(createTransaction);
+        String idempotencyKey = req.headers(RouteConstants.Header.IDEMPOTENCY_KEY);
+        if (idempotencyKey != null) {
+            if (idempotencyKey.isEmpty() || idempotencyKey.length() > 255)
+                throw new InvalidRequestData(ERROR_INVALID_IDEMPOTENCY_KEY);
+            createTransaction.setIdempotencyKey(idempotencyKey);
+        }
 
-        Optional<Account> receiverAccountOpt =
-                Optional.ofNullable(this.accountService.getAccount(createTransaction.getReceiverAccountId()));
-        if (!receiverAccountOpt.isPresent())
-            throw new InvalidRequestData(ERROR_UNKNOWN_RECEIVER);
-        Account receiverAccount = receiverAccountOpt.get();
+        createTransaction = transactionService.createTransaction(createTransaction);
 
-        Optional<Account> senderAccountOpt =
-                Optional.ofNullable(this.accountService.getAccount(createTransaction.getSenderAccountId()));
-        if (!senderAccountOpt.isPresent())
-            throw new InvalidRequestData(ERROR_UNKNOWN_SENDER);
-        Account senderAccount = senderAccountOpt.get();
+        res.status(HttpStatus.CREATED_201);
+        return ObjectTransformer.objectToString(createTransaction);
+    };
 
-        if (createTransaction.getAmount().compareTo(senderAccount.getBalance()) > 0)
-            throw new InvalidRequestData(ERROR_INSUFFICIENT_BALANCE);
+    /**
+     * Submit transaction for asynchronous processing
+     * Responds with 202 as soon as transfer is queued, transfer state is available at Location header URL
+     */
+    private Route submitTransaction = (Request req, Response res) -> {
+        Transaction transaction = ObjectTransformer.getRequestObject(req.body(), Transaction.class);
+        TransactionValidator.validateTransactionData(transaction);
 
-        //Increase receiver balance
-        receiverAccount.setBalance(receiverAccount.getBalance().add(createTransaction.getAmount()));
-        //Decrease sender balance
-        senderAccount.setBalance(senderAccount.getBalance().subtract(createTransaction.getAmount()));
+        AsyncTransfer transfer = asyncTransferService.submit(transaction);
+        if (transfer == null)
+            throw new ServiceUnavailableException(ERROR_TRANSFER_QUEUE_FULL);
+        res.status(HttpStatus.ACCEPTED_202);
+        res.header(RouteConstants.Header.LOCATION, RouteConstants.Path.TRANSACTION + RouteConstants.Path.ASYNC +
+                RouteConstants.Path.SEPARATOR + transfer.getId());
+        return ObjectTransformer.objectToString(transfer);
+    };
 
-        //Try to save
-        createTransaction = transactionService.createTransaction(senderAccount, receiverAccount, createTransaction);
+    /**
+     * Get asynchronous transfer state
+     * Query parameter wait (milliseconds) holds request until pending transfer is processed or time runs out
+     */
+    private Route getAsyncTransfer = (Request req, Response res) -> {
+        long waitMillis;
+        try {
+            waitMillis = Long.parseLong(req.queryParamOrDefault(RouteConstants.Query.WAIT, "0"));
+        } catch (NumberFormatException e) {
+            waitMillis = -1;
+        }
+        if (waitMillis < 0 || waitMillis > asyncMaxWaitMillis)
+            throw new InvalidRequestData(String.format(ERROR_INVALID_WAIT, asyncMaxWaitMillis));
 
-        res.status(HttpStatus.CREATED_201);
-        return ObjectTransformer.objectToString(createTransaction);
+        AsyncTransfer transfer =
+                asyncTransferService.getTransfer(req.params(RouteConstants.Params.TRANSFER_ID), waitMillis);
+        if (transfer == null)
+            throw new NotFoundException(ERROR_COULD_NOT_FIND_TRANSFER);
+        res.status(HttpStatus.OK_200);
+        return ObjectTransformer.objectToString(transfer);
+    };
+
+    /**
+     * Stream all committed transactions as server-sent events
+     * Client resumes after reconnect with Last-Event-ID header or lastEventId query parameter
+     */
+    private Route getTransactionEvents = (Request req, Response res) -> {
+        Long lastEventId = RequestUtils.getLastEventId(req);
+        EventStream.stream(res, transactionEvents, null, lastEventId, transactionService::getTransactionsPage);
+        return "";
+    };
+
+    /**
+     * Create transactions batch
+     * Query parameter mode selects atomic (default, all or nothing) or partial (best effort) execution
+     */
+    private Route createTransactions = (Request req, Response res) -> {
+        String mode = req.queryParamOrDefault(RouteConstants.Query.MODE, RouteConstants.Query.MODE_ATOMIC);
+        if (!RouteConstants.Query.MODE_ATOMIC.equals(mode) && !RouteConstants.Query.MODE_PARTIAL.equals(mode))
+            throw new InvalidRequestData(ERROR_INVALID_BATCH_MODE);
+        boolean atomic = RouteConstants.Query.MODE_ATOMIC.equals(mode);
+
+        Transaction[] transactions = ObjectTransformer.getRequestObject(req.body(), Transaction[].class);
+        if (transactions == null || transactions.length == 0 || transactions.length > batchMaxSize)
+            throw new InvalidRequestData(String.format(ERROR_INVALID_BATCH_SIZE, batchMaxSize));
+
+        TransactionBatchItem[] result = new TransactionBatchItem[transactions.length];
+        List<Transaction> validTransactions = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < transactions.length; i++) {
+            try {
+                if (transactions[i] == null)
+                    throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
+                TransactionValidator.validateTransactionData(transactions[i]);
+                validTransactions.add(transactions[i]);
+                validIndexes.add(i);
+            } catch (InvalidRequestData e) {
+                result[i] = new TransactionBatchItem(e);
+            }
+        }
+
+        if (atomic && validTransactions.size() < transactions.length) {
+            for (int i : validIndexes)
+                result[i] = new TransactionBatchItem(HttpStatus.FAILED_DEPENDENCY_424, null, ERROR_BATCH_ABORTED);
+        } else if (!validTransactions.isEmpty()) {
+            List<TransactionBatchItem> created = transactionService.createTransactions(validTransactions, atomic);
+            for (int i = 0; i < created.size(); i++)
+                result[validIndexes.get(i)] = created.get(i);
+        }
+
+        boolean allCreated = true;
+        for (int i = 0; i < result.length; i++) {
+            result[i].setIndex(i);
+            allCreated &= result[i].getStatus() == HttpStatus.CREATED_201;
+        }
+        res.status(allCreated ? HttpStatus.CREATED_201 : HttpStatus.MULTI_STATUS_207);
+        return ObjectTransformer.objectToString(result);
     };
 }
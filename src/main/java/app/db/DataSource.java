@@ -1,6 +1,8 @@
 package app.db;
 
+import app.constants.ConfigConstants;
 import app.exceptions.ApplicationException;
+import app.utils.ConfigUtils;
 import com.google.inject.Singleton;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
@@ -8,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -21,13 +24,25 @@ public class DataSource {
     private static final HikariDataSource ds;
 
     static {
-        config.setJdbcUrl("jdbc:h2:~/payment");
+        config.setJdbcUrl(ConfigUtils.getStringProperty(ConfigConstants.VAR_JDBC_URL,
+                ConfigConstants.DEFAULT_JDBC_URL));
         config.setUsername("");
         config.setPassword("");
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        //Every server thread can hold one connection, so by default pool matches server thread pool
+        int serverMaxThreads = ConfigUtils.getIntProperty(ConfigConstants.VAR_SERVER_MAX_THREADS,
+                ConfigConstants.DEFAULT_SERVER_MAX_THREADS);
+        config.setMaximumPoolSize(Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_DB_POOL_SIZE,
+                serverMaxThreads)));
+        //Hikari does not accept timeout below 250ms
+        config.setConnectionTimeout(Math.max(250, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_DB_CONNECTION_TIMEOUT_MILLIS,
+                ConfigConstants.DEFAULT_DB_CONNECTION_TIMEOUT_MILLIS)));
         ds = new HikariDataSource(config);
+        logger.info("DB pool size {}, connection timeout {}ms", config.getMaximumPoolSize(),
+                config.getConnectionTimeout());
     }
 
     public DataSource() {
@@ -43,50 +58,175 @@ public class DataSource {
         try (Connection con = ds.getConnection();
              Statement stm = con.createStatement()) {
             stm.execute("DROP ALL OBJECTS");
-            stm.execute("" +
-                    "CREATE TABLE IF NOT EXISTS customer (" +
-                    "  id IDENTITY NOt NULL PRIMARY KEY," +
-                    "  first_name VARCHAR(255) NOT NULL," +
-                    "  last_name VARCHAR(255) NOT NULL," +
-                    "  updated DATETIME NOT NULL," +
-                    "  created DATETIME NOT NULL" +
-                    ")");
-            stm.execute("" +
-                    "CREATE TABLE IF NOT EXISTS account (" +
-                    "  id IDENTITY PRIMARY KEY," +
-                    "  customer_id LONG NOT NULL," +
-                    "  title VARCHAR(255) NOT NULL," +
-                    "  balance DECIMAL NOT NULL," +
-                    "  updated DATETIME NOT NULL," +
-                    "  created DATETIME NOT NULL," +
-                    "  foreign key ( customer_id ) references customer ( id )" +
-                    ")");
-            stm.execute("" +
-                    "CREATE TABLE IF NOT EXISTS account_transaction (" +
-                    "  id IDENTITY PRIMARY KEY," +
-                    "  title VARCHAR(255) NOT NULL," +
-                    "  amount DECIMAL NOT NULL," +
-                    "  sender_account_id LONG NOT NULL," +
-                    "  receiver_account_id LONG NOT NULL," +
-                    "  updated DATETIME NOT NULL," +
-                    "  created DATETIME NOT NULL," +
-                    "  foreign key ( sender_account_id ) references account ( id )," +
-                    "  foreign key ( receiver_account_id ) references account ( id )" +
-                    ")");
+            this.createSchema(stm);
         } catch (SQLException e) {
             logger.error("Error while preparing DB", e);
             throw new RuntimeException("Could not prepare Database");
         }
     }
 
+    /**
+     * Create schema if it does not exist yet
+     * Existing data is kept, used when application runs in persistence mode
+     *
+     * @throws ApplicationException
+     */
+    public void createDB() {
+        try (Connection con = ds.getConnection();
+             Statement stm = con.createStatement()) {
+            this.createSchema(stm);
+        } catch (SQLException e) {
+            logger.error("Error while preparing DB", e);
+            throw new RuntimeException("Could not prepare Database");
+        }
+    }
+
+    /**
+     * Create tables and indexes
+     *
+     * @param stm
+     * @throws SQLException
+     */
+    private void createSchema(Statement stm) throws SQLException {
+        stm.execute("" +
+                "CREATE TABLE IF NOT EXISTS customer (" +
+                "  id IDENTITY NOt NULL PRIMARY KEY," +
+                "  first_name VARCHAR(255) NOT NULL," +
+                "  last_name VARCHAR(255) NOT NULL," +
+                "  updated DATETIME NOT NULL," +
+                "  created DATETIME NOT NULL" +
+                ")");
+        stm.execute("" +
+                "CREATE TABLE IF NOT EXISTS account (" +
+                "  id IDENTITY PRIMARY KEY," +
+                "  customer_id LONG NOT NULL," +
+                "  title VARCHAR(255) NOT NULL," +
+                "  balance DECIMAL NOT NULL," +
+                "  updated DATETIME NOT NULL," +
+                "  created DATETIME NOT NULL," +
+                "  foreign key ( customer_id ) references customer ( id )" +
+                ")");
+        stm.execute("" +
+                "CREATE TABLE IF NOT EXISTS account_transaction (" +
+                "  id IDENTITY PRIMARY KEY," +
+                "  title VARCHAR(255) NOT NULL," +
+                "  amount DECIMAL NOT NULL," +
+                "  sender_account_id LONG NOT NULL," +
+                "  receiver_account_id LONG NOT NULL," +
+                "  updated DATETIME NOT NULL," +
+                "  created DATETIME NOT NULL," +
+                "  journal_seq LONG," +
+                "  idempotency_key VARCHAR(255)," +
+                "  foreign key ( sender_account_id ) references account ( id )," +
+                "  foreign key ( receiver_account_id ) references account ( id )" +
+                ")");
+        stm.execute("" +
+                "CREATE TABLE IF NOT EXISTS account_daily_summary (" +
+                "  account_id LONG NOT NULL," +
+                "  day DATE NOT NULL," +
+                "  debit_count LONG NOT NULL," +
+                "  debit_sum DECIMAL NOT NULL," +
+                "  credit_count LONG NOT NULL," +
+                "  credit_sum DECIMAL NOT NULL," +
+                "  PRIMARY KEY ( account_id, day )," +
+                "  foreign key ( account_id ) references account ( id )" +
+                ")");
+        //Column added after first release, DB created in persistence mode by older version does not have it
+        stm.execute("ALTER TABLE account_transaction ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(255)");
+        this.createIndexes(stm);
+        this.createSummaries(stm);
+    }
+
+    /**
+     * Build daily account summaries from existing transactions
+     * Used once, when persistent DB created by older version has transactions, but no summaries
+     *
+     * @param stm
+     * @throws SQLException
+     */
+    private void createSummaries(Statement stm) throws SQLException {
+        try (ResultSet rs = stm.executeQuery("SELECT " +
+                "EXISTS (SELECT 1 FROM account_transaction) AND NOT EXISTS (SELECT 1 FROM account_daily_summary)")) {
+            if (!rs.next() || !rs.getBoolean(1))
+                return;
+        }
+        logger.info("Building daily account summaries from existing transactions");
+        stm.execute("" +
+                "INSERT INTO account_daily_summary " +
+                "  (account_id, day, debit_count, debit_sum, credit_count, credit_sum) " +
+                "SELECT account_id, day, SUM(debit_count), SUM(debit_sum), SUM(credit_count), SUM(credit_sum) FROM (" +
+                "  SELECT sender_account_id account_id, CAST(created AS DATE) day, 1 debit_count, amount debit_sum," +
+                "    0 credit_count, 0 credit_sum FROM account_transaction" +
+                "  UNION ALL" +
+                "  SELECT receiver_account_id, CAST(created AS DATE), 0, 0, 1, amount FROM account_transaction" +
+                ") GROUP BY account_id, day");
+    }
+
+    /**
+     * Create secondary indexes
+     * Transaction indexes end with id, so account history is read in id order directly from index range
+     *
+     * @param stm
+     * @throws SQLException
+     */
+    private void createIndexes(Statement stm) throws SQLException {
+        stm.execute("CREATE INDEX IF NOT EXISTS idx_account_customer ON account ( customer_id )");
+        stm.execute("CREATE INDEX IF NOT EXISTS idx_transaction_sender ON account_transaction " +
+                "( sender_account_id, id )");
+        stm.execute("CREATE INDEX IF NOT EXISTS idx_transaction_receiver ON account_transaction " +
+                "( receiver_account_id, id )");
+        stm.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_transaction_journal_seq ON account_transaction " +
+                "( journal_seq )");
+        stm.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_transaction_idempotency_key ON account_transaction " +
+                "( idempotency_key )");
+    }
+
     /**
      * Get connection instance
+     * Thread serving request gets connection of request, see {@link RequestConnection}
      *
      * @return
      * @throws SQLException
      */
     public Connection getConnection() throws SQLException {
-        return ds.getConnection();
+        RequestConnection request = RequestConnection.current();
+        return request != null ? request.open(ds) : ds.getConnection();
+    }
+
+    /**
+     * Get maximum number of pooled connections
+     *
+     * @return
+     */
+    public int getMaxPoolSize() {
+        return ds.getMaximumPoolSize();
+    }
+
+    /**
+     * Get number of connections in use
+     *
+     * @return
+     */
+    public int getActiveConnections() {
+        return ds.getHikariPoolMXBean().getActiveConnections();
+    }
+
+    /**
+     * Get number of idle connections
+     *
+     * @return
+     */
+    public int getIdleConnections() {
+        return ds.getHikariPoolMXBean().getIdleConnections();
+    }
+
+    /**
+     * Get number of threads waiting for free connection
+     *
+     * @return
+     */
+    public int getThreadsAwaitingConnection() {
+        return ds.getHikariPoolMXBean().getThreadsAwaitingConnection();
     }
 
 }
@@ -0,0 +1,153 @@
+package app.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Connection shared by all DB calls of one HTTP request
+ * Request thread takes pooled connection on first use and keeps it until request ends, so services called by one
+ * request do not check out connection for every query. Services close connection as usual: it is returned to request
+ * instead of pool and when its last user closes it, uncommitted work is rolled back and auto commit is restored.
+ * User which starts DB transaction owns it: the transaction is rolled back when the owner closes connection, and
+ * users opening connection while the transaction is in progress get separate pooled connection, so they can not
+ * commit or roll back work of the owner.
+ * Thread about to wait for other threads must release idle connection, so it does not hold connection they may need.
+ */
+public class RequestConnection {
+    private static final ThreadLocal<RequestConnection> current = new ThreadLocal<>();
+
+    private Connection connection;
+    private int users;
+    private Handle owner;
+
+    /**
+     * Connection handle of one user
+     */
+    private class Handle implements InvocationHandler {
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                RequestConnection.this.closeHandle(this);
+                return null;
+            }
+            if ("setAutoCommit".equals(method.getName())) {
+                boolean autoCommit = (Boolean) args[0];
+                if (!autoCommit && owner == null)
+                    owner = this;
+                else if (autoCommit && owner == this)
+                    owner = null;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private RequestConnection() {
+    }
+
+    /**
+     * Start request on current thread
+     */
+    public static void begin() {
+        end();
+        current.set(new RequestConnection());
+    }
+
+    /**
+     * End request on current thread and return its connection to pool
+     */
+    public static void end() {
+        RequestConnection request = current.get();
+        if (request != null) {
+            current.remove();
+            request.closeConnection();
+        }
+    }
+
+    /**
+     * Return connection of current request to pool if it is not in use, next query of request takes it again
+     */
+    public static void release() {
+        RequestConnection request = current.get();
+        if (request != null && request.users == 0)
+            request.closeConnection();
+    }
+
+    /**
+     * Get request of current thread
+     *
+     * @return null when thread does not serve request
+     */
+    static RequestConnection current() {
+        return current.get();
+    }
+
+    /**
+     * Get connection of request, taking it from pool on first use
+     * While DB transaction of another user is in progress, separate pooled connection is returned.
+     *
+     * @param dataSource
+     * @return
+     * @throws SQLException
+     */
+    Connection open(HikariDataSource dataSource) throws SQLException {
+        if (connection == null)
+            connection = dataSource.getConnection();
+        else if (owner != null || !connection.getAutoCommit())
+            return dataSource.getConnection();
+        users++;
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Handle());
+    }
+
+    /**
+     * Roll back transaction when its owner or last user closes connection
+     *
+     * @param handle
+     * @throws SQLException
+     */
+    private void closeHandle(Handle handle) throws SQLException {
+        if (handle.closed || connection == null)
+            return;
+        handle.closed = true;
+        users--;
+        if (users > 0 && owner != handle)
+            return;
+        owner = null;
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            //Connection in unknown state is returned to pool, which resets or evicts it
+            this.closeConnection();
+            throw e;
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null)
+            return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            //Pool evicts broken connection
+        } finally {
+            connection = null;
+            users = 0;
+            owner = null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package app.events;
+
+import app.constants.ConfigConstants;
+import app.constants.RouteConstants;
+import app.db.RequestConnection;
+import app.exceptions.DataBaseException;
+import app.exceptions.ServiceUnavailableException;
+import app.models.Transaction;
+import app.utils.ConfigUtils;
+import org.eclipse.jetty.http.HttpStatus;
+import spark.Response;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static app.constants.ErrorMessages.ERROR_TOO_MANY_SUBSCRIBERS;
+
+/**
+ * Server-sent event stream of transactions
+ * When client resumes from last event id, transactions committed after it are read from DB page by page before live
+ * events are sent. Subscription is created before DB is read and DB is read only up to the last dispatched id, every
+ * transaction with higher id reaches subscription as live event. Events are dispatched in id order, so live events up
+ * to the last dispatched id are the ones already sent from DB and are skipped. Comment line is sent when there are no
+ * events, so disconnected clients are noticed.
+ */
+public class EventStream {
+    public static final String CONTENT_TYPE = "text/event-stream";
+
+    private static final long HEARTBEAT_MILLIS = Math.max(1, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_EVENT_HEARTBEAT_MILLIS, ConfigConstants.DEFAULT_EVENT_HEARTBEAT_MILLIS));
+    private static final int REPLAY_PAGE_SIZE = ConfigConstants.DEFAULT_PAGE_MAX_LIMIT;
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RETRY = "retry: 1000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Source of transactions committed after given id
+     */
+    @FunctionalInterface
+    public interface Replay {
+        List<Transaction> getPage(long afterId, int limit) throws DataBaseException;
+    }
+
+    /**
+     * Subscribe to transactions and stream them as response until client disconnects or subscription is closed
+     *
+     * @param res
+     * @param events
+     * @param accountId   account to stream, null for all transactions
+     * @param lastEventId id of last transaction received by client, null to send only new transactions
+     * @param replay
+     * @throws ServiceUnavailableException when subscriber limit is reached
+     * @throws DataBaseException
+     */
+    public static void stream(Response res, TransactionEvents events, Long accountId, Long lastEventId,
+                              Replay replay) throws ServiceUnavailableException, DataBaseException {
+        EventSubscription subscription = events.subscribe(accountId);
+        if (subscription == null)
+            throw new ServiceUnavailableException(ERROR_TOO_MANY_SUBSCRIBERS);
+        try {
+            res.status(HttpStatus.OK_200);
+            res.type(CONTENT_TYPE);
+            res.header(RouteConstants.Header.CACHE_CONTROL, "no-cache");
+            write(res.raw().getOutputStream(), subscription, lastEventId, events.getDispatchedId(), replay);
+        } catch (IOException e) {
+            //Client disconnected
+        } finally {
+            events.unsubscribe(subscription);
+        }
+    }
+
+    /**
+     * Write events until client disconnects or subscription is closed
+     *
+     * @param out
+     * @param subscription
+     * @param lastEventId
+     * @param dispatchedId id of the last transaction dispatched before subscription
+     * @param replay
+     * @throws IOException       when client disconnects
+     * @throws DataBaseException
+     */
+    private static void write(OutputStream out, EventSubscription subscription, Long lastEventId, long dispatchedId,
+                              Replay replay) throws IOException, DataBaseException {
+        out.write(RETRY);
+        out.flush();
+
+        //Live events up to this id were sent from DB already
+        long replayedId = Long.MIN_VALUE;
+        if (lastEventId != null) {
+            replayedId = Math.max(lastEventId, dispatchedId);
+            long afterId = lastEventId;
+            boolean more = afterId < dispatchedId;
+            while (more && !subscription.isClosed()) {
+                List<Transaction> page = replay.getPage(afterId, REPLAY_PAGE_SIZE);
+                more = page.size() == REPLAY_PAGE_SIZE;
+                for (Transaction transaction : page) {
+                    if (transaction.getId() > dispatchedId) {
+                        more = false;
+                        break;
+                    }
+                    out.write(TransactionEvent.format(transaction));
+                    afterId = transaction.getId();
+                }
+                out.flush();
+            }
+        }
+
+        //Live events do not need DB, connection is not held for the whole stream
+        RequestConnection.release();
+        try {
+            while (!subscription.isClosed()) {
+                TransactionEvent event = subscription.poll(HEARTBEAT_MILLIS);
+                if (event == null)
+                    out.write(HEARTBEAT);
+                else if (event.getId() > replayedId)
+                    out.write(event.getFrame());
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
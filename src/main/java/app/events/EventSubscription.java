@@ -0,0 +1,83 @@
+package app.events;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subscriber of transaction events
+ * Events are buffered in bounded queue filled by dispatcher thread and drained by the thread streaming them to
+ * client. When buffer is full, subscription is either closed, so client reconnects and resumes from its last event
+ * id, or the oldest buffered event is dropped.
+ */
+class EventSubscription {
+    private final Long accountId;
+    private final boolean dropOldest;
+    private final BlockingQueue<TransactionEvent> buffer;
+    private volatile boolean closed;
+
+    EventSubscription(Long accountId, int bufferSize, boolean dropOldest) {
+        this.accountId = accountId;
+        this.dropOldest = dropOldest;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    /**
+     * Get account of subscription
+     *
+     * @return account id, null when subscribed to all transactions
+     */
+    Long getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Check if subscription was closed because client could not keep up
+     *
+     * @return
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Wait for next event
+     *
+     * @param timeoutMillis
+     * @return event or null if no event arrived in time or subscription is closed
+     * @throws InterruptedException
+     */
+    TransactionEvent poll(long timeoutMillis) throws InterruptedException {
+        if (closed)
+            return null;
+        return buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add event to buffer without blocking
+     *
+     * @param event
+     * @return false if event did not fit into buffer
+     */
+    boolean offer(TransactionEvent event) {
+        if (closed)
+            return false;
+        if (buffer.offer(event))
+            return true;
+        if (!dropOldest) {
+            this.close();
+            return false;
+        }
+        buffer.poll();
+        buffer.offer(event);
+        return false;
+    }
+
+    /**
+     * Close subscription, buffered events are not delivered
+     */
+    void close() {
+        closed = true;
+        buffer.clear();
+    }
+}
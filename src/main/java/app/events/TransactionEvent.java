@@ -0,0 +1,53 @@
+package app.events;
+
+import app.models.Transaction;
+import app.transformers.ObjectTransformer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Committed transaction in server-sent event format
+ * Event is serialized once and the same bytes are written to every subscriber
+ */
+class TransactionEvent {
+    private static final String EVENT_NAME = "transaction";
+
+    private final long id;
+    private final Long senderAccountId;
+    private final Long receiverAccountId;
+    private final byte[] frame;
+
+    TransactionEvent(Transaction transaction) {
+        this.id = transaction.getId();
+        this.senderAccountId = transaction.getSenderAccountId();
+        this.receiverAccountId = transaction.getReceiverAccountId();
+        this.frame = format(transaction);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Long getSenderAccountId() {
+        return senderAccountId;
+    }
+
+    Long getReceiverAccountId() {
+        return receiverAccountId;
+    }
+
+    byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Format transaction as server-sent event, transaction id is event id
+     *
+     * @param transaction
+     * @return
+     */
+    static byte[] format(Transaction transaction) {
+        return ("id: " + transaction.getId() + "\nevent: " + EVENT_NAME + "\ndata: " +
+                ObjectTransformer.objectToLine(transaction) + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,331 @@
+package app.events;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.metrics.MetricsRegistry;
+import app.models.Transaction;
+import app.server.ServerThreadPool;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publisher of committed transactions to event subscribers
+ * Commit path only offers transactions to bounded dispatch queue and never waits for subscribers. Dispatcher thread
+ * serializes every transaction once and copies it into buffers of global subscribers and subscribers of its sender and
+ * receiver accounts. When dispatch queue is full, transactions can not be delivered, so all subscriptions are closed
+ * and clients resume from their last event id.
+ * Transaction ids are not committed in id order, so every transfer is registered with ticket while it runs.
+ * Published transaction is held until every transfer which started before it was published is done, as only those
+ * could have lower ids. Held transactions are dispatched in id order, so every transaction with lower id than the
+ * last dispatched one is already committed or failed and client can resume from its last event id safely.
+ */
+@Singleton
+public class TransactionEvents {
+    private static Logger logger = LoggerFactory.getLogger(TransactionEvents.class);
+    private static final long HOLD_CHECK_MILLIS = 1;
+
+    private final BlockingQueue<Published> queue;
+    private final int maxHeld;
+    private final PriorityQueue<Held> held = new PriorityQueue<>(Comparator.comparingLong(h -> h.id));
+    private final AtomicLong lastTicket = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> running = new ConcurrentSkipListSet<>();
+    private final Held overflow = new Held(null, 0, 0);
+    private volatile long dispatchedId;
+    private final Set<EventSubscription> globalSubscriptions = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Set<EventSubscription>> accountSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final int maxSubscriptions;
+    private final int bufferSize;
+    private final boolean dropOldest;
+    private final LongAdder published;
+    private final LongAdder dropped;
+    private final LongAdder closed;
+
+    @Inject
+    public TransactionEvents(MetricsRegistry metricsRegistry) {
+        this.maxHeld = Math.max(1, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_EVENT_QUEUE_SIZE, ConfigConstants.DEFAULT_EVENT_QUEUE_SIZE));
+        this.queue = new ArrayBlockingQueue<>(maxHeld);
+        //Every stream holds server thread, so by default at most quarter of threads stream events
+        this.maxSubscriptions = ConfigUtils.getIntProperty(ConfigConstants.VAR_EVENT_MAX_SUBSCRIBERS,
+                Math.max(1, ServerThreadPool.getConfiguredMaxThreads() / 4));
+        this.bufferSize = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_EVENT_BUFFER_SIZE,
+                ConfigConstants.DEFAULT_EVENT_BUFFER_SIZE));
+        this.dropOldest = ConfigConstants.EVENT_OVERFLOW_DROP_OLDEST.equals(System.getProperty(
+                ConfigConstants.VAR_EVENT_OVERFLOW, ConfigConstants.EVENT_OVERFLOW_DISCONNECT));
+        this.published = metricsRegistry.counter(MetricConstants.EVENTS_PUBLISHED);
+        this.dropped = metricsRegistry.counter(MetricConstants.EVENTS_DROPPED);
+        this.closed = metricsRegistry.counter(MetricConstants.EVENTS_SUBSCRIPTIONS_CLOSED);
+        metricsRegistry.gauge(MetricConstants.EVENTS_SUBSCRIBERS, subscriptions::get);
+
+        Thread dispatcher = new Thread(this::dispatchLoop, "transaction-events-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Set id of the last transaction committed before application started
+     *
+     * @param lastTransactionId
+     */
+    public void start(long lastTransactionId) {
+        dispatchedId = Math.max(dispatchedId, lastTransactionId);
+    }
+
+    /**
+     * Register transfer which may publish transactions, must be followed by end
+     *
+     * @return ticket of transfer
+     */
+    public long begin() {
+        long ticket = lastTicket.incrementAndGet();
+        running.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Finish transfer registered with begin, after its transactions were published or transfer failed
+     *
+     * @param ticket
+     */
+    public void end(long ticket) {
+        running.remove(ticket);
+    }
+
+    /**
+     * Publish committed transaction
+     *
+     * @param transaction
+     */
+    public void publish(Transaction transaction) {
+        this.publish(Collections.singletonList(transaction));
+    }
+
+    /**
+     * Publish committed transactions without waiting for subscribers
+     * Transactions are published even without subscribers, so id of the last dispatched transaction is up to date
+     *
+     * @param transactions
+     */
+    public void publish(List<Transaction> transactions) {
+        if (transactions.isEmpty())
+            return;
+        Published published = new Published(transactions, lastTicket.get());
+        if (!queue.offer(published)) {
+            //Transactions are not delivered, subscriptions are closed once they would be dispatched
+            if (subscriptions.get() > 0)
+                dropped.add(transactions.size());
+            synchronized (overflow) {
+                transactions.forEach(t -> overflow.id = Math.max(overflow.id, t.getId()));
+                overflow.barrier = Math.max(overflow.barrier, published.barrier);
+            }
+        }
+    }
+
+    /**
+     * Get id of the last dispatched transaction
+     * Every transaction with lower id is already committed or failed, transactions with higher ids are dispatched to
+     * subscriptions which exist at the time
+     *
+     * @return
+     */
+    long getDispatchedId() {
+        return dispatchedId;
+    }
+
+    /**
+     * Subscribe to transactions
+     *
+     * @param accountId account to subscribe to, null for all transactions
+     * @return subscription or null if subscriber limit is reached
+     */
+    EventSubscription subscribe(Long accountId) {
+        if (subscriptions.incrementAndGet() > maxSubscriptions) {
+            subscriptions.decrementAndGet();
+            return null;
+        }
+        EventSubscription subscription = new EventSubscription(accountId, bufferSize, dropOldest);
+        if (accountId == null)
+            globalSubscriptions.add(subscription);
+        else
+            accountSubscriptions.compute(accountId, (id, account) -> {
+                Set<EventSubscription> result = account == null ? ConcurrentHashMap.newKeySet() : account;
+                result.add(subscription);
+                return result;
+            });
+        return subscription;
+    }
+
+    /**
+     * Remove subscription, must be called once for every subscription
+     *
+     * @param subscription
+     */
+    void unsubscribe(EventSubscription subscription) {
+        if (subscription.getAccountId() == null)
+            globalSubscriptions.remove(subscription);
+        else
+            accountSubscriptions.computeIfPresent(subscription.getAccountId(), (id, account) -> {
+                account.remove(subscription);
+                return account.isEmpty() ? null : account;
+            });
+        subscriptions.decrementAndGet();
+    }
+
+    /**
+     * Dispatcher thread loop
+     * While transactions are held, running transfers are checked every HOLD_CHECK_MILLIS
+     */
+    private void dispatchLoop() {
+        while (true) {
+            try {
+                Published next = held.isEmpty() ? queue.take() : queue.poll(HOLD_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                while (next != null) {
+                    for (Transaction transaction : next.transactions)
+                        held.add(new Held(transaction, transaction.getId(), next.barrier));
+                    next = queue.poll();
+                }
+                this.holdOverflow();
+                this.release();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Transaction event dispatch failed", e);
+            }
+        }
+    }
+
+    /**
+     * Hold transactions which did not fit into queue as single held item without transaction
+     * Too many held transactions are replaced by such item too
+     */
+    private void holdOverflow() {
+        Held lost = null;
+        synchronized (overflow) {
+            if (overflow.id > 0) {
+                lost = new Held(null, overflow.id, overflow.barrier);
+                overflow.id = 0;
+                overflow.barrier = 0;
+            }
+        }
+        if (held.size() > maxHeld) {
+            if (subscriptions.get() > 0)
+                dropped.add(held.size());
+            lost = held.stream().reduce(lost != null ? lost : new Held(null, 0, 0),
+                    (a, b) -> new Held(null, Math.max(a.id, b.id), Math.max(a.barrier, b.barrier)));
+            held.clear();
+        }
+        if (lost != null)
+            held.add(lost);
+    }
+
+    /**
+     * Dispatch held transactions in id order up to the highest id, which can not be preceded by any running transfer
+     */
+    private void release() {
+        Long firstRunning = running.ceiling(Long.MIN_VALUE);
+        long releasedId = 0;
+        for (Held item : held) {
+            if ((firstRunning == null || item.barrier < firstRunning) && item.id > releasedId)
+                releasedId = item.id;
+        }
+        while (!held.isEmpty() && held.peek().id <= releasedId) {
+            Held item = held.poll();
+            //Id is set before dispatch, so subscription missing this event replays it from DB
+            dispatchedId = Math.max(dispatchedId, item.id);
+            if (item.transaction == null)
+                this.closeAll();
+            else if (subscriptions.get() > 0)
+                this.dispatch(new TransactionEvent(item.transaction));
+        }
+    }
+
+    /**
+     * Copy event to buffers of its subscribers
+     *
+     * @param event
+     */
+    private void dispatch(TransactionEvent event) {
+        published.increment();
+        globalSubscriptions.forEach(s -> this.offer(s, event));
+        this.offer(accountSubscriptions.get(event.getSenderAccountId()), event);
+        this.offer(accountSubscriptions.get(event.getReceiverAccountId()), event);
+    }
+
+    private void offer(Set<EventSubscription> account, TransactionEvent event) {
+        if (account != null)
+            account.forEach(s -> this.offer(s, event));
+    }
+
+    private void offer(EventSubscription subscription, TransactionEvent event) {
+        if (subscription.isClosed())
+            return;
+        if (!subscription.offer(event)) {
+            dropped.increment();
+            if (subscription.isClosed())
+                closed.increment();
+        }
+    }
+
+    /**
+     * Close all subscriptions after events were lost
+     */
+    private void closeAll() {
+        globalSubscriptions.forEach(s -> this.close(s));
+        accountSubscriptions.values().forEach(account -> account.forEach(s -> this.close(s)));
+    }
+
+    private void close(EventSubscription subscription) {
+        if (!subscription.isClosed()) {
+            subscription.close();
+            closed.increment();
+        }
+    }
+
+    /**
+     * Transactions published together
+     */
+    private static class Published {
+        private final List<Transaction> transactions;
+        //Last ticket at publish time, transfers with higher tickets started after transactions were committed
+        private final long barrier;
+
+        private Published(List<Transaction> transactions, long barrier) {
+            this.transactions = transactions;
+            this.barrier = barrier;
+        }
+    }
+
+    /**
+     * Transaction waiting for running transfers, transaction is null for transactions lost in overflow
+     */
+    private static class Held {
+        private final Transaction transaction;
+        private long id;
+        private long barrier;
+
+        private Held(Transaction transaction, long id, long barrier) {
+            this.transaction = transaction;
+            this.id = id;
+            this.barrier = barrier;
+        }
+    }
+}
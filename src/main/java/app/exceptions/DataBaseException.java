@@ -3,14 +3,42 @@ package app.exceptions;
 import lombok.NoArgsConstructor;
 import org.eclipse.jetty.http.HttpStatus;
 
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static app.constants.ErrorMessages.ERROR_SERVICE_UNAVAILABLE;
+
 @NoArgsConstructor
 public class DataBaseException extends PaymentAPIException {
+    private boolean unavailable;
+
     public DataBaseException(String message) {
         super(message);
     }
 
+    /**
+     * DB exception caused by SQL error
+     * Connection pool timeout means DB is saturated, so it is reported as 503 and request can be retried
+     *
+     * @param e
+     */
+    public DataBaseException(SQLException e) {
+        super(e instanceof SQLTransientConnectionException ? ERROR_SERVICE_UNAVAILABLE : e.getMessage());
+        this.unavailable = e instanceof SQLTransientConnectionException;
+    }
+
+    /**
+     * DB access which could not be started, because server is overloaded
+     *
+     * @param e
+     */
+    public DataBaseException(ServiceUnavailableException e) {
+        super(e.getMessage());
+        this.unavailable = true;
+    }
+
     @Override
     public int getStatus() {
-        return HttpStatus.INTERNAL_SERVER_ERROR_500;
+        return unavailable ? HttpStatus.SERVICE_UNAVAILABLE_503 : HttpStatus.INTERNAL_SERVER_ERROR_500;
     }
 }
@@ -0,0 +1,11 @@
+package app.exceptions;
+
+/**
+ * Sender account balance is lower than transfer amount
+ * Reported as invalid request data, separate type lets transfer outcome be counted without comparing messages
+ */
+public class InsufficientBalanceException extends InvalidRequestData {
+    public InsufficientBalanceException(String message) {
+        super(message);
+    }
+}
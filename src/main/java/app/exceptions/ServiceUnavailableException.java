@@ -0,0 +1,18 @@
+package app.exceptions;
+
+import org.eclipse.jetty.http.HttpStatus;
+
+/**
+ * Service unavailable exception
+ * Request could not be accepted because of overload and can be retried later
+ */
+public class ServiceUnavailableException extends PaymentAPIException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    @Override
+    public int getStatus() {
+        return HttpStatus.SERVICE_UNAVAILABLE_503;
+    }
+}
@@ -0,0 +1,448 @@
+package app.journal;
+
+import app.constants.ConfigConstants;
+import app.db.DataSource;
+import app.ledger.LedgerStore;
+import app.models.Transaction;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append only journal of committed transfers
+ * Journal is enabled with system property journalDir. Every committed transfer is appended to memory mapped segment
+ * file and request thread waits until flusher thread forces it to disk before transfer is acknowledged. Flusher forces
+ * everything appended since its previous pass at once, so concurrent transfers share single fsync.
+ * <p>
+ * Ledger engines use journal as follows:
+ * <pre>
+ * journal.beginWrite(transactions);
+ * try {
+ *     try {
+ *         ... DB commit ...
+ *     } catch (...) {
+ *         ... DB rollback ...
+ *     }
+ *     journal.append(transactions);
+ * } finally {
+ *     journal.endWrite();
+ * }
+ * journal.awaitFlush();
+ * </pre>
+ * Records are appended only after DB commit and append never fails committed transfer, so journal never contains
+ * transfer rejected by DB and client never gets error for committed transfer.
+ * <p>
+ * Journal sequence number is stored with every transaction row, so recovery applies only records missing in DB.
+ * Journal holds transfers only: accounts and customers must be present in DB, recovery fails if journal record
+ * refers to missing account. Snapshot is taken periodically: it records sequence number up to which all records are
+ * committed in DB, DB is checkpointed and journal segments fully covered by snapshot are deleted.
+ */
+@Singleton
+public class Journal {
+    private static Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    @Inject
+    private DataSource dataSource;
+    @Inject
+    private LedgerStore ledgerStore;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int snapshotInterval;
+
+    private final ReentrantReadWriteLock barrier = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private final NavigableMap<Long, Long> segmentSequences = new ConcurrentSkipListMap<>();
+    private final ThreadLocal<Long> appendedPosition = ThreadLocal.withInitial(() -> 0L);
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition appended = flushLock.newCondition();
+    private final Condition flushed = flushLock.newCondition();
+
+    private JournalSegment segment;
+    private long writtenPosition;
+    private volatile long flushedPosition;
+    private volatile long snapshotSequence;
+    private volatile boolean running;
+    private Thread flusher;
+    private ScheduledExecutorService snapshotter;
+
+    public Journal() {
+        String dir = ConfigUtils.getStringProperty(ConfigConstants.VAR_JOURNAL_DIR, "");
+        this.directory = dir.isEmpty() ? null : Paths.get(dir);
+        this.segmentSize = ConfigUtils.getIntProperty(ConfigConstants.VAR_JOURNAL_SEGMENT_SIZE,
+                ConfigConstants.DEFAULT_JOURNAL_SEGMENT_SIZE);
+        this.snapshotInterval = Math.max(1, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_JOURNAL_SNAPSHOT_INTERVAL, ConfigConstants.DEFAULT_JOURNAL_SNAPSHOT_INTERVAL));
+    }
+
+    /**
+     * Check if application runs in persistence mode
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Recover DB from journal and open journal for writing
+     * Records after latest snapshot are replayed. Transfers which are not found in DB are applied again.
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    public synchronized void start() throws IOException, SQLException {
+        if (!this.isEnabled() || running)
+            return;
+        Files.createDirectories(directory);
+
+        JournalSnapshot snapshot = JournalSnapshot.readLatest(directory);
+        long fromSequence = snapshot == null ? 0 : snapshot.getSequence();
+
+        long lastSequence = fromSequence;
+        long lastSegment = -1;
+        int replayed = 0;
+        int applied = 0;
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            for (Map.Entry<Long, Path> file : JournalSegment.list(directory).entrySet()) {
+                lastSegment = file.getKey();
+                long segmentSequence = 0;
+                for (Transaction transaction : JournalSegment.read(file.getValue())) {
+                    segmentSequence = Math.max(segmentSequence, transaction.getJournalSeq());
+                    if (transaction.getJournalSeq() <= fromSequence)
+                        continue;
+                    replayed++;
+                    if (this.replay(con, transaction))
+                        applied++;
+                }
+                con.commit();
+                segmentSequences.put(file.getKey(), segmentSequence);
+                lastSequence = Math.max(lastSequence, segmentSequence);
+            }
+            lastSequence = Math.max(lastSequence, ledgerStore.getMaxJournalSeq(con));
+        }
+        logger.info("Journal recovered from {}: {} records after snapshot {}, {} applied to DB", directory, replayed,
+                fromSequence, applied);
+
+        sequence.set(lastSequence);
+        snapshotSequence = fromSequence;
+        segment = JournalSegment.create(directory, lastSegment + 1, segmentSize);
+        segmentSequences.put(segment.getIndex(), 0L);
+        writtenPosition = this.getPosition(segment);
+        flushedPosition = writtenPosition;
+        running = true;
+
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::snapshotIfNeeded, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop flusher and snapshot threads and close journal
+     *
+     * @throws IOException
+     */
+    public synchronized void stop() throws IOException {
+        if (!running)
+            return;
+        running = false;
+        snapshotter.shutdownNow();
+        flushLock.lock();
+        try {
+            appended.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            segment.force();
+            segment.close();
+        }
+        flushLock.lock();
+        try {
+            flushedPosition = writtenPosition();
+            flushed.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Start writing transfers
+     * Journal sequence numbers are assigned to transactions, which should be stored with transaction rows.
+     * Must be followed by endWrite.
+     *
+     * @param transactions
+     */
+    public void beginWrite(Collection<Transaction> transactions) {
+        if (!this.isEnabled())
+            return;
+        barrier.readLock().lock();
+        transactions.forEach(t -> t.setJournalSeq(sequence.incrementAndGet()));
+    }
+
+    /**
+     * Finish writing transfers started with beginWrite
+     */
+    public void endWrite() {
+        if (!this.isEnabled())
+            return;
+        barrier.readLock().unlock();
+    }
+
+    /**
+     * Append committed transfer to journal
+     *
+     * @param transaction
+     */
+    public void append(Transaction transaction) {
+        this.append(Collections.singletonList(transaction));
+    }
+
+    /**
+     * Append committed transfers to journal
+     * Transfers are already committed in DB, so journal error does not fail them. Error is logged and transfers not
+     * written to journal can be recovered from DB only.
+     *
+     * @param transactions
+     */
+    public void append(List<Transaction> transactions) {
+        if (!this.isEnabled() || transactions.isEmpty())
+            return;
+        if (!running) {
+            logger.error("Journal is not started, {} committed transfers are not journaled", transactions.size());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long position;
+        try {
+            synchronized (appendLock) {
+                for (Transaction transaction : transactions) {
+                    long created = transaction.getCreated() != null ? transaction.getCreated().getTime() : now;
+                    ByteBuffer record = JournalRecord.encode(transaction, created);
+                    if (!segment.append(record)) {
+                        this.rollSegment();
+                        if (!segment.append(record))
+                            throw new IOException("Journal record does not fit into segment");
+                    }
+                    segmentSequences.merge(segment.getIndex(), transaction.getJournalSeq(), Math::max);
+                }
+                position = this.getPosition(segment);
+                writtenPosition = position;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not write journal, " + transactions.size() + " committed transfers are not journaled",
+                    e);
+            return;
+        }
+        appendedPosition.set(position);
+
+        flushLock.lock();
+        try {
+            appended.signal();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until all transfers appended by current thread are forced to disk
+     * Transfers are already committed in DB, so wait is given up without error when journal is stopped (stop forces
+     * appended records itself) or thread is interrupted
+     */
+    public void awaitFlush() {
+        long position = appendedPosition.get();
+        if (position <= flushedPosition)
+            return;
+        flushLock.lock();
+        try {
+            while (running && position > flushedPosition)
+                flushed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for journal flush");
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Take snapshot and delete journal segments covered by it
+     * Transfers are blocked only while current sequence number is taken, DB checkpoint runs after that
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    public void snapshot() throws IOException, SQLException {
+        if (!this.isEnabled())
+            return;
+        JournalSnapshot snapshot;
+        barrier.writeLock().lock();
+        try {
+            // No transfer is in progress, so every record up to current sequence is committed in DB
+            snapshot = new JournalSnapshot(sequence.get());
+        } finally {
+            barrier.writeLock().unlock();
+        }
+        // Checkpoint makes committed records durable in DB file before segments holding them are deleted
+        try (Connection con = dataSource.getConnection()) {
+            ledgerStore.checkpoint(con);
+        }
+        snapshot.write(directory);
+        snapshotSequence = snapshot.getSequence();
+
+        long currentSegment;
+        synchronized (appendLock) {
+            currentSegment = segment.getIndex();
+        }
+        for (Map.Entry<Long, Long> segmentSequence : segmentSequences.headMap(currentSegment).entrySet()) {
+            if (segmentSequence.getValue() <= snapshot.getSequence()) {
+                Files.deleteIfExists(JournalSegment.path(directory, segmentSequence.getKey()));
+                segmentSequences.remove(segmentSequence.getKey());
+            }
+        }
+        for (Path file : JournalSnapshot.list(directory).headMap(snapshot.getSequence()).values())
+            Files.deleteIfExists(file);
+        logger.info("Journal snapshot {} written", snapshot.getSequence());
+    }
+
+    /**
+     * Apply journal record to DB unless it is already stored
+     *
+     * @param con
+     * @param transaction
+     * @return true if record was applied
+     * @throws SQLException
+     */
+    private boolean replay(Connection con, Transaction transaction) throws SQLException {
+        if (ledgerStore.isJournaled(con, transaction.getJournalSeq()))
+            return false;
+        // Transfer was committed before it was journaled, so balances are changed without checks
+        if (!ledgerStore.credit(con, transaction.getSenderAccountId(), transaction.getAmount().negate(),
+                transaction.getCreated()))
+            throw this.missingAccount(transaction, transaction.getSenderAccountId());
+        if (!ledgerStore.credit(con, transaction.getReceiverAccountId(), transaction.getAmount(),
+                transaction.getCreated()))
+            throw this.missingAccount(transaction, transaction.getReceiverAccountId());
+        ledgerStore.insertTransactions(con, Collections.singletonList(transaction), transaction.getCreated());
+        return true;
+    }
+
+    private SQLException missingAccount(Transaction transaction, Long accountId) {
+        return new SQLException(String.format("Journal record %d refers to missing account %d. Journal holds only "
+                + "transfers, accounts must be restored in DB first", transaction.getJournalSeq(), accountId));
+    }
+
+    /**
+     * Take snapshot when enough records were appended since previous one
+     */
+    private void snapshotIfNeeded() {
+        if (sequence.get() - snapshotSequence < snapshotInterval)
+            return;
+        try {
+            this.snapshot();
+        } catch (IOException | SQLException e) {
+            logger.error("Could not write journal snapshot", e);
+        }
+    }
+
+    /**
+     * Force full segment to disk and continue with new one
+     *
+     * @throws IOException
+     */
+    private void rollSegment() throws IOException {
+        segment.force();
+        segment.close();
+        segment = JournalSegment.create(directory, segment.getIndex() + 1, segmentSize);
+        segmentSequences.put(segment.getIndex(), 0L);
+    }
+
+    /**
+     * Flusher thread loop
+     * Waits for appended records and forces them to disk in groups
+     */
+    private void flushLoop() {
+        while (running) {
+            flushLock.lock();
+            try {
+                while (running && writtenPosition() <= flushedPosition)
+                    appended.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+
+            long position;
+            JournalSegment current;
+            synchronized (appendLock) {
+                position = writtenPosition;
+                current = segment;
+            }
+            // Previous segments were forced when rolled
+            current.force();
+
+            flushLock.lock();
+            try {
+                flushedPosition = position;
+                flushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private long writtenPosition() {
+        synchronized (appendLock) {
+            return writtenPosition;
+        }
+    }
+
+    /**
+     * Get journal wide position of segment end
+     * Position grows across segments, so it can be compared regardless of segment
+     *
+     * @param journalSegment
+     * @return
+     */
+    private long getPosition(JournalSegment journalSegment) {
+        return journalSegment.getIndex() * segmentSize + journalSegment.getPosition();
+    }
+}
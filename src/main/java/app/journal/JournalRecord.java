@@ -0,0 +1,115 @@
+package app.journal;
+
+import app.models.Transaction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.zip.CRC32;
+
+/**
+ * Binary journal record of single transfer
+ * Record layout: payload length (int), CRC32 of payload (int), payload. Payload contains journal sequence number,
+ * sender and receiver account ids, creation time, amount, title and optional idempotency key. Records written
+ * before idempotency keys were introduced end after title.
+ */
+class JournalRecord {
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Encode transfer to journal record
+     *
+     * @param transaction
+     * @param created
+     * @return record ready to be written
+     */
+    static ByteBuffer encode(Transaction transaction, long created) {
+        byte[] amount = transaction.getAmount().unscaledValue().toByteArray();
+        byte[] title = transaction.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] key = transaction.getIdempotencyKey() == null ? null
+                : transaction.getIdempotencyKey().getBytes(StandardCharsets.UTF_8);
+        int payloadSize = 8 + 8 + 8 + 8 + 4 + 2 + amount.length + 2 + title.length + (key == null ? 0 : 2 + key.length);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        record.position(HEADER_SIZE);
+        record.putLong(transaction.getJournalSeq());
+        record.putLong(transaction.getSenderAccountId());
+        record.putLong(transaction.getReceiverAccountId());
+        record.putLong(created);
+        record.putInt(transaction.getAmount().scale());
+        record.putShort((short) amount.length);
+        record.put(amount);
+        record.putShort((short) title.length);
+        record.put(title);
+        if (key != null) {
+            record.putShort((short) key.length);
+            record.put(key);
+        }
+
+        record.putInt(0, payloadSize);
+        record.putInt(4, crc(record.array(), HEADER_SIZE, payloadSize));
+        record.rewind();
+        return record;
+    }
+
+    /**
+     * Read next record from buffer
+     * Buffer position is moved after the record only if valid record was read
+     *
+     * @param buffer
+     * @return transfer or null when there are no more valid records
+     */
+    static Transaction read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE)
+            return null;
+        int start = buffer.position();
+        int payloadSize = buffer.getInt(start);
+        if (payloadSize <= 0 || payloadSize > buffer.remaining() - HEADER_SIZE)
+            return null;
+        byte[] payload = new byte[payloadSize];
+        buffer.position(start + HEADER_SIZE);
+        buffer.get(payload);
+        if (crc(payload, 0, payloadSize) != buffer.getInt(start + 4)) {
+            buffer.position(start);
+            return null;
+        }
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Decode record payload
+     *
+     * @param payload
+     * @return
+     */
+    private static Transaction decode(ByteBuffer payload) {
+        Transaction transaction = new Transaction();
+        transaction.setJournalSeq(payload.getLong());
+        transaction.setSenderAccountId(payload.getLong());
+        transaction.setReceiverAccountId(payload.getLong());
+        Timestamp created = new Timestamp(payload.getLong());
+        transaction.setCreated(created);
+        transaction.setUpdated(created);
+        int scale = payload.getInt();
+        byte[] amount = new byte[payload.getShort()];
+        payload.get(amount);
+        transaction.setAmount(new BigDecimal(new BigInteger(amount), scale));
+        byte[] title = new byte[payload.getShort()];
+        payload.get(title);
+        transaction.setTitle(new String(title, StandardCharsets.UTF_8));
+        if (payload.hasRemaining()) {
+            byte[] key = new byte[payload.getShort()];
+            payload.get(key);
+            transaction.setIdempotencyKey(new String(key, StandardCharsets.UTF_8));
+        }
+        return transaction;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,131 @@
+package app.journal;
+
+import app.models.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Journal segment file
+ * Segment has fixed size and is memory mapped, so append is plain memory copy. Unused tail of segment stays zero
+ * filled, which marks end of records.
+ */
+class JournalSegment implements Closeable {
+    private static final String FILE_FORMAT = "journal-%020d.log";
+    private static final Pattern FILE_PATTERN = Pattern.compile("journal-(\\d{20})\\.log");
+
+    private final long index;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private JournalSegment(long index, FileChannel channel, MappedByteBuffer buffer) {
+        this.index = index;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create new segment file and map it to memory
+     *
+     * @param directory
+     * @param index
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    static JournalSegment create(Path directory, long index, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path(directory, index), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new JournalSegment(index, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read all valid records of segment file
+     * Reading stops at first empty or corrupted record, e.g. record torn by crash
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static List<Transaction> read(Path file) throws IOException {
+        List<Transaction> result = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        Transaction transaction;
+        while ((transaction = JournalRecord.read(buffer)) != null)
+            result.add(transaction);
+        return result;
+    }
+
+    /**
+     * Find segment files in directory
+     *
+     * @param directory
+     * @return segment files by segment index
+     * @throws IOException
+     */
+    static TreeMap<Long, Path> list(Path directory) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_PATTERN.matcher(file.getFileName().toString());
+                if (matcher.matches())
+                    result.put(Long.valueOf(matcher.group(1)), file);
+            });
+        }
+        return result;
+    }
+
+    static Path path(Path directory, long index) {
+        return directory.resolve(String.format(FILE_FORMAT, index));
+    }
+
+    /**
+     * Append record to segment
+     *
+     * @param record
+     * @return false if segment has no space left for record
+     */
+    boolean append(ByteBuffer record) {
+        if (buffer.remaining() < record.remaining())
+            return false;
+        buffer.put(record);
+        return true;
+    }
+
+    /**
+     * Force written records to disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    int getPosition() {
+        return buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
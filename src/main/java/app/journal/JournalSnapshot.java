@@ -0,0 +1,117 @@
+package app.journal;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Journal snapshot
+ * All journal records up to snapshot sequence number are stored in DB, so recovery replays only records after it.
+ * Snapshot file is written to temporary file first and renamed, so partially written snapshot is never read.
+ */
+@Getter
+class JournalSnapshot {
+    private static Logger logger = LoggerFactory.getLogger(JournalSnapshot.class);
+    private static final int MAGIC = 0x4A534E50;
+    private static final String FILE_FORMAT = "snapshot-%020d.dat";
+    private static final Pattern FILE_PATTERN = Pattern.compile("snapshot-(\\d{20})\\.dat");
+
+    private final long sequence;
+
+    JournalSnapshot(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Write snapshot file
+     *
+     * @param directory
+     * @throws IOException
+     */
+    void write(Path directory) throws IOException {
+        Path file = directory.resolve(String.format(FILE_FORMAT, sequence));
+        Path tmp = directory.resolve(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(tmp), crc)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read latest valid snapshot
+     *
+     * @param directory
+     * @return snapshot or null if there is no valid snapshot
+     * @throws IOException
+     */
+    static JournalSnapshot readLatest(Path directory) throws IOException {
+        for (Path file : list(directory).descendingMap().values()) {
+            try {
+                return read(file);
+            } catch (IOException e) {
+                logger.warn("Skipping invalid journal snapshot {}: {}", file, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find snapshot files in directory
+     *
+     * @param directory
+     * @return snapshot files by sequence number
+     * @throws IOException
+     */
+    static TreeMap<Long, Path> list(Path directory) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = FILE_PATTERN.matcher(file.getFileName().toString());
+                if (matcher.matches())
+                    result.put(Long.valueOf(matcher.group(1)), file);
+            });
+        }
+        return result;
+    }
+
+    private static JournalSnapshot read(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        if (content.length < 8)
+            throw new IOException("Invalid snapshot size");
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Invalid snapshot header");
+            long sequence = in.readLong();
+            if (in.readLong() != crc.getValue())
+                throw new IOException("Invalid snapshot checksum");
+            return new JournalSnapshot(sequence);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package app.ledger;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Compact in memory table of account balances
+ * Accounts are kept in single long array without any objects: each slot holds account id, balance in cents and update
+ * time in milliseconds next to each other, slot is found with open addressing (linear probing) on account id. Table
+ * is resized when it is 3/4 full, so an account takes 32 to 64 bytes of heap.
+ * Only one thread at a time may change the table (engine serializes writers with stripe lock or partition thread),
+ * it reads its own changes without locking. Other threads read with optimistic StampedLock reads, so readers never
+ * block transfers.
+ */
+class BalanceTable {
+    static final int BALANCE = 0;
+    static final int UPDATED = 1;
+    static final int ENTRY_SIZE = 2;
+
+    private static final int STRIDE = 3;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 8;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] slots;
+    private int size;
+
+    BalanceTable() {
+        this.slots = createSlots(MIN_CAPACITY);
+    }
+
+    /**
+     * Check if table holds account, must be called by writer thread
+     *
+     * @param accountId
+     * @return
+     */
+    boolean contains(long accountId) {
+        return find(slots, accountId) >= 0;
+    }
+
+    /**
+     * Get account balance, must be called by writer thread
+     *
+     * @param accountId
+     * @return balance in cents
+     * @throws IllegalStateException when account is not in table
+     */
+    long getBalance(long accountId) {
+        int slot = find(slots, accountId);
+        if (slot < 0)
+            throw new IllegalStateException("Balance of account " + accountId + " is not loaded");
+        return slots[slot + 1];
+    }
+
+    /**
+     * Add account or set its balance, must be called by writer thread
+     *
+     * @param accountId
+     * @param balance       in cents
+     * @param updatedMillis
+     */
+    void put(long accountId, long balance, long updatedMillis) {
+        if (accountId == EMPTY)
+            throw new IllegalArgumentException("Invalid account id " + accountId);
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(slots, accountId);
+            if (slot < 0) {
+                if ((size + 1) * 4L > capacity(slots) * 3L) {
+                    slots = resize(slots, capacity(slots) * 2);
+                    slot = find(slots, accountId);
+                }
+                slot = -slot - 1;
+                slots[slot] = accountId;
+                size++;
+            }
+            slots[slot + 1] = balance;
+            slots[slot + 2] = updatedMillis;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove account, so its balance is loaded again on next access, must be called by writer thread
+     * Following slots of the same probe sequence are shifted back, so no deleted markers are left in table
+     *
+     * @param accountId
+     */
+    void remove(long accountId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(slots, accountId);
+            if (slot < 0)
+                return;
+            int mask = capacity(slots) - 1;
+            int hole = slot / STRIDE;
+            int next = hole;
+            while (true) {
+                next = (next + 1) & mask;
+                long id = slots[next * STRIDE];
+                if (id == EMPTY)
+                    break;
+                int home = home(id, mask);
+                //Entry can fill the hole only if its home slot is not cyclically between hole and entry
+                boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!stays) {
+                    System.arraycopy(slots, next * STRIDE, slots, hole * STRIDE, STRIDE);
+                    hole = next;
+                }
+            }
+            slots[hole * STRIDE] = EMPTY;
+            size--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Read account balance and update time, may be called by any thread
+     *
+     * @param accountId
+     * @param entry     filled with balance and update time, at least ENTRY_SIZE long
+     * @return false if account is not in table
+     */
+    boolean read(long accountId, long[] entry) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = stamp != 0 && read(slots, accountId, entry);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = read(slots, accountId, entry);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    private static boolean read(long[] slots, long accountId, long[] entry) {
+        int slot = find(slots, accountId);
+        if (slot < 0)
+            return false;
+        entry[BALANCE] = slots[slot + 1];
+        entry[UPDATED] = slots[slot + 2];
+        return true;
+    }
+
+    /**
+     * Find slot of account
+     * Probing is bounded by capacity, so optimistic reader seeing table being changed always finishes
+     *
+     * @param slots
+     * @param accountId
+     * @return array index of account slot, or -(index of free slot) - 1 if account is not in table
+     */
+    private static int find(long[] slots, long accountId) {
+        int capacity = capacity(slots);
+        int mask = capacity - 1;
+        int index = home(accountId, mask);
+        for (int i = 0; i < capacity; i++) {
+            long id = slots[index * STRIDE];
+            if (id == accountId)
+                return index * STRIDE;
+            if (id == EMPTY)
+                return -(index * STRIDE) - 1;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static long[] resize(long[] slots, int capacity) {
+        long[] result = createSlots(capacity);
+        for (int i = 0; i < slots.length; i += STRIDE) {
+            if (slots[i] != EMPTY)
+                System.arraycopy(slots, i, result, -find(result, slots[i]) - 1, STRIDE);
+        }
+        return result;
+    }
+
+    private static long[] createSlots(int capacity) {
+        long[] result = new long[capacity * STRIDE];
+        for (int i = 0; i < result.length; i += STRIDE)
+            result[i] = EMPTY;
+        return result;
+    }
+
+    private static int capacity(long[] slots) {
+        return slots.length / STRIDE;
+    }
+
+    /**
+     * Get home slot of account id
+     * Ids are mixed with 64 bit finalizer of MurmurHash3, so sequential ids and ids of one lock stripe spread over
+     * the whole table
+     *
+     * @param accountId
+     * @param mask
+     * @return
+     */
+    private static int home(long accountId, int mask) {
+        long h = accountId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,253 @@
+package app.ledger;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.db.RequestConnection;
+import app.exceptions.ApplicationException;
+import app.exceptions.DataBaseException;
+import app.exceptions.DataConflictException;
+import app.exceptions.InvalidRequestData;
+import app.exceptions.NotFoundException;
+import app.exceptions.PaymentAPIException;
+import app.exceptions.ServiceUnavailableException;
+import app.metrics.MetricsRegistry;
+import app.models.Account;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static app.constants.ErrorMessages.ERROR_SERVICE_UNAVAILABLE;
+
+/**
+ * Group commit ledger engine
+ * Single transfers are queued and committer thread executes everything that arrived within commit window (or up to
+ * max group size) as one partial batch of underlying engine, so many transfers share one DB commit. Request thread
+ * waits until its group is committed. Failure of one transfer does not affect other transfers of the group, but
+ * error of whole group commit is reported to every transfer of the group. Queue is bounded, transfer arriving to full
+ * queue is rejected with 503, so callers are not queued beyond what committer can catch up with.
+ */
+@Singleton
+public class GroupCommitLedgerEngine implements LedgerEngine {
+    public static final String DELEGATE = "groupCommitDelegate";
+    private static Logger logger = LoggerFactory.getLogger(GroupCommitLedgerEngine.class);
+
+    @Inject
+    @Named(DELEGATE)
+    private LedgerEngine delegate;
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private static final long STOP_CHECK_MILLIS = 100;
+
+    private final BlockingQueue<PendingTransfer> queue;
+    private final long windowNanos;
+    private final int maxSize;
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    public GroupCommitLedgerEngine() {
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_GROUP_COMMIT_WINDOW_MICROS, ConfigConstants.DEFAULT_GROUP_COMMIT_WINDOW_MICROS)));
+        this.maxSize = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_GROUP_COMMIT_MAX_SIZE,
+                ConfigConstants.DEFAULT_GROUP_COMMIT_MAX_SIZE));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_GROUP_COMMIT_QUEUE_SIZE, ConfigConstants.DEFAULT_GROUP_COMMIT_QUEUE_SIZE)));
+        this.committer = new Thread(this::commitLoop, "ledger-group-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Queue transfer and wait until its group is committed
+     * Request connection is released while waiting, committer thread uses its own one
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     * @throws ServiceUnavailableException when queue is full or engine is stopped
+     */
+    @Override
+    public Long transfer(Transaction transaction) throws PaymentAPIException {
+        PendingTransfer pending = new PendingTransfer(transaction);
+        if (!running || !queue.offer(pending))
+            throw new ServiceUnavailableException(ERROR_SERVICE_UNAVAILABLE);
+        //Transfer queued while engine was stopping is either removed here or rejected by stop
+        if (!running && queue.remove(pending))
+            throw new ServiceUnavailableException(ERROR_SERVICE_UNAVAILABLE);
+        RequestConnection.release();
+        try {
+            return pending.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PaymentAPIException)
+                throw (PaymentAPIException) e.getCause();
+            throw new ApplicationException(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrupted while waiting for group commit");
+        }
+    }
+
+    /**
+     * Execute transfers batch
+     * Batch is already committed as a group, so it is passed to underlying engine directly
+     *
+     * @param transactions
+     * @param atomic
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public List<TransactionBatchItem> transferBatch(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        return delegate.transferBatch(transactions, atomic);
+    }
+
+    @Override
+    public boolean holdsBalances() {
+        return delegate.holdsBalances();
+    }
+
+    @Override
+    public Account withBalance(Account account) throws DataBaseException {
+        return delegate.withBalance(account);
+    }
+
+    /**
+     * Stop accepting transfers, commit group in progress and reject transfers still queued
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingTransfer> rejected = new ArrayList<>();
+        queue.drainTo(rejected);
+        rejected.forEach(p -> p.result.completeExceptionally(
+                new ServiceUnavailableException(ERROR_SERVICE_UNAVAILABLE)));
+        delegate.stop();
+    }
+
+    /**
+     * Committer thread loop
+     */
+    private void commitLoop() {
+        while (running) {
+            try {
+                List<PendingTransfer> group = this.collectGroup();
+                if (!group.isEmpty())
+                    this.commit(group);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Group commit failed", e);
+            }
+        }
+    }
+
+    /**
+     * Wait for first transfer and collect transfers arriving within commit window
+     * Waiting for first transfer is limited, so stopped engine is noticed without interrupting group in progress
+     *
+     * @return empty group when no transfer arrived
+     * @throws InterruptedException
+     */
+    private List<PendingTransfer> collectGroup() throws InterruptedException {
+        PendingTransfer first = queue.poll(STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null)
+            return Collections.emptyList();
+        List<PendingTransfer> group = new ArrayList<>();
+        group.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (group.size() < maxSize) {
+            queue.drainTo(group, maxSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxSize || remaining <= 0)
+                break;
+            PendingTransfer next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+                break;
+            group.add(next);
+        }
+        return group;
+    }
+
+    /**
+     * Commit group as single partial batch and complete waiting transfers
+     *
+     * @param group
+     */
+    private void commit(List<PendingTransfer> group) {
+        List<Transaction> transactions = new ArrayList<>(group.size());
+        group.forEach(p -> transactions.add(p.transaction));
+        long start = System.nanoTime();
+        try {
+            List<TransactionBatchItem> items = delegate.transferBatch(transactions, false);
+            for (int i = 0; i < group.size(); i++) {
+                TransactionBatchItem item = items.get(i);
+                if (item.getStatus() == HttpStatus.CREATED_201)
+                    group.get(i).result.complete(item.getTransaction().getId());
+                else
+                    group.get(i).result.completeExceptionally(this.getTransferError(item));
+            }
+        } catch (PaymentAPIException | RuntimeException e) {
+            group.forEach(p -> p.result.completeExceptionally(e));
+        }
+        metricsRegistry.histogram(MetricConstants.GROUP_COMMIT_SIZE).record(group.size());
+        metricsRegistry.histogram(MetricConstants.GROUP_COMMIT_DURATION_MICROS)
+                .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    /**
+     * Get exception of failed group transfer with the same status as single transfer of underlying engine would have
+     * Exception of rejected item is passed on as is, aborted items get exception matching their status
+     *
+     * @param item
+     * @return
+     */
+    private PaymentAPIException getTransferError(TransactionBatchItem item) {
+        if (item.getException() != null)
+            return item.getException();
+        switch (item.getStatus()) {
+            case HttpStatus.BAD_REQUEST_400:
+                return new InvalidRequestData(item.getError());
+            case HttpStatus.NOT_FOUND_404:
+                return new NotFoundException(item.getError());
+            case HttpStatus.CONFLICT_409:
+                return new DataConflictException(item.getError());
+            case HttpStatus.SERVICE_UNAVAILABLE_503:
+                return new ServiceUnavailableException(item.getError());
+            default:
+                return new ApplicationException(item.getError());
+        }
+    }
+
+    /**
+     * Queued transfer waiting for its group commit
+     */
+    private static class PendingTransfer {
+        private final Transaction transaction;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private PendingTransfer(Transaction transaction) {
+            this.transaction = transaction;
+        }
+    }
+}
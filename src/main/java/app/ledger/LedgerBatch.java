@@ -0,0 +1,79 @@
+package app.ledger;
+
+import app.exceptions.PaymentAPIException;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import org.eclipse.jetty.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static app.constants.ErrorMessages.ERROR_BATCH_ABORTED;
+
+/**
+ * Collects per transaction results while ledger engine executes transaction batch
+ */
+class LedgerBatch {
+    private final List<Transaction> transactions;
+    private final TransactionBatchItem[] items;
+    private final List<Transaction> accepted = new ArrayList<>();
+
+    LedgerBatch(List<Transaction> transactions) {
+        this.transactions = transactions;
+        this.items = new TransactionBatchItem[transactions.size()];
+    }
+
+    /**
+     * Mark batch transaction as accepted. Accepted transactions are persisted when batch completes
+     *
+     * @param index
+     */
+    void accept(int index) {
+        accepted.add(transactions.get(index));
+    }
+
+    /**
+     * Mark batch transaction as failed
+     *
+     * @param index
+     * @param e
+     */
+    void reject(int index, PaymentAPIException e) {
+        items[index] = new TransactionBatchItem(e);
+    }
+
+    List<Transaction> getAccepted() {
+        return accepted;
+    }
+
+    boolean hasErrors() {
+        return accepted.size() < transactions.size();
+    }
+
+    /**
+     * Get results of persisted batch
+     *
+     * @return
+     */
+    List<TransactionBatchItem> complete() {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null)
+                items[i] = new TransactionBatchItem(HttpStatus.CREATED_201, transactions.get(i), null);
+        }
+        return Arrays.asList(items);
+    }
+
+    /**
+     * Get results of batch that was not persisted because of failed transactions
+     *
+     * @return
+     */
+    List<TransactionBatchItem> abort() {
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] == null)
+                items[i] = new TransactionBatchItem(HttpStatus.FAILED_DEPENDENCY_424, null, ERROR_BATCH_ABORTED);
+        }
+        return Arrays.asList(items);
+    }
+}
@@ -0,0 +1,68 @@
+package app.ledger;
+
+import app.exceptions.DataBaseException;
+import app.exceptions.PaymentAPIException;
+import app.models.Account;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import com.google.inject.ImplementedBy;
+
+import java.util.List;
+
+/**
+ * Ledger engine moves money between accounts
+ * Implementations decide how account balances are held and how concurrent transfers are serialized
+ */
+@ImplementedBy(StripedLockLedgerEngine.class)
+public interface LedgerEngine {
+    /**
+     * Transfer transaction amount from sender account to receiver account and persist the transaction
+     * Created transaction id and timestamps are set to provided transaction object
+     *
+     * @param transaction
+     * @return id of newly created transaction
+     * @throws PaymentAPIException
+     */
+    Long transfer(Transaction transaction) throws PaymentAPIException;
+
+    /**
+     * Execute transfers in given order and persist them in single DB transaction
+     * In atomic mode nothing is persisted if any of transfers fails
+     *
+     * @param transactions
+     * @param atomic
+     * @return result for each transaction, in the same order as transactions
+     * @throws PaymentAPIException when whole batch could not be persisted
+     */
+    List<TransactionBatchItem> transferBatch(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException;
+
+    /**
+     * Check if engine holds current account balances in memory
+     * Accounts read from DB do not have to be reloaded after transfers, when their balance is taken from engine
+     *
+     * @return
+     */
+    default boolean holdsBalances() {
+        return false;
+    }
+
+    /**
+     * Get account with current balance held by engine
+     *
+     * @param account account read from DB, not modified
+     * @return copy of account with current balance and update time, or the same account if engine does not hold
+     * its balance
+     * @throws DataBaseException
+     */
+    default Account withBalance(Account account) throws DataBaseException {
+        return account;
+    }
+
+    /**
+     * Stop engine threads on shutdown
+     * Transfers submitted after stop are rejected
+     */
+    default void stop() {
+    }
+}
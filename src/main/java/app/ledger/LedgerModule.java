@@ -0,0 +1,49 @@
+package app.ledger;
+
+import app.constants.ConfigConstants;
+import app.utils.ConfigUtils;
+import com.google.inject.AbstractModule;
+import com.google.inject.name.Names;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guice module selecting ledger engine implementation
+ * Engine is chosen with system property ledgerEngine: memory (default), partitioned or sql. With system property
+ * ledgerGroupCommit=true transfers of selected engine are committed in groups.
+ */
+public class LedgerModule extends AbstractModule {
+    private static Logger logger = LoggerFactory.getLogger(LedgerModule.class);
+
+    @Override
+    protected void configure() {
+        Class<? extends LedgerEngine> engineClass = this.getEngineClass();
+        if (ConfigUtils.getBooleanProperty(ConfigConstants.VAR_LEDGER_GROUP_COMMIT, false)) {
+            bind(LedgerEngine.class).annotatedWith(Names.named(GroupCommitLedgerEngine.DELEGATE)).to(engineClass);
+            bind(LedgerEngine.class).to(GroupCommitLedgerEngine.class);
+        } else
+            bind(LedgerEngine.class).to(engineClass);
+    }
+
+    /**
+     * Get ledger engine implementation selected with system property
+     *
+     * @return
+     */
+    private Class<? extends LedgerEngine> getEngineClass() {
+        String engine = ConfigUtils.getStringProperty(ConfigConstants.VAR_LEDGER_ENGINE,
+                ConfigConstants.LEDGER_ENGINE_MEMORY);
+        switch (engine) {
+            case ConfigConstants.LEDGER_ENGINE_SQL:
+                return SqlLedgerEngine.class;
+            case ConfigConstants.LEDGER_ENGINE_PARTITIONED:
+                return PartitionedLedgerEngine.class;
+            case ConfigConstants.LEDGER_ENGINE_MEMORY:
+                return StripedLockLedgerEngine.class;
+            default:
+                logger.warn("Unknown ledgerEngine {} provided. Will use {}", engine,
+                        ConfigConstants.LEDGER_ENGINE_MEMORY);
+                return StripedLockLedgerEngine.class;
+        }
+    }
+}
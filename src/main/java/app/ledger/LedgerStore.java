@@ -0,0 +1,354 @@
+package app.ledger;
+
+import app.models.AccountDailySummary;
+import app.models.Transaction;
+import app.utils.MoneyUtils;
+import com.google.inject.Singleton;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * JDBC statements shared by ledger engines
+ * All methods work on provided connection, so caller controls DB transaction boundaries
+ */
+@Singleton
+public class LedgerStore {
+    private static final String SQL_SELECT_BALANCE = "SELECT balance, updated FROM account WHERE id = ?";
+    private static final String SQL_INSERT_TRANSACTION = "INSERT INTO account_transaction (title, amount, " +
+            "sender_account_id, receiver_account_id, journal_seq, idempotency_key, updated, created) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_MERGE_SUMMARY = "MERGE INTO account_daily_summary s USING (SELECT " +
+            "CAST(? AS BIGINT) account_id, CAST(? AS DATE) day, " +
+            "CAST(? AS BIGINT) debit_count, CAST(? AS DECIMAL) debit_sum, CAST(? AS BIGINT) credit_count, " +
+            "CAST(? AS DECIMAL) credit_sum) v " +
+            "ON (s.account_id = v.account_id AND s.day = v.day) " +
+            "WHEN MATCHED THEN UPDATE SET debit_count = s.debit_count + v.debit_count, " +
+            "debit_sum = s.debit_sum + v.debit_sum, credit_count = s.credit_count + v.credit_count, " +
+            "credit_sum = s.credit_sum + v.credit_sum " +
+            "WHEN NOT MATCHED THEN INSERT (account_id, day, debit_count, debit_sum, credit_count, credit_sum) " +
+            "VALUES (v.account_id, v.day, v.debit_count, v.debit_sum, v.credit_count, v.credit_sum)";
+    private static final String SQL_SELECT_JOURNALED = "SELECT 1 FROM account_transaction WHERE journal_seq = ?";
+    private static final String SQL_SELECT_MAX_JOURNAL_SEQ = "SELECT MAX(journal_seq) FROM account_transaction";
+    private static final String SQL_CHECKPOINT = "CHECKPOINT SYNC";
+    private static final String SQL_UPDATE_BALANCE_AT = "UPDATE account SET balance = ?, updated = ? WHERE id = ? " +
+            "AND balance = ?";
+    private static final String SQL_LOCK_ACCOUNTS = "SELECT id FROM account WHERE id IN (%s) ORDER BY id FOR UPDATE";
+    private static final String SQL_DEBIT = "UPDATE account SET balance = balance - ?, updated = ? WHERE id = ? " +
+            "AND balance >= ?";
+    private static final String SQL_CREDIT = "UPDATE account SET balance = balance + ?, updated = ? WHERE id = ?";
+
+    /**
+     * Load account balance in cents
+     *
+     * @param con
+     * @param accountId
+     * @return account balance or null if account does not exist
+     * @throws SQLException when balance is not whole number of cents
+     */
+    public Long loadBalance(Connection con, Long accountId) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_SELECT_BALANCE)) {
+            pst.setLong(1, accountId);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (rs.next())
+                    return toCents(accountId, rs.getBigDecimal("balance"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load account balance and update time into balance table
+     *
+     * @param con
+     * @param accountId
+     * @param table
+     * @return false if account does not exist
+     * @throws SQLException when balance is not whole number of cents
+     */
+    boolean loadBalance(Connection con, Long accountId, BalanceTable table) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_SELECT_BALANCE)) {
+            pst.setLong(1, accountId);
+            try (ResultSet rs = pst.executeQuery()) {
+                if (!rs.next())
+                    return false;
+                table.put(accountId, toCents(accountId, rs.getBigDecimal("balance")),
+                        rs.getTimestamp("updated").getTime());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Insert transaction row
+     * Created transaction id and timestamps are set to provided transaction object. Daily summaries of sender and
+     * receiver accounts are updated in the same DB transaction.
+     *
+     * @param con
+     * @param transaction
+     * @param timestamp
+     * @return id of newly created transaction
+     * @throws SQLException
+     */
+    public Long insertTransaction(Connection con, Transaction transaction, Timestamp timestamp) throws SQLException {
+        this.insertTransactions(con, Collections.singletonList(transaction), timestamp);
+        return transaction.getId();
+    }
+
+    /**
+     * Set new account balance
+     * Update is applied only if balance in DB still equals to expected one
+     *
+     * @param con
+     * @param accountId
+     * @param balance         in cents
+     * @param expectedBalance in cents
+     * @param timestamp
+     * @return true if account was updated
+     * @throws SQLException
+     */
+    public boolean updateBalance(Connection con, Long accountId, long balance, long expectedBalance,
+                                 Timestamp timestamp) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_UPDATE_BALANCE_AT)) {
+            pst.setBigDecimal(1, MoneyUtils.toAmount(balance));
+            pst.setTimestamp(2, timestamp);
+            pst.setLong(3, accountId);
+            pst.setBigDecimal(4, MoneyUtils.toAmount(expectedBalance));
+            return pst.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Subtract amount from account balance
+     * Update is applied only if account has sufficient balance
+     *
+     * @param con
+     * @param accountId
+     * @param amount
+     * @param timestamp
+     * @return true if account was updated
+     * @throws SQLException
+     */
+    public boolean debit(Connection con, Long accountId, BigDecimal amount, Timestamp timestamp)
+            throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_DEBIT)) {
+            pst.setBigDecimal(1, amount);
+            pst.setTimestamp(2, timestamp);
+            pst.setLong(3, accountId);
+            pst.setBigDecimal(4, amount);
+            return pst.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Add amount to account balance
+     *
+     * @param con
+     * @param accountId
+     * @param amount
+     * @param timestamp
+     * @return true if account was updated
+     * @throws SQLException
+     */
+    public boolean credit(Connection con, Long accountId, BigDecimal amount, Timestamp timestamp)
+            throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_CREDIT)) {
+            pst.setBigDecimal(1, amount);
+            pst.setTimestamp(2, timestamp);
+            pst.setLong(3, accountId);
+            return pst.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Insert transaction rows with single JDBC batch
+     * Created transaction id and timestamps are set to provided transaction objects. Daily summaries of batch accounts
+     * are updated in the same DB transaction.
+     *
+     * @param con
+     * @param transactions
+     * @param timestamp
+     * @throws SQLException
+     */
+    public void insertTransactions(Connection con, List<Transaction> transactions, Timestamp timestamp)
+            throws SQLException {
+        if (transactions.isEmpty())
+            return;
+        try (PreparedStatement pst = con.prepareStatement(SQL_INSERT_TRANSACTION,
+                PreparedStatement.RETURN_GENERATED_KEYS)) {
+            for (Transaction transaction : transactions) {
+                pst.setString(1, transaction.getTitle());
+                pst.setBigDecimal(2, transaction.getAmount());
+                pst.setLong(3, transaction.getSenderAccountId());
+                pst.setLong(4, transaction.getReceiverAccountId());
+                pst.setObject(5, transaction.getJournalSeq(), Types.BIGINT);
+                pst.setString(6, transaction.getIdempotencyKey());
+                pst.setTimestamp(7, timestamp);
+                pst.setTimestamp(8, timestamp);
+                pst.addBatch();
+            }
+            pst.executeBatch();
+            try (ResultSet generatedKeys = pst.getGeneratedKeys()) {
+                for (Transaction transaction : transactions) {
+                    if (!generatedKeys.next())
+                        throw new SQLException("Could not obtain newly created transaction ID");
+                    transaction.setId(generatedKeys.getLong(1));
+                    transaction.setUpdated(timestamp);
+                    transaction.setCreated(timestamp);
+                }
+            }
+        }
+        this.updateSummaries(con, transactions, new Date(timestamp.getTime()));
+    }
+
+    /**
+     * Add transactions to daily summaries of their accounts
+     * Transactions are aggregated per account first and accounts are updated in ascending id order
+     *
+     * @param con
+     * @param transactions
+     * @param day          day of transactions
+     * @throws SQLException
+     */
+    private void updateSummaries(Connection con, List<Transaction> transactions, Date day) throws SQLException {
+        Map<Long, AccountDailySummary> summaries = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            summaries.computeIfAbsent(transaction.getSenderAccountId(), id -> new AccountDailySummary())
+                    .addDebit(transaction.getAmount());
+            summaries.computeIfAbsent(transaction.getReceiverAccountId(), id -> new AccountDailySummary())
+                    .addCredit(transaction.getAmount());
+        }
+        try (PreparedStatement pst = con.prepareStatement(SQL_MERGE_SUMMARY)) {
+            for (Map.Entry<Long, AccountDailySummary> summary : summaries.entrySet()) {
+                pst.setLong(1, summary.getKey());
+                pst.setDate(2, day);
+                pst.setLong(3, summary.getValue().getDebitCount());
+                pst.setBigDecimal(4, summary.getValue().getDebitSum());
+                pst.setLong(5, summary.getValue().getCreditCount());
+                pst.setBigDecimal(6, summary.getValue().getCreditSum());
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+    }
+
+    /**
+     * Set new balances for multiple accounts with single JDBC batch
+     * Each update is applied only if balance in DB still equals to expected one
+     *
+     * @param con
+     * @param balances         new balances in cents by account id
+     * @param expectedBalances expected current balances in cents by account id
+     * @param timestamp
+     * @return true if all accounts were updated
+     * @throws SQLException
+     */
+    public boolean updateBalances(Connection con, Map<Long, Long> balances, Map<Long, Long> expectedBalances,
+                                  Timestamp timestamp) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_UPDATE_BALANCE_AT)) {
+            for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                pst.setBigDecimal(1, MoneyUtils.toAmount(balance.getValue()));
+                pst.setTimestamp(2, timestamp);
+                pst.setLong(3, balance.getKey());
+                pst.setBigDecimal(4, MoneyUtils.toAmount(expectedBalances.get(balance.getKey())));
+                pst.addBatch();
+            }
+            for (int count : pst.executeBatch()) {
+                if (count == 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Check if transaction of journal record is already stored
+     *
+     * @param con
+     * @param journalSeq
+     * @return
+     * @throws SQLException
+     */
+    public boolean isJournaled(Connection con, long journalSeq) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_SELECT_JOURNALED)) {
+            pst.setLong(1, journalSeq);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Get highest journal sequence number of stored transactions
+     *
+     * @param con
+     * @return 0 if no journaled transaction is stored
+     * @throws SQLException
+     */
+    public long getMaxJournalSeq(Connection con) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(SQL_SELECT_MAX_JOURNAL_SEQ);
+             ResultSet rs = pst.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Write all committed changes to DB file and sync it to disk
+     *
+     * @param con
+     * @throws SQLException
+     */
+    public void checkpoint(Connection con) throws SQLException {
+        try (Statement stm = con.createStatement()) {
+            stm.execute(SQL_CHECKPOINT);
+        }
+    }
+
+    /**
+     * Lock account rows until end of DB transaction
+     * Rows are locked in ascending id order
+     *
+     * @param con
+     * @param accountIds
+     * @throws SQLException
+     */
+    public void lockAccounts(Connection con, Collection<Long> accountIds) throws SQLException {
+        if (accountIds.isEmpty())
+            return;
+        String sql = String.format(SQL_LOCK_ACCOUNTS, String.join(", ", Collections.nCopies(accountIds.size(), "?")));
+        try (PreparedStatement pst = con.prepareStatement(sql)) {
+            int i = 1;
+            for (Long accountId : accountIds)
+                pst.setLong(i++, accountId);
+            pst.executeQuery().close();
+        }
+    }
+
+    /**
+     * Convert DB balance to cents
+     *
+     * @param accountId
+     * @param balance
+     * @return
+     * @throws SQLException when balance is not whole number of cents
+     */
+    private static long toCents(Long accountId, BigDecimal balance) throws SQLException {
+        try {
+            return MoneyUtils.toCents(balance);
+        } catch (ArithmeticException e) {
+            throw new SQLException("Balance of account " + accountId + " is not whole number of cents");
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package app.ledger;
+
+import app.db.DataSource;
+import app.exceptions.DataBaseException;
+import app.exceptions.DataConflictException;
+import app.exceptions.InsufficientBalanceException;
+import app.exceptions.InvalidRequestData;
+import app.exceptions.PaymentAPIException;
+import app.journal.Journal;
+import app.models.Account;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.utils.MoneyUtils;
+import com.google.inject.Inject;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static app.constants.ErrorMessages.*;
+
+/**
+ * Base of in memory ledger engines
+ * Keeps account balances in compact balance tables and writes every transfer through to DB. Subclasses decide how
+ * transfers touching the same accounts are serialized: exclusive methods must be called only while no other thread
+ * can execute transfers of the same accounts. Balances are loaded from DB on first access and are the source of
+ * account balance for account reads.
+ */
+abstract class MemoryLedgerEngine implements LedgerEngine {
+    @Inject
+    private DataSource dataSource;
+    @Inject
+    private LedgerStore ledgerStore;
+    @Inject
+    protected Journal journal;
+
+    /**
+     * Get table holding balance of account
+     *
+     * @param accountId
+     * @return
+     */
+    protected abstract BalanceTable balances(Long accountId);
+
+    /**
+     * Load account balance from DB while no other thread can change the account
+     *
+     * @param accountId
+     * @return false if account does not exist
+     * @throws DataBaseException
+     */
+    protected abstract boolean loadBalance(Long accountId) throws DataBaseException;
+
+    @Override
+    public boolean holdsBalances() {
+        return true;
+    }
+
+    /**
+     * Get account with balance and update time from balance table
+     * Balance not held yet is loaded first, so returned account is never older than last transfer. Account changed
+     * after last transfer keeps its own update time.
+     *
+     * @param account
+     * @return
+     * @throws DataBaseException
+     */
+    @Override
+    public Account withBalance(Account account) throws DataBaseException {
+        long[] entry = new long[BalanceTable.ENTRY_SIZE];
+        BalanceTable table = balances(account.getId());
+        if (!table.read(account.getId(), entry)) {
+            //Balance removed again by concurrent failed transfer is left to the next read
+            if (!this.loadBalance(account.getId()) || !table.read(account.getId(), entry))
+                return account;
+        }
+        Account result = new Account();
+        result.setId(account.getId());
+        result.setCustomerId(account.getCustomerId());
+        result.setTitle(account.getTitle());
+        result.setBalance(MoneyUtils.toAmount(entry[BalanceTable.BALANCE]));
+        result.setUpdated(account.getUpdated() != null && account.getUpdated().getTime() > entry[BalanceTable.UPDATED]
+                ? account.getUpdated() : new Timestamp(entry[BalanceTable.UPDATED]));
+        result.setCreated(account.getCreated());
+        return result;
+    }
+
+    /**
+     * Load account balance from DB, must be called while no other thread can change the account
+     *
+     * @param accountId
+     * @return false if account does not exist
+     * @throws DataBaseException
+     */
+    protected boolean loadBalanceExclusive(Long accountId) throws DataBaseException {
+        try (Connection con = dataSource.getConnection()) {
+            return this.load(con, accountId);
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Transfer money while no other thread can change sender and receiver accounts
+     * Transaction insert and both balance updates are committed in single DB transaction. In memory balances are
+     * changed only after successful commit, committed transfer is journaled outside of rollback path.
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     */
+    protected Long transferExclusive(Transaction transaction) throws PaymentAPIException {
+        Long senderId = transaction.getSenderAccountId();
+        Long receiverId = transaction.getReceiverAccountId();
+        try (Connection con = dataSource.getConnection()) {
+            if (!this.load(con, receiverId))
+                throw new InvalidRequestData(ERROR_UNKNOWN_RECEIVER);
+            if (!this.load(con, senderId))
+                throw new InvalidRequestData(ERROR_UNKNOWN_SENDER);
+            long receiverBalance = balances(receiverId).getBalance(receiverId);
+            long senderBalance = balances(senderId).getBalance(senderId);
+
+            long amount = transaction.getAmountCents();
+            if (amount > senderBalance)
+                throw new InsufficientBalanceException(ERROR_INSUFFICIENT_BALANCE);
+
+            long newSenderBalance;
+            long newReceiverBalance;
+            try {
+                newSenderBalance = Math.subtractExact(senderBalance, amount);
+                newReceiverBalance = Math.addExact(receiverBalance, amount);
+            } catch (ArithmeticException e) {
+                throw new InvalidRequestData(ERROR_BALANCE_OVERFLOW);
+            }
+
+            Long transactionId;
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            con.setAutoCommit(false);
+            journal.beginWrite(Collections.singletonList(transaction));
+            try {
+                try {
+                    transactionId = ledgerStore.insertTransaction(con, transaction, timestamp);
+                    if (transactionId == null)
+                        throw new DataBaseException("Could not create transaction.");
+                    if (!ledgerStore.updateBalance(con, senderId, newSenderBalance, senderBalance, timestamp))
+                        throw new DataConflictException("Could not update sender account.");
+                    if (!ledgerStore.updateBalance(con, receiverId, newReceiverBalance, receiverBalance, timestamp))
+                        throw new DataConflictException("Could not update receiver account.");
+                    con.commit();
+                } catch (SQLException | PaymentAPIException e) {
+                    con.rollback();
+                    // Balance in DB differs from cached one or DB state is unknown, reload on next transfer
+                    balances(senderId).remove(senderId);
+                    balances(receiverId).remove(receiverId);
+                    throw e;
+                }
+                journal.append(transaction);
+            } finally {
+                journal.endWrite();
+            }
+
+            balances(senderId).put(senderId, newSenderBalance, timestamp.getTime());
+            balances(receiverId).put(receiverId, newReceiverBalance, timestamp.getTime());
+            return transactionId;
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Execute transfers batch while no other thread can change batch accounts
+     * Transfers are evaluated against batch working balances, then accepted transactions and changed balances are
+     * written with JDBC batches in single DB transaction
+     *
+     * @param transactions
+     * @param atomic
+     * @return
+     * @throws PaymentAPIException
+     */
+    protected List<TransactionBatchItem> transferBatchExclusive(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        try (Connection con = dataSource.getConnection()) {
+            LedgerBatch batch = new LedgerBatch(transactions);
+            Map<Long, Long> initialBalances = new HashMap<>();
+            Map<Long, Long> workingBalances = new HashMap<>();
+            for (int i = 0; i < transactions.size(); i++) {
+                Transaction transaction = transactions.get(i);
+                Long receiverBalance = this.getBatchBalance(con, transaction.getReceiverAccountId(),
+                        initialBalances, workingBalances);
+                Long senderBalance = this.getBatchBalance(con, transaction.getSenderAccountId(),
+                        initialBalances, workingBalances);
+                long amount = transaction.getAmountCents();
+                if (receiverBalance == null)
+                    batch.reject(i, new InvalidRequestData(ERROR_UNKNOWN_RECEIVER));
+                else if (senderBalance == null)
+                    batch.reject(i, new InvalidRequestData(ERROR_UNKNOWN_SENDER));
+                else if (amount > senderBalance)
+                    batch.reject(i, new InsufficientBalanceException(ERROR_INSUFFICIENT_BALANCE));
+                else {
+                    try {
+                        long newSenderBalance = Math.subtractExact(senderBalance, amount);
+                        long newReceiverBalance = Math.addExact(receiverBalance, amount);
+                        workingBalances.put(transaction.getSenderAccountId(), newSenderBalance);
+                        workingBalances.put(transaction.getReceiverAccountId(), newReceiverBalance);
+                        batch.accept(i);
+                    } catch (ArithmeticException e) {
+                        batch.reject(i, new InvalidRequestData(ERROR_BALANCE_OVERFLOW));
+                    }
+                }
+            }
+            if (atomic && batch.hasErrors())
+                return batch.abort();
+            if (batch.getAccepted().isEmpty())
+                return batch.complete();
+
+            Map<Long, Long> changedBalances = new HashMap<>();
+            workingBalances.forEach((accountId, balance) -> {
+                if (!balance.equals(initialBalances.get(accountId)))
+                    changedBalances.put(accountId, balance);
+            });
+
+            Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+            con.setAutoCommit(false);
+            journal.beginWrite(batch.getAccepted());
+            try {
+                try {
+                    ledgerStore.insertTransactions(con, batch.getAccepted(), timestamp);
+                    if (!ledgerStore.updateBalances(con, changedBalances, initialBalances, timestamp))
+                        throw new DataConflictException("Could not update batch accounts.");
+                    con.commit();
+                } catch (SQLException | PaymentAPIException e) {
+                    con.rollback();
+                    workingBalances.keySet().forEach(accountId -> balances(accountId).remove(accountId));
+                    throw e;
+                }
+                journal.append(batch.getAccepted());
+            } finally {
+                journal.endWrite();
+            }
+
+            changedBalances.forEach((accountId, balance) ->
+                    balances(accountId).put(accountId, balance, timestamp.getTime()));
+            return batch.complete();
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Get account balance within transfers batch
+     *
+     * @param con
+     * @param accountId
+     * @param initialBalances balances before batch
+     * @param workingBalances balances after already evaluated batch transfers
+     * @return
+     * @throws SQLException
+     */
+    private Long getBatchBalance(Connection con, Long accountId, Map<Long, Long> initialBalances,
+                                 Map<Long, Long> workingBalances) throws SQLException {
+        Long balance = workingBalances.get(accountId);
+        if (balance == null && !initialBalances.containsKey(accountId)) {
+            balance = this.load(con, accountId) ? balances(accountId).getBalance(accountId) : null;
+            initialBalances.put(accountId, balance);
+            if (balance != null)
+                workingBalances.put(accountId, balance);
+        }
+        return balance;
+    }
+
+    /**
+     * Load account balance from DB into balance table on first access
+     *
+     * @param con
+     * @param accountId
+     * @return false if account does not exist
+     * @throws SQLException
+     */
+    private boolean load(Connection con, Long accountId) throws SQLException {
+        BalanceTable table = balances(accountId);
+        return table.contains(accountId) || ledgerStore.loadBalance(con, accountId, table);
+    }
+
+    /**
+     * Spread account ids over hash bits
+     *
+     * @param accountId
+     * @return
+     */
+    protected static int hash(Long accountId) {
+        long h = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
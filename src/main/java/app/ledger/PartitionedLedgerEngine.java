@@ -0,0 +1,190 @@
+package app.ledger;
+
+import app.constants.ConfigConstants;
+import app.db.RequestConnection;
+import app.exceptions.ApplicationException;
+import app.exceptions.DataBaseException;
+import app.exceptions.PaymentAPIException;
+import app.exceptions.ServiceUnavailableException;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.utils.ConfigUtils;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.inject.Singleton;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static app.constants.ErrorMessages.ERROR_SERVICE_UNAVAILABLE;
+
+/**
+ * Partitioned in memory ledger engine
+ * Every account belongs to one partition (derived from account id) and only the single thread of that partition
+ * changes its balances, so transfers are serialized without locks and never conflict. Transfer within one partition
+ * runs on partition thread. Transfer between partitions is handed off in ascending partition order: lower partition
+ * thread takes the transfer and hands it to higher partition thread, which executes it while lower partition waits.
+ * Handoff never goes from higher to lower partition, so partitions can not wait for each other in a cycle.
+ * Every partition queues at most ledgerPartitionQueueSize tasks, task handed to partition with full queue is rejected
+ * as service unavailable before anything is changed.
+ */
+@Singleton
+public class PartitionedLedgerEngine extends MemoryLedgerEngine {
+    private final ExecutorService[] partitions;
+    private final BalanceTable[] balances;
+
+    public PartitionedLedgerEngine() {
+        int count = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_LEDGER_PARTITIONS,
+                ConfigConstants.DEFAULT_LEDGER_PARTITIONS));
+        int queueSize = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_LEDGER_PARTITION_QUEUE_SIZE,
+                ConfigConstants.DEFAULT_LEDGER_PARTITION_QUEUE_SIZE));
+        this.partitions = new ExecutorService[count];
+        this.balances = new BalanceTable[count];
+        for (int i = 0; i < count; i++) {
+            String name = "ledger-partition-" + i;
+            ThreadFactory threadFactory = r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            };
+            this.partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), threadFactory);
+            this.balances[i] = new BalanceTable();
+        }
+    }
+
+    /**
+     * Transfer money between accounts
+     * Caller waits for journal record on its own thread, so partitions are not held while journal is flushed.
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public Long transfer(Transaction transaction) throws PaymentAPIException {
+        int senderPartition = partition(transaction.getSenderAccountId());
+        int receiverPartition = partition(transaction.getReceiverAccountId());
+        int[] owners = senderPartition == receiverPartition ? new int[]{senderPartition}
+                : new int[]{Math.min(senderPartition, receiverPartition), Math.max(senderPartition, receiverPartition)};
+        Long transactionId = this.execute(owners, 0, () -> this.transferExclusive(transaction));
+        journal.awaitFlush();
+        return transactionId;
+    }
+
+    /**
+     * Execute transfers batch
+     * Batch is handed off through partitions of all its accounts in ascending order and executed by the last one
+     *
+     * @param transactions
+     * @param atomic
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public List<TransactionBatchItem> transferBatch(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        int[] owners = transactions.stream()
+                .flatMapToInt(t -> IntStream.of(partition(t.getSenderAccountId()),
+                        partition(t.getReceiverAccountId())))
+                .distinct()
+                .sorted()
+                .toArray();
+        List<TransactionBatchItem> result = this.execute(owners, 0, () ->
+                this.transferBatchExclusive(transactions, atomic));
+        journal.awaitFlush();
+        return result;
+    }
+
+    /**
+     * Balances of account partition
+     * Table is changed only by partition thread or by thread it handed off to while it waits
+     *
+     * @param accountId
+     * @return
+     */
+    @Override
+    protected BalanceTable balances(Long accountId) {
+        return balances[partition(accountId)];
+    }
+
+    /**
+     * Load account balance on partition thread
+     *
+     * @param accountId
+     * @return
+     * @throws DataBaseException
+     */
+    @Override
+    protected boolean loadBalance(Long accountId) throws DataBaseException {
+        try {
+            return this.execute(new int[]{partition(accountId)}, 0, () -> this.loadBalanceExclusive(accountId));
+        } catch (DataBaseException e) {
+            throw e;
+        } catch (ServiceUnavailableException e) {
+            throw new DataBaseException(e);
+        } catch (PaymentAPIException e) {
+            throw new DataBaseException(e.getMessage());
+        }
+    }
+
+    /**
+     * Run task on thread of last partition, while every other partition thread waits for the next one
+     * Waiting request thread releases its idle connection, partition thread takes its own one. Once task is handed
+     * off, caller waits for its result even when interrupted, as task may still commit.
+     *
+     * @param owners partitions in ascending order
+     * @param index  partition to hand off to
+     * @param task
+     * @param <T>
+     * @return
+     * @throws PaymentAPIException
+     * @throws ServiceUnavailableException when partition queue is full
+     */
+    private <T> T execute(int[] owners, int index, Callable<T> task) throws PaymentAPIException {
+        if (index == owners.length)
+            return this.call(task);
+        RequestConnection.release();
+        Future<T> result;
+        try {
+            result = partitions[owners[index]].submit(() -> this.execute(owners, index + 1, task));
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException(ERROR_SERVICE_UNAVAILABLE);
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(result);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PaymentAPIException)
+                throw (PaymentAPIException) e.getCause();
+            throw new ApplicationException(e.getCause().getMessage());
+        }
+    }
+
+    private <T> T call(Callable<T> task) throws PaymentAPIException {
+        try {
+            return task.call();
+        } catch (PaymentAPIException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ApplicationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Get partition index for account
+     *
+     * @param accountId
+     * @return
+     */
+    public int partition(Long accountId) {
+        return Math.floorMod(hash(accountId), partitions.length);
+    }
+}
@@ -0,0 +1,166 @@
+package app.ledger;
+
+import app.db.DataSource;
+import app.exceptions.DataBaseException;
+import app.exceptions.InsufficientBalanceException;
+import app.exceptions.InvalidRequestData;
+import app.exceptions.PaymentAPIException;
+import app.journal.Journal;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static app.constants.ErrorMessages.*;
+
+/**
+ * Database ledger engine
+ * Balances are changed with relative updates and sufficient balance check is enforced by DB itself, so no account
+ * state is read before transfer. Debit, credit and transaction insert are executed on single connection in single DB
+ * transaction. Accounts are always updated in ascending id order, so concurrent opposite transfers can not deadlock.
+ */
+@Singleton
+public class SqlLedgerEngine implements LedgerEngine {
+    @Inject
+    private DataSource dataSource;
+    @Inject
+    private LedgerStore ledgerStore;
+    @Inject
+    private Journal journal;
+
+    /**
+     * Transfer money between accounts
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public Long transfer(Transaction transaction) throws PaymentAPIException {
+        Long senderId = transaction.getSenderAccountId();
+        Long receiverId = transaction.getReceiverAccountId();
+        Long transactionId;
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            journal.beginWrite(Collections.singletonList(transaction));
+            try {
+                try {
+                    boolean updated;
+                    if (senderId < receiverId)
+                        updated = ledgerStore.debit(con, senderId, transaction.getAmount(), timestamp)
+                                && ledgerStore.credit(con, receiverId, transaction.getAmount(), timestamp);
+                    else
+                        updated = ledgerStore.credit(con, receiverId, transaction.getAmount(), timestamp)
+                                && ledgerStore.debit(con, senderId, transaction.getAmount(), timestamp);
+                    if (!updated)
+                        throw this.getTransferError(con, senderId, receiverId);
+
+                    transactionId = ledgerStore.insertTransaction(con, transaction, timestamp);
+                    if (transactionId == null)
+                        throw new DataBaseException("Could not create transaction.");
+                    con.commit();
+                } catch (SQLException | PaymentAPIException e) {
+                    con.rollback();
+                    throw e;
+                }
+                journal.append(transaction);
+            } finally {
+                journal.endWrite();
+            }
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+        journal.awaitFlush();
+        return transactionId;
+    }
+
+    /**
+     * Execute transfers batch
+     * All batch accounts are locked in ascending id order first. Every transfer runs within its own savepoint, so
+     * failed transfer is rolled back alone. Accepted transactions are inserted with single JDBC batch.
+     *
+     * @param transactions
+     * @param atomic
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public List<TransactionBatchItem> transferBatch(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        Set<Long> accountIds = new TreeSet<>();
+        transactions.forEach(t -> {
+            accountIds.add(t.getSenderAccountId());
+            accountIds.add(t.getReceiverAccountId());
+        });
+        List<TransactionBatchItem> result;
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            LedgerBatch batch = new LedgerBatch(transactions);
+            journal.beginWrite(transactions);
+            try {
+                try {
+                    ledgerStore.lockAccounts(con, accountIds);
+                    for (int i = 0; i < transactions.size(); i++) {
+                        Transaction transaction = transactions.get(i);
+                        Savepoint savepoint = con.setSavepoint();
+                        if (ledgerStore.debit(con, transaction.getSenderAccountId(), transaction.getAmount(),
+                                timestamp) && ledgerStore.credit(con, transaction.getReceiverAccountId(),
+                                transaction.getAmount(), timestamp)) {
+                            batch.accept(i);
+                        } else {
+                            con.rollback(savepoint);
+                            batch.reject(i, this.getTransferError(con, transaction.getSenderAccountId(),
+                                    transaction.getReceiverAccountId()));
+                        }
+                    }
+                    if (atomic && batch.hasErrors()) {
+                        con.rollback();
+                        return batch.abort();
+                    }
+
+                    ledgerStore.insertTransactions(con, batch.getAccepted(), timestamp);
+                    con.commit();
+                } catch (SQLException e) {
+                    con.rollback();
+                    throw e;
+                }
+                journal.append(batch.getAccepted());
+                result = batch.complete();
+            } finally {
+                journal.endWrite();
+            }
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+        journal.awaitFlush();
+        return result;
+    }
+
+    /**
+     * Find out why sender or receiver account was not updated
+     *
+     * @param con
+     * @param senderId
+     * @param receiverId
+     * @return
+     * @throws SQLException
+     */
+    private InvalidRequestData getTransferError(Connection con, Long senderId, Long receiverId) throws SQLException {
+        if (ledgerStore.loadBalance(con, receiverId) == null)
+            return new InvalidRequestData(ERROR_UNKNOWN_RECEIVER);
+        if (ledgerStore.loadBalance(con, senderId) == null)
+            return new InvalidRequestData(ERROR_UNKNOWN_SENDER);
+        return new InsufficientBalanceException(ERROR_INSUFFICIENT_BALANCE);
+    }
+}
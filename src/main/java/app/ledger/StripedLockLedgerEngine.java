@@ -0,0 +1,126 @@
+package app.ledger;
+
+import app.constants.ConfigConstants;
+import app.exceptions.DataBaseException;
+import app.exceptions.PaymentAPIException;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.utils.ConfigUtils;
+import com.google.inject.Singleton;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * In memory ledger engine
+ * Keeps account balances in memory and writes every transfer through to DB.
+ * Accounts are guarded by striped lock table, every stripe has its own balance table changed only under stripe lock.
+ * Both account stripes are always locked in ascending stripe order (stripe is derived from account id), so concurrent
+ * transfers between same accounts wait for each other instead of failing and can not deadlock.
+ */
+@Singleton
+public class StripedLockLedgerEngine extends MemoryLedgerEngine {
+    private final ReentrantLock[] locks;
+    private final BalanceTable[] balances;
+    private final int mask;
+
+    public StripedLockLedgerEngine() {
+        int stripes = Integer.highestOneBit(Math.max(1, ConfigUtils.getIntProperty(
+                ConfigConstants.VAR_LEDGER_LOCK_STRIPES, ConfigConstants.DEFAULT_LEDGER_LOCK_STRIPES)));
+        this.locks = new ReentrantLock[stripes];
+        this.balances = new BalanceTable[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.locks[i] = new ReentrantLock();
+            this.balances[i] = new BalanceTable();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Transfer money between accounts
+     * When journal is enabled, transfer is acknowledged only after its journal record is on disk, but account locks
+     * are released before waiting for it.
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public Long transfer(Transaction transaction) throws PaymentAPIException {
+        int senderStripe = stripe(transaction.getSenderAccountId());
+        int receiverStripe = stripe(transaction.getReceiverAccountId());
+        ReentrantLock first = locks[Math.min(senderStripe, receiverStripe)];
+        ReentrantLock second = locks[Math.max(senderStripe, receiverStripe)];
+
+        Long transactionId;
+        first.lock();
+        if (second != first)
+            second.lock();
+        try {
+            transactionId = this.transferExclusive(transaction);
+        } finally {
+            if (second != first)
+                second.unlock();
+            first.unlock();
+        }
+        journal.awaitFlush();
+        return transactionId;
+    }
+
+    /**
+     * Execute transfers batch
+     * Stripes of all batch accounts are locked in ascending order before any transfer is evaluated
+     *
+     * @param transactions
+     * @param atomic
+     * @return
+     * @throws PaymentAPIException
+     */
+    @Override
+    public List<TransactionBatchItem> transferBatch(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        int[] stripes = transactions.stream()
+                .flatMapToInt(t -> IntStream.of(stripe(t.getSenderAccountId()), stripe(t.getReceiverAccountId())))
+                .distinct()
+                .sorted()
+                .toArray();
+        List<TransactionBatchItem> result;
+        for (int stripe : stripes)
+            locks[stripe].lock();
+        try {
+            result = this.transferBatchExclusive(transactions, atomic);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--)
+                locks[stripes[i]].unlock();
+        }
+        journal.awaitFlush();
+        return result;
+    }
+
+    @Override
+    protected BalanceTable balances(Long accountId) {
+        return balances[stripe(accountId)];
+    }
+
+    @Override
+    protected boolean loadBalance(Long accountId) throws DataBaseException {
+        ReentrantLock lock = locks[stripe(accountId)];
+        lock.lock();
+        try {
+            return this.loadBalanceExclusive(accountId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get lock stripe index for account
+     *
+     * @param accountId
+     * @return
+     */
+    private int stripe(Long accountId) {
+        return hash(accountId) & mask;
+    }
+}
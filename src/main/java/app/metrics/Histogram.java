@@ -0,0 +1,111 @@
+package app.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative long values
+ * Values below 16 are counted exactly, bigger values fall into logarithmic buckets with 8 sub-buckets per power of
+ * two, so reported percentiles are within 12.5% of real value.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+    private static final int EXACT_BITS = SUB_BUCKET_BITS + 1;
+    private static final int BUCKETS = EXACT_VALUES + (63 - EXACT_BITS) * SUB_BUCKETS;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record value
+     * Negative values are recorded as 0
+     *
+     * @param value
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        if (v > max.get())
+            max.accumulateAndGet(v, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get value below which given percentage of recorded values fall
+     *
+     * @param percentile between 0 and 100
+     * @return upper bound of bucket containing percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), this.getMax());
+        }
+        return this.getMax();
+    }
+
+    /**
+     * Get summary of recorded values
+     *
+     * @return count, mean, max and percentiles
+     */
+    public Map<String, Number> getSnapshot() {
+        Map<String, Number> result = new LinkedHashMap<>();
+        long n = this.getCount();
+        result.put("count", n);
+        result.put("mean", n == 0 ? 0 : (double) this.getSum() / n);
+        result.put("max", this.getMax());
+        for (double percentile : PERCENTILES)
+            result.put("p" + String.valueOf(percentile).replace(".0", ""), this.getPercentile(percentile));
+        return result;
+    }
+
+    private static int bucket(long value) {
+        if (value < EXACT_VALUES)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_VALUES + (exponent - EXACT_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < EXACT_VALUES)
+            return bucket;
+        int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + EXACT_BITS;
+        long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
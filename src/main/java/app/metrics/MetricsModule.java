@@ -0,0 +1,27 @@
+package app.metrics;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matchers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Guice module instrumenting public methods of services with duration metrics
+ */
+public class MetricsModule extends AbstractModule {
+    private static final String SERVICES_PACKAGE = "app.services";
+
+    @Override
+    protected void configure() {
+        ServiceMetricsInterceptor interceptor = new ServiceMetricsInterceptor();
+        requestInjection(interceptor);
+        bindInterceptor(Matchers.inSubpackage(SERVICES_PACKAGE), new AbstractMatcher<Method>() {
+            @Override
+            public boolean matches(Method method) {
+                return Modifier.isPublic(method.getModifiers()) && !method.isSynthetic();
+            }
+        }, interceptor);
+    }
+}
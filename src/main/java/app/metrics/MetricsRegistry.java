@@ -0,0 +1,77 @@
+package app.metrics;
+
+import com.google.inject.Singleton;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Application metrics
+ * Metrics are created on first use and live for whole application lifetime. Histograms and counters are lock free
+ * and do not allocate while recording, so callers should keep references to metrics they update on hot paths.
+ */
+@Singleton
+public class MetricsRegistry {
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Get histogram by name
+     *
+     * @param name
+     * @return
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Get counter by name
+     *
+     * @param name
+     * @return
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Register gauge reading its value when metrics are reported
+     *
+     * @param name
+     * @param gauge
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public Map<String, LongAdder> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * Get current values of all metrics ordered by name
+     *
+     * @return
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.getSnapshot()));
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> result.put(name, gauge.getAsLong()));
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Formats metrics in Prometheus text exposition format
+ * Metric names are converted to snake case (http.request.durationMicros to http_request_duration_micros), labels
+ * written in metric name are kept. Histograms are exported as summaries with separate _max gauge.
+ */
+public class PrometheusFormatter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Format all metrics of registry
+     *
+     * @param registry
+     * @return
+     */
+    public static String format(MetricsRegistry registry) {
+        StringBuilder sb = new StringBuilder();
+        String[] lastType = {null};
+        new TreeMap<>(registry.getCounters()).forEach((name, counter) ->
+                appendSample(sb, lastType, name, "counter", "", null, counter.sum()));
+        new TreeMap<>(registry.getGauges()).forEach((name, gauge) ->
+                appendSample(sb, lastType, name, "gauge", "", null, gauge.getAsLong()));
+
+        Map<String, Histogram> histograms = new TreeMap<>(registry.getHistograms());
+        histograms.forEach((name, histogram) -> {
+            for (double quantile : QUANTILES)
+                appendSample(sb, lastType, name, "summary", "", "quantile=\"" + quantile + "\"",
+                        histogram.getPercentile(quantile * 100));
+            appendSample(sb, lastType, name, "summary", "_sum", null, histogram.getSum());
+            appendSample(sb, lastType, name, "summary", "_count", null, histogram.getCount());
+        });
+        histograms.forEach((name, histogram) ->
+                appendSample(sb, lastType, name, "gauge", "_max", null, histogram.getMax()));
+        return sb.toString();
+    }
+
+    /**
+     * Append sample line, preceded by TYPE line when new metric family starts
+     *
+     * @param sb
+     * @param lastType   name and type of last written family
+     * @param name       metric name with optional labels
+     * @param type
+     * @param suffix     sample name suffix
+     * @param extraLabel label added to metric labels
+     * @param value
+     */
+    private static void appendSample(StringBuilder sb, String[] lastType, String name, String type, String suffix,
+                                     String extraLabel, long value) {
+        int labelsStart = name.indexOf('{');
+        String family = toSnakeCase(labelsStart < 0 ? name : name.substring(0, labelsStart));
+        String labels = labelsStart < 0 ? "" : name.substring(labelsStart + 1, name.length() - 1);
+        if (extraLabel != null)
+            labels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+
+        String typeFamily = "_max".equals(suffix) ? family + suffix : family;
+        String typeLine = "# TYPE " + typeFamily + " " + type;
+        if (!typeLine.equals(lastType[0])) {
+            sb.append(typeLine).append('\n');
+            lastType[0] = typeLine;
+        }
+        sb.append(family).append(suffix);
+        if (!labels.isEmpty())
+            sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String toSnakeCase(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 8);
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c))
+                sb.append('_').append(Character.toLowerCase(c));
+            else if (Character.isLetterOrDigit(c))
+                sb.append(c);
+            else
+                sb.append('_');
+        }
+        return sb.toString();
+    }
+}
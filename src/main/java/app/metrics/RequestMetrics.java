@@ -0,0 +1,221 @@
+package app.metrics;
+
+import app.constants.MetricConstants;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.http.HttpStatus;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP request metrics
+ * Start filter should run before all other filters and finish filter after everything else (afterAfter). Requests
+ * are grouped by method and route, route is request path with numeric and UUID segments (ids of async transfers)
+ * replaced by :id. Spark does not expose matched route pattern, so route is derived from path. Requests not
+ * matching any route are reported as unmatched.
+ * Request path is matched against table of known routes in place, route string is built only for path of new route.
+ */
+@Singleton
+public class RequestMetrics {
+    private static final String UNMATCHED = "unmatched";
+    private static final String OTHER = "other";
+    private static final String ID = ":id";
+    private static final int MAX_ROUTES = 200;
+    private static final int UUID_LENGTH = 36;
+    private static final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final Map<String, Map<String, RouteMetrics>> routes = new ConcurrentHashMap<>();
+    private final Map<String, List<RouteMetrics>> routeTable = new ConcurrentHashMap<>();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder routeCount = new LongAdder();
+
+    /**
+     * Metrics of single route
+     */
+    private static class RouteMetrics {
+        private final String route;
+        private final Histogram durationMicros;
+        private final LongAdder[] requestsByStatusClass = new LongAdder[6];
+
+        private RouteMetrics(MetricsRegistry metricsRegistry, String method, String route) {
+            this.route = route;
+            durationMicros = metricsRegistry.histogram(
+                    String.format(MetricConstants.HTTP_REQUEST_DURATION_MICROS, method, route));
+            for (int i = 1; i < requestsByStatusClass.length; i++)
+                requestsByStatusClass[i] = metricsRegistry.counter(
+                        String.format(MetricConstants.HTTP_REQUESTS, method, route, i));
+        }
+    }
+
+    /**
+     * Remember request start time
+     */
+    public final Filter start = (Request req, Response res) -> {
+        startNanos.get()[0] = System.nanoTime();
+        inFlight.incrementAndGet();
+    };
+
+    /**
+     * Record request duration and status
+     */
+    public final Filter finish = (Request req, Response res) -> {
+        long duration = System.nanoTime() - startNanos.get()[0];
+        inFlight.decrementAndGet();
+        int status = res.status();
+        //Not found error of existing route has body set by exception handler
+        RouteMetrics metrics = status == HttpStatus.NOT_FOUND_404 && res.body() == null ?
+                this.getRouteMetrics(req.requestMethod(), UNMATCHED) :
+                this.findRouteMetrics(req.requestMethod(), req.pathInfo());
+        metrics.durationMicros.record(TimeUnit.NANOSECONDS.toMicros(duration));
+        int statusClass = status / 100;
+        if (statusClass > 0 && statusClass < metrics.requestsByStatusClass.length)
+            metrics.requestsByStatusClass[statusClass].increment();
+    };
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Find metrics of route matching request path
+     *
+     * @param method
+     * @param path
+     * @return
+     */
+    private RouteMetrics findRouteMetrics(String method, String path) {
+        List<RouteMetrics> methodTable = routeTable.get(method);
+        if (methodTable != null)
+            for (RouteMetrics metrics : methodTable) {
+                if (matches(metrics.route, path))
+                    return metrics;
+            }
+        return this.getRouteMetrics(method, toRoute(path));
+    }
+
+    private RouteMetrics getRouteMetrics(String method, String route) {
+        Map<String, RouteMetrics> methodRoutes = routes.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        RouteMetrics metrics = methodRoutes.get(route);
+        if (metrics != null)
+            return metrics;
+        //Limit number of routes created from unexpected paths
+        String key = routeCount.sum() < MAX_ROUTES ? route : OTHER;
+        return methodRoutes.computeIfAbsent(key, r -> {
+            routeCount.increment();
+            RouteMetrics created = new RouteMetrics(metricsRegistry, method, r);
+            if (!OTHER.equals(r) && !UNMATCHED.equals(r))
+                routeTable.computeIfAbsent(method, m -> new CopyOnWriteArrayList<>()).add(created);
+            return created;
+        });
+    }
+
+    /**
+     * Check if request path converts to route, without building route string
+     *
+     * @param route
+     * @param path
+     * @return
+     */
+    static boolean matches(String route, String path) {
+        if (path == null || path.isEmpty())
+            return route.equals("/");
+        int r = 0;
+        int i = 0;
+        while (i < path.length()) {
+            int end = path.indexOf('/', i + 1);
+            if (end < 0)
+                end = path.length();
+            if (r >= route.length() || route.charAt(r++) != '/')
+                return false;
+            int segmentStart = path.charAt(i) == '/' ? i + 1 : i;
+            if (isId(path, segmentStart, end)) {
+                if (!route.startsWith(ID, r))
+                    return false;
+                r += ID.length();
+            } else
+                for (int j = segmentStart; j < end; j++) {
+                    char c = path.charAt(j);
+                    if (r >= route.length() ||
+                            route.charAt(r++) != (Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_'))
+                        return false;
+                }
+            if (r < route.length() && route.charAt(r) != '/')
+                return false;
+            i = end;
+        }
+        return r == route.length();
+    }
+
+    /**
+     * Convert request path to route
+     * Numeric and UUID segments are replaced with :id, characters not allowed in metric labels with _
+     *
+     * @param path
+     * @return
+     */
+    static String toRoute(String path) {
+        if (path == null || path.isEmpty())
+            return "/";
+        StringBuilder sb = new StringBuilder(path.length());
+        int i = 0;
+        while (i < path.length()) {
+            int end = path.indexOf('/', i + 1);
+            if (end < 0)
+                end = path.length();
+            sb.append('/');
+            int segmentStart = path.charAt(i) == '/' ? i + 1 : i;
+            if (isId(path, segmentStart, end))
+                sb.append(ID);
+            else
+                for (int j = segmentStart; j < end; j++) {
+                    char c = path.charAt(j);
+                    sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+                }
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check if path segment is numeric id or UUID
+     *
+     * @param path
+     * @param start
+     * @param end
+     * @return
+     */
+    private static boolean isId(String path, int start, int end) {
+        if (start >= end)
+            return false;
+        if (end - start == UUID_LENGTH)
+            return isUuid(path, start);
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (!(Character.isDigit(c) || (c == '-' && i == start && end - start > 1)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String path, int start) {
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = path.charAt(start + i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : Character.digit(c, 16) < 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package app.metrics;
+
+import app.constants.MetricConstants;
+import com.google.inject.Inject;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records duration of service method calls
+ */
+public class ServiceMetricsInterceptor implements MethodInterceptor {
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final Map<Method, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            this.getHistogram(invocation.getMethod()).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+    }
+
+    private Histogram getHistogram(Method method) {
+        Histogram histogram = histograms.get(method);
+        if (histogram == null)
+            histogram = histograms.computeIfAbsent(method, m -> metricsRegistry.histogram(String.format(
+                    MetricConstants.SERVICE_DURATION_MICROS, m.getDeclaringClass().getSimpleName(), m.getName())));
+        return histogram;
+    }
+}
@@ -1,5 +1,6 @@
 package app.models;
 
+import app.utils.MoneyUtils;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Data;
 
@@ -22,9 +23,7 @@ public class Account {
     private Timestamp created;
 
     public void setBalance(BigDecimal balance) {
-        if (balance != null)
-            this.balance = balance.setScale(2, BigDecimal.ROUND_HALF_DOWN);
-        this.balance = balance;
+        this.balance = balance == null ? null : MoneyUtils.round(balance);
     }
 
     @Override
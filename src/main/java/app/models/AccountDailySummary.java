@@ -0,0 +1,30 @@
+package app.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Account daily summary model
+ * Number and sum of account debits and credits made during one day
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountDailySummary {
+    private String date;
+    private long debitCount;
+    private BigDecimal debitSum = BigDecimal.ZERO;
+    private long creditCount;
+    private BigDecimal creditSum = BigDecimal.ZERO;
+
+    public void addDebit(BigDecimal amount) {
+        debitCount++;
+        debitSum = debitSum.add(amount);
+    }
+
+    public void addCredit(BigDecimal amount) {
+        creditCount++;
+        creditSum = creditSum.add(amount);
+    }
+}
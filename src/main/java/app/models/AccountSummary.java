@@ -0,0 +1,33 @@
+package app.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Account summary model
+ * Totals of account debits and credits within date range and summaries of days with transactions
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountSummary {
+    private Long accountId;
+    private String from;
+    private String to;
+    private long debitCount;
+    private BigDecimal debitSum = BigDecimal.ZERO;
+    private long creditCount;
+    private BigDecimal creditSum = BigDecimal.ZERO;
+    private List<AccountDailySummary> days = new ArrayList<>();
+
+    public void addDay(AccountDailySummary day) {
+        days.add(day);
+        debitCount += day.getDebitCount();
+        debitSum = debitSum.add(day.getDebitSum());
+        creditCount += day.getCreditCount();
+        creditSum = creditSum.add(day.getCreditSum());
+    }
+}
@@ -0,0 +1,33 @@
+package app.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Asynchronous transfer
+ * Holds state of transfer submitted for background processing and created transaction or error once it is processed
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AsyncTransfer {
+    /**
+     * Asynchronous transfer state
+     */
+    public enum Status {
+        PENDING, COMPLETED, FAILED
+    }
+
+    private String id;
+    private Status status;
+    private Transaction transaction;
+    private String error;
+
+    public AsyncTransfer(String id, Status status, Transaction transaction, String error) {
+        this.id = id;
+        this.status = status;
+        this.transaction = transaction;
+        this.error = error;
+    }
+}
@@ -0,0 +1,20 @@
+package app.models;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Import error
+ * Error of single record, line is counted from 1 (CSV header is line 1)
+ */
+@Data
+@NoArgsConstructor
+public class ImportError {
+    private int line;
+    private String error;
+
+    public ImportError(int line, String error) {
+        this.line = line;
+        this.error = error;
+    }
+}
@@ -0,0 +1,49 @@
+package app.models;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Import result
+ * Counts of imported and failed records and errors of failed records (line number and error message)
+ */
+@Data
+public class ImportResult {
+    private long imported;
+    private long failed;
+    private List<ImportError> errors = new ArrayList<>();
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    /**
+     * Count failed record
+     * Errors are kept ordered by line and only maxErrors errors with the lowest line numbers are listed, further
+     * failures are only counted. Failures of a batch are reported after later lines were read, so they may still
+     * replace listed errors.
+     *
+     * @param line
+     * @param error
+     * @param maxErrors
+     */
+    public void addFailed(int line, String error, int maxErrors) {
+        failed++;
+        int low = 0;
+        int high = errors.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (errors.get(middle).getLine() <= line)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        if (low >= maxErrors)
+            return;
+        errors.add(low, new ImportError(line, error));
+        if (errors.size() > maxErrors)
+            errors.remove(errors.size() - 1);
+    }
+}
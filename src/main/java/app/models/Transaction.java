@@ -1,7 +1,11 @@
 package app.models;
 
+import app.utils.MoneyUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
@@ -17,15 +21,30 @@ public class Transaction {
     private Long id;
     private String title;
     private BigDecimal amount;
+    /**
+     * Amount in cents, set together with amount and used for balance arithmetic
+     */
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private long amountCents;
     private Long senderAccountId;
     private Long receiverAccountId;
     private Timestamp updated;
     private Timestamp created;
+    /**
+     * Sequence number of journal record, set only when journal is enabled
+     */
+    @JsonIgnore
+    private Long journalSeq;
+    /**
+     * Idempotency key of client request, unique among all transactions
+     */
+    @JsonIgnore
+    private String idempotencyKey;
 
     public void setAmount(BigDecimal amount) {
-        if (amount != null)
-            this.amount = amount.setScale(2, BigDecimal.ROUND_HALF_DOWN);
-        this.amount = amount;
+        this.amount = amount == null ? null : MoneyUtils.round(amount);
+        this.amountCents = amount == null ? 0 : MoneyUtils.toCents(this.amount);
     }
 
     @Override
@@ -0,0 +1,39 @@
+package app.models;
+
+import app.exceptions.PaymentAPIException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Transaction batch item result
+ * Holds created transaction or error of single batch transaction
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionBatchItem {
+    private Integer index;
+    private Integer status;
+    private Transaction transaction;
+    private String error;
+    //Exception of failed transaction, kept on server side only
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PaymentAPIException exception;
+
+    public TransactionBatchItem(Integer status, Transaction transaction, String error) {
+        this.status = status;
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public TransactionBatchItem(PaymentAPIException exception) {
+        this(exception.getStatus(), null, exception.getMessage());
+        this.exception = exception;
+    }
+}
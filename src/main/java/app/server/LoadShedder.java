@@ -0,0 +1,59 @@
+package app.server;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.constants.RouteConstants;
+import app.db.DataSource;
+import app.metrics.MetricsRegistry;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+import static app.constants.ErrorMessages.ERROR_SERVICE_UNAVAILABLE;
+import static spark.Spark.halt;
+
+/**
+ * Filter rejecting requests with 503 when server is saturated
+ * Request is rejected when it waited in server queue longer than serverMaxQueueWaitMillis or when there are
+ * already as many threads waiting for DB connection as there are connections in pool. Rejected request does not
+ * touch DB, so overloaded server answers fast instead of timing out. Health and metrics requests are never rejected.
+ * With virtual threads waiting for DB connection is expected, such requests fail after dbConnectionTimeoutMillis.
+ * Request which passed the filter and then timed out waiting for DB connection gets 503 as well.
+ */
+@Singleton
+public class LoadShedder implements Filter {
+    private static Logger logger = LoggerFactory.getLogger(LoadShedder.class);
+
+    @Inject
+    private ServerThreadPool threadPool;
+    @Inject
+    private DataSource dataSource;
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final long maxQueueWaitMillis = ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_SERVER_MAX_QUEUE_WAIT_MILLIS, ConfigConstants.DEFAULT_SERVER_MAX_QUEUE_WAIT_MILLIS);
+
+    @Override
+    public void handle(Request req, Response res) {
+        //Monitoring endpoints are always served
+        if (RouteConstants.Path.HEALTH.equals(req.pathInfo()) || RouteConstants.Path.METRICS.equals(req.pathInfo()))
+            return;
+        long queueWait = ServerThreadPool.getCurrentQueueWaitMillis();
+        int dbWaiters = dataSource.getThreadsAwaitingConnection();
+        boolean dbSaturated = !threadPool.isVirtual() && dbWaiters >= dataSource.getMaxPoolSize();
+        if (queueWait <= maxQueueWaitMillis && !dbSaturated)
+            return;
+        logger.debug("Request rejected, queue wait {}ms, DB waiters {}", queueWait, dbWaiters);
+        metricsRegistry.counter(MetricConstants.SERVER_SHED_REQUESTS).increment();
+        res.type("application/json");
+        res.header(RouteConstants.Header.RETRY_AFTER, "1");
+        halt(HttpStatus.SERVICE_UNAVAILABLE_503, String.format("{\"error\":\"%s\"}", ERROR_SERVICE_UNAVAILABLE));
+    }
+}
@@ -0,0 +1,134 @@
+package app.server;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.metrics.Histogram;
+import app.metrics.MetricsRegistry;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jetty thread pool of Spark server
+ * Pool sizes are read from system properties, queue is bounded, so when it is full Jetty rejects new connections
+ * instead of queueing them for ever. Time every job waited in queue is recorded and is available to the thread
+ * running the job, so request can be rejected when it waited too long.
+ * With system property serverVirtualThreads=true (JDK 21 or newer) every job runs on its own virtual thread, so
+ * number of in flight requests is not limited by pool size and DB connection pool becomes the concurrency limit.
+ * On older JDK platform threads are used.
+ */
+@Singleton
+public class ServerThreadPool extends QueuedThreadPool {
+    private static Logger logger = LoggerFactory.getLogger(ServerThreadPool.class);
+    private static final ThreadLocal<Long> currentQueueWaitNanos = ThreadLocal.withInitial(() -> 0L);
+
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private volatile Histogram queueWaitMicros;
+    private final Executor virtualExecutor;
+
+    public ServerThreadPool() {
+        super(getConfiguredMaxThreads(),
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_SERVER_MIN_THREADS,
+                        ConfigConstants.DEFAULT_SERVER_MIN_THREADS),
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_SERVER_IDLE_TIMEOUT_MILLIS,
+                        ConfigConstants.DEFAULT_SERVER_IDLE_TIMEOUT_MILLIS),
+                createQueue(ConfigUtils.getIntProperty(ConfigConstants.VAR_SERVER_QUEUE_SIZE,
+                        ConfigConstants.DEFAULT_SERVER_QUEUE_SIZE)));
+        setName("server");
+        this.virtualExecutor = ConfigUtils.getBooleanProperty(ConfigConstants.VAR_SERVER_VIRTUAL_THREADS, false) ?
+                createVirtualExecutor() : null;
+    }
+
+    /**
+     * Get configured maximum number of server threads
+     *
+     * @return
+     */
+    public static int getConfiguredMaxThreads() {
+        return Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_SERVER_MAX_THREADS,
+                ConfigConstants.DEFAULT_SERVER_MAX_THREADS));
+    }
+
+    /**
+     * Check if jobs run on virtual threads
+     *
+     * @return
+     */
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * Get time job run by current thread waited in queue
+     *
+     * @return 0 if current thread is not a pool thread or job was not queued
+     */
+    public static long getCurrentQueueWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(currentQueueWaitNanos.get());
+    }
+
+    /**
+     * Get histogram of queue wait of all jobs
+     *
+     * @return
+     */
+    public Histogram getQueueWaitMicros() {
+        if (queueWaitMicros == null)
+            queueWaitMicros = metricsRegistry.histogram(MetricConstants.SERVER_QUEUE_WAIT_MICROS);
+        return queueWaitMicros;
+    }
+
+    @Override
+    public void execute(Runnable job) {
+        long queued = System.nanoTime();
+        Runnable task = () -> {
+            long wait = System.nanoTime() - queued;
+            this.getQueueWaitMicros().record(TimeUnit.NANOSECONDS.toMicros(wait));
+            currentQueueWaitNanos.set(wait);
+            try {
+                job.run();
+            } finally {
+                currentQueueWaitNanos.set(0L);
+            }
+        };
+        if (virtualExecutor != null)
+            virtualExecutor.execute(task);
+        else
+            super.execute(task);
+    }
+
+    /**
+     * Create executor starting virtual thread for every task
+     * Project is compiled for Java 8, so executor is looked up with reflection
+     *
+     * @return executor or null if JDK does not support virtual threads
+     */
+    private static Executor createVirtualExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            logger.info("Server jobs will run on virtual threads");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by JDK {}. Will use platform threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    private static BlockingArrayQueue<Runnable> createQueue(int size) {
+        int maxCapacity = Math.max(1, size);
+        int capacity = Math.min(maxCapacity, 64);
+        return new BlockingArrayQueue<>(capacity, capacity, maxCapacity);
+    }
+}
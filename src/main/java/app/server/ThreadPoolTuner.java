@@ -0,0 +1,125 @@
+package app.server;
+
+import app.constants.ConfigConstants;
+import app.db.DataSource;
+import app.metrics.Histogram;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive sizing of server thread pool
+ * Every second mean queue wait of last second and number of threads waiting for DB connection are checked:
+ * - threads wait for DB: more server threads would only wait too, pool shrinks (not below DB pool size)
+ * - jobs wait in queue while all threads are busy: pool grows up to serverAdaptiveMaxThreads
+ * - jobs do not wait: pool returns to configured size
+ * Pool never grows beyond DB pool size plus Jetty selector and acceptor threads, as further threads could only wait
+ * for DB connection.
+ */
+@Singleton
+public class ThreadPoolTuner {
+    private static final long TARGET_QUEUE_WAIT_MICROS = 5000;
+    private static final long INTERVAL_MILLIS = 1000;
+    private static Logger logger = LoggerFactory.getLogger(ThreadPoolTuner.class);
+
+    @Inject
+    private ServerThreadPool threadPool;
+    @Inject
+    private DataSource dataSource;
+
+    private final int configuredMaxThreads = ServerThreadPool.getConfiguredMaxThreads();
+    private final int adaptiveMaxThreads = Math.max(configuredMaxThreads, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_SERVER_ADAPTIVE_MAX_THREADS, 4 * configuredMaxThreads));
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private ScheduledExecutorService scheduler;
+    private long lastCount;
+    private long lastSum;
+
+    /**
+     * Start tuning if adaptive mode is enabled with system property serverAdaptive
+     */
+    public synchronized void start() {
+        if (!ConfigUtils.getBooleanProperty(ConfigConstants.VAR_SERVER_ADAPTIVE, false) || scheduler != null)
+            return;
+        if (threadPool.isVirtual()) {
+            logger.warn("Adaptive server thread pool is not used with virtual threads");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "server-pool-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tune, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        logger.info("Adaptive server thread pool enabled, between {} and {} threads", this.getMinMaxThreads(),
+                this.getMaxMaxThreads());
+    }
+
+    /**
+     * Stop tuning
+     */
+    public synchronized void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Resize pool according to measurements of last interval
+     */
+    void tune() {
+        try {
+            Histogram queueWait = threadPool.getQueueWaitMicros();
+            long count = queueWait.getCount();
+            long sum = queueWait.getSum();
+            long meanWait = count > lastCount ? (sum - lastSum) / (count - lastCount) : 0;
+            lastCount = count;
+            lastSum = sum;
+
+            int maxThreads = threadPool.getMaxThreads();
+            int newMaxThreads = maxThreads;
+            if (dataSource.getThreadsAwaitingConnection() > 0)
+                newMaxThreads = Math.max(this.getMinMaxThreads(), maxThreads - Math.max(1, maxThreads / 8));
+            else if (meanWait > TARGET_QUEUE_WAIT_MICROS && threadPool.getIdleThreads() == 0)
+                newMaxThreads = Math.max(maxThreads, Math.min(this.getMaxMaxThreads(),
+                        maxThreads + Math.max(1, maxThreads / 4)));
+            else if (meanWait < TARGET_QUEUE_WAIT_MICROS / 10 && maxThreads > configuredMaxThreads)
+                newMaxThreads = Math.max(configuredMaxThreads, maxThreads - Math.max(1, maxThreads / 8));
+
+            if (newMaxThreads != maxThreads) {
+                logger.info("Server max threads {} -> {}, mean queue wait {}us", maxThreads, newMaxThreads,
+                        meanWait);
+                threadPool.setMaxThreads(newMaxThreads);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error while tuning server thread pool", e);
+        }
+    }
+
+    /**
+     * Lowest allowed max threads
+     * Pool should be able to use all DB connections, Jetty selectors and acceptors also run in the pool
+     *
+     * @return
+     */
+    private int getMinMaxThreads() {
+        int required = dataSource.getMaxPoolSize() + processors;
+        return Math.max(threadPool.getMinThreads(), Math.min(required, configuredMaxThreads));
+    }
+
+    /**
+     * Highest allowed max threads
+     * Threads beyond DB pool size and Jetty threads could only wait for DB connection
+     *
+     * @return
+     */
+    private int getMaxMaxThreads() {
+        return Math.max(configuredMaxThreads, Math.min(adaptiveMaxThreads, dataSource.getMaxPoolSize() + processors));
+    }
+}
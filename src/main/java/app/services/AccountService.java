@@ -1,8 +1,14 @@
 package app.services;
 
+import app.cache.EntityCache;
+import app.constants.ConfigConstants;
 import app.db.DataSource;
 import app.exceptions.DataBaseException;
+import app.ledger.LedgerEngine;
+import app.metrics.MetricsRegistry;
 import app.models.Account;
+import app.utils.ConfigUtils;
+import app.utils.PagingUtils;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -10,8 +16,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Account model service
@@ -21,17 +29,46 @@ import java.util.List;
 public class AccountService {
     @Inject
     private DataSource dataSource;
+    @Inject
+    private LedgerEngine ledgerEngine;
+    private final EntityCache<Account> cache;
+
+    @Inject
+    public AccountService(MetricsRegistry metricsRegistry) {
+        this.cache = new EntityCache<>("account",
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_ACCOUNT_CACHE_SIZE,
+                        ConfigConstants.DEFAULT_ACCOUNT_CACHE_SIZE),
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_CACHE_TTL_SECONDS,
+                        ConfigConstants.DEFAULT_CACHE_TTL_SECONDS),
+                metricsRegistry);
+    }
+
+    /**
+     * Stream all accounts
+     * Accounts are read page by page in id order and passed to consumer one by one, so they are not collected in
+     * memory and DB connection is not held while consumer writes them
+     *
+     * @param consumer
+     * @throws DataBaseException
+     */
+    public void streamAccounts(Consumer<Account> consumer) throws DataBaseException {
+        PagingUtils.forEachRow(this::getAccountsPage, Account::getId, consumer);
+    }
 
     /**
-     * Get all accounts from DB
+     * Get page of accounts ordered by id
      *
+     * @param afterId id of last account of previous page, 0 for first page
+     * @param limit
      * @return
      * @throws DataBaseException
      */
-    public List<Account> getAccounts() throws DataBaseException {
-        String sql = "SELECT * FROM account";
+    public List<Account> getAccountsPage(long afterId, int limit) throws DataBaseException {
+        String sql = "SELECT * FROM account WHERE id > ? ORDER BY id LIMIT ?";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, afterId);
+            pst.setInt(2, limit);
             ResultSet rs = pst.executeQuery();
 
             List<Account> result = new ArrayList<>();
@@ -40,7 +77,7 @@ public class AccountService {
             }
             return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
     }
 
@@ -64,18 +101,44 @@ public class AccountService {
             }
             return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Get Account by id
+     * Account is read from cache, returned object is shared and must not be modified. When ledger engine holds
+     * balances in memory, balance and update time are taken from ledger engine.
      *
      * @param id
      * @return
      * @throws DataBaseException
      */
     public Account getAccount(Long id) throws DataBaseException {
+        Account account = cache.get(id, this::loadAccount);
+        return account == null ? null : ledgerEngine.withBalance(account);
+    }
+
+    /**
+     * Invalidate cached Account after its balance was changed in DB
+     * Not needed when ledger engine holds balances, cached Account is then used only for fields transfers do not
+     * change
+     *
+     * @param id
+     */
+    public void invalidateBalance(Long id) {
+        if (!ledgerEngine.holdsBalances())
+            cache.invalidate(id);
+    }
+
+    /**
+     * Load Account from DB
+     *
+     * @param id
+     * @return
+     * @throws DataBaseException
+     */
+    private Account loadAccount(Long id) throws DataBaseException {
         String sql = "SELECT * FROM account WHERE id = ?";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
@@ -84,61 +147,118 @@ public class AccountService {
             if (rs.next())
                 return createAccountFromResultSet(rs);
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
         return null;
     }
 
     /**
      * Create new Account
+     * Timestamps are set by application, so created Account is returned without reading it back from DB
      *
      * @param account
      * @return
      * @throws DataBaseException
      */
     public Account createAccount(Account account) throws DataBaseException {
-        String sql = "INSERT INTO account (customer_id, title, balance, updated, created) VALUES (?, ?, ?, NOW(), NOW" +
-                "())";
+        String sql = "INSERT INTO account (customer_id, title, balance, updated, created) VALUES (?, ?, ?, ?, ?)";
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
             pst.setLong(1, account.getCustomerId());
             pst.setString(2, account.getTitle());
             pst.setBigDecimal(3, account.getBalance());
+            pst.setTimestamp(4, timestamp);
+            pst.setTimestamp(5, timestamp);
             int affectedRows = pst.executeUpdate();
             if (affectedRows == 0)
                 throw new DataBaseException("Could not create account. No rows affected");
 
             try (ResultSet generatedKeys = pst.getGeneratedKeys()) {
-                if (generatedKeys.next())
-                    return this.getAccount(generatedKeys.getLong(1));
-                else
+                if (!generatedKeys.next())
                     throw new DataBaseException("Could not obtain newly created account ID");
+                Account result = new Account();
+                result.setId(generatedKeys.getLong(1));
+                result.setCustomerId(account.getCustomerId());
+                result.setTitle(account.getTitle());
+                result.setBalance(account.getBalance());
+                result.setUpdated(timestamp);
+                result.setCreated(timestamp);
+                return result;
             }
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Create Accounts with single JDBC batch in single DB transaction
+     * Created ids are not read back, so Accounts are not changed
+     *
+     * @param accounts
+     * @throws DataBaseException
+     */
+    public void createAccounts(List<Account> accounts) throws DataBaseException {
+        String sql = "INSERT INTO account (customer_id, title, balance, updated, created) VALUES (?, ?, ?, ?, ?)";
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            con.setAutoCommit(false);
+            try {
+                for (Account account : accounts) {
+                    pst.setLong(1, account.getCustomerId());
+                    pst.setString(2, account.getTitle());
+                    pst.setBigDecimal(3, account.getBalance());
+                    pst.setTimestamp(4, timestamp);
+                    pst.setTimestamp(5, timestamp);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Update existing account
+     * Only title can be changed. When ledger engine holds balances, updated Account is built from existing one with
+     * current balance taken from ledger engine, otherwise it is read back from DB.
      *
+     * @param existing account read before update
      * @param account
      * @return
      * @throws DataBaseException
      */
-    public Account updateAccount(Account account) throws DataBaseException {
-        String sql = "UPDATE account SET title = ?, updated = NOW() WHERE id = ?";
+    public Account updateAccount(Account existing, Account account) throws DataBaseException {
+        String sql = "UPDATE account SET title = ?, updated = ? WHERE id = ?";
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
             pst.setString(1, account.getTitle());
-            pst.setLong(2, account.getId());
+            pst.setTimestamp(2, timestamp);
+            pst.setLong(3, account.getId());
             int affectedRows = pst.executeUpdate();
             if (affectedRows == 0)
                 throw new DataBaseException("Could not update account. No rows affected");
-            return this.getAccount(account.getId());
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
+        cache.invalidate(account.getId());
+        if (!ledgerEngine.holdsBalances())
+            return this.getAccount(account.getId());
+
+        Account result = new Account();
+        result.setId(existing.getId());
+        result.setCustomerId(existing.getCustomerId());
+        result.setTitle(account.getTitle());
+        result.setUpdated(timestamp);
+        result.setCreated(existing.getCreated());
+        return ledgerEngine.withBalance(result);
     }
 
     /**
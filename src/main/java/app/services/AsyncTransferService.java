@@ -0,0 +1,217 @@
+package app.services;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.db.RequestConnection;
+import app.exceptions.PaymentAPIException;
+import app.exceptions.ServiceUnavailableException;
+import app.metrics.Histogram;
+import app.metrics.MetricsRegistry;
+import app.models.AsyncTransfer;
+import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.server.ServerThreadPool;
+import app.utils.ConfigUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static app.constants.ErrorMessages.ERROR_TOO_MANY_TRANSFER_WAITERS;
+
+/**
+ * Asynchronous transfers
+ * Submitted transfers are put into bounded queue and executed by worker threads. Each worker takes everything waiting
+ * in queue (up to transactionBatchCommitSize transfers) and executes it as one partial batch, so transfers share DB
+ * commits and failure of one transfer does not affect others. Transfers are not accepted while queue is full.
+ * State of processed transfers is kept for asyncTransferTtlSeconds, at most asyncTransferMaxRetained transfers
+ * besides queued ones. Every waiting request holds server thread, so number of waiting requests is limited by
+ * asyncTransferMaxWaiters.
+ */
+@Singleton
+public class AsyncTransferService {
+    private static Logger logger = LoggerFactory.getLogger(AsyncTransferService.class);
+
+    private final TransactionService transactionService;
+    private final BlockingQueue<PendingTransfer> queue;
+    private final Cache<String, PendingTransfer> transfers;
+    private final int maxWaiters = Math.max(0, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_ASYNC_TRANSFER_MAX_WAITERS, ServerThreadPool.getConfiguredMaxThreads() / 4));
+    private final Semaphore waiters = new Semaphore(maxWaiters);
+    private final int batchSize = Math.max(1, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_TRANSACTION_BATCH_COMMIT_SIZE, ConfigConstants.DEFAULT_TRANSACTION_BATCH_COMMIT_SIZE));
+    private final Histogram durationMicros;
+    private final Histogram batchSizes;
+    private final LongAdder rejected;
+
+    @Inject
+    public AsyncTransferService(TransactionService transactionService, MetricsRegistry metricsRegistry) {
+        this.transactionService = transactionService;
+        int queueSize = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_ASYNC_TRANSFER_QUEUE_SIZE,
+                ConfigConstants.DEFAULT_ASYNC_TRANSFER_QUEUE_SIZE));
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        //Queued transfers are the newest entries, size limit evicts oldest processed ones first
+        this.transfers = CacheBuilder.newBuilder()
+                .maximumSize(queueSize + Math.max(0, ConfigUtils.getIntProperty(
+                        ConfigConstants.VAR_ASYNC_TRANSFER_MAX_RETAINED,
+                        ConfigConstants.DEFAULT_ASYNC_TRANSFER_MAX_RETAINED)))
+                .expireAfterWrite(Math.max(1, ConfigUtils.getIntProperty(
+                        ConfigConstants.VAR_ASYNC_TRANSFER_TTL_SECONDS,
+                        ConfigConstants.DEFAULT_ASYNC_TRANSFER_TTL_SECONDS)), TimeUnit.SECONDS)
+                .build();
+        this.durationMicros = metricsRegistry.histogram(MetricConstants.ASYNC_TRANSFER_DURATION_MICROS);
+        this.batchSizes = metricsRegistry.histogram(MetricConstants.ASYNC_TRANSFER_BATCH_SIZE);
+        this.rejected = metricsRegistry.counter(MetricConstants.ASYNC_TRANSFERS_REJECTED);
+        metricsRegistry.gauge(MetricConstants.ASYNC_TRANSFERS_QUEUED, queue::size);
+        metricsRegistry.gauge(MetricConstants.ASYNC_TRANSFER_WAITERS, () -> maxWaiters - waiters.availablePermits());
+
+        int workers = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_ASYNC_TRANSFER_WORKERS,
+                ConfigConstants.DEFAULT_ASYNC_TRANSFER_WORKERS));
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::processLoop, "async-transfer-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Submit validated transfer for background processing
+     *
+     * @param transaction
+     * @return pending transfer or null if queue is full
+     */
+    public AsyncTransfer submit(Transaction transaction) {
+        PendingTransfer pending = new PendingTransfer(UUID.randomUUID().toString(), transaction);
+        transfers.put(pending.id, pending);
+        if (!queue.offer(pending)) {
+            transfers.invalidate(pending.id);
+            rejected.increment();
+            return null;
+        }
+        return new AsyncTransfer(pending.id, AsyncTransfer.Status.PENDING, null, null);
+    }
+
+    /**
+     * Get transfer state, waiting for processing if it is still pending
+     *
+     * @param id
+     * @param waitMillis maximum time to wait for pending transfer, 0 to return immediately
+     * @return transfer or null if transfer is unknown or expired
+     * @throws ServiceUnavailableException when transfer is pending and too many requests wait already
+     */
+    public AsyncTransfer getTransfer(String id, long waitMillis) throws ServiceUnavailableException {
+        PendingTransfer pending = transfers.getIfPresent(id);
+        if (pending == null)
+            return null;
+        if (waitMillis == 0 || pending.result.isDone())
+            return this.getState(pending);
+        if (!waiters.tryAcquire())
+            throw new ServiceUnavailableException(ERROR_TOO_MANY_TRANSFER_WAITERS);
+        try {
+            RequestConnection.release();
+            return pending.result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return pending.toPendingState();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return pending.toPendingState();
+        } catch (ExecutionException e) {
+            return new AsyncTransfer(id, AsyncTransfer.Status.FAILED, null, e.getCause().getMessage());
+        } finally {
+            waiters.release();
+        }
+    }
+
+    /**
+     * Get current transfer state without waiting
+     *
+     * @param pending
+     * @return
+     */
+    private AsyncTransfer getState(PendingTransfer pending) {
+        return pending.result.getNow(pending.toPendingState());
+    }
+
+    /**
+     * Worker thread loop
+     */
+    private void processLoop() {
+        List<PendingTransfer> group = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                group.add(queue.take());
+                queue.drainTo(group, batchSize - 1);
+                this.process(group);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Asynchronous transfer processing failed", e);
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Execute group of transfers as one partial batch and complete their results
+     *
+     * @param group
+     */
+    private void process(List<PendingTransfer> group) {
+        List<Transaction> transactions = new ArrayList<>(group.size());
+        group.forEach(p -> transactions.add(p.transaction));
+        batchSizes.record(group.size());
+        try {
+            List<TransactionBatchItem> items = transactionService.createTransactions(transactions, false);
+            for (int i = 0; i < group.size(); i++) {
+                TransactionBatchItem item = items.get(i);
+                boolean created = item.getStatus() == HttpStatus.CREATED_201;
+                group.get(i).complete(new AsyncTransfer(group.get(i).id,
+                        created ? AsyncTransfer.Status.COMPLETED : AsyncTransfer.Status.FAILED,
+                        item.getTransaction(), item.getError()));
+            }
+        } catch (PaymentAPIException | RuntimeException e) {
+            group.forEach(p -> p.complete(new AsyncTransfer(p.id, AsyncTransfer.Status.FAILED, null,
+                    e.getMessage())));
+        }
+    }
+
+    /**
+     * Transfer waiting in queue
+     */
+    private class PendingTransfer {
+        private final String id;
+        private final Transaction transaction;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<AsyncTransfer> result = new CompletableFuture<>();
+
+        private PendingTransfer(String id, Transaction transaction) {
+            this.id = id;
+            this.transaction = transaction;
+        }
+
+        private void complete(AsyncTransfer transfer) {
+            durationMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - submittedNanos));
+            result.complete(transfer);
+        }
+
+        private AsyncTransfer toPendingState() {
+            return new AsyncTransfer(id, AsyncTransfer.Status.PENDING, null, null);
+        }
+    }
+}
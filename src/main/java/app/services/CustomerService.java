@@ -1,8 +1,13 @@
 package app.services;
 
+import app.cache.EntityCache;
+import app.constants.ConfigConstants;
 import app.db.DataSource;
 import app.exceptions.DataBaseException;
+import app.metrics.MetricsRegistry;
 import app.models.Customer;
+import app.utils.ConfigUtils;
+import app.utils.PagingUtils;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -10,24 +15,57 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Singleton
 public class CustomerService {
     @Inject
     private DataSource dataSource;
+    private final EntityCache<Customer> cache;
+
+    @Inject
+    public CustomerService(MetricsRegistry metricsRegistry) {
+        this.cache = new EntityCache<>("customer",
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_CUSTOMER_CACHE_SIZE,
+                        ConfigConstants.DEFAULT_CUSTOMER_CACHE_SIZE),
+                ConfigUtils.getIntProperty(ConfigConstants.VAR_CACHE_TTL_SECONDS,
+                        ConfigConstants.DEFAULT_CACHE_TTL_SECONDS),
+                metricsRegistry);
+    }
 
     /**
-     * Get all customers
+     * Stream all customers
+     * Customers are read page by page in id order and passed to consumer one by one, so they are not collected in
+     * memory and DB connection is not held while consumer writes them
      *
+     * @param consumer
+     * @throws DataBaseException
+     */
+    public void streamCustomers(Consumer<Customer> consumer) throws DataBaseException {
+        PagingUtils.forEachRow(this::getCustomersPage, Customer::getId, consumer);
+    }
+
+    /**
+     * Get page of customers ordered by id
+     *
+     * @param afterId id of last customer of previous page, 0 for first page
+     * @param limit
      * @return
      * @throws DataBaseException
      */
-    public List<Customer> getCustomers() throws DataBaseException {
-        String sql = "SELECT * FROM customer";
+    public List<Customer> getCustomersPage(long afterId, int limit) throws DataBaseException {
+        String sql = "SELECT * FROM customer WHERE id > ? ORDER BY id LIMIT ?";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, afterId);
+            pst.setInt(2, limit);
             ResultSet rs = pst.executeQuery();
 
             List<Customer> result = new ArrayList<>();
@@ -36,18 +74,39 @@ public class CustomerService {
             }
             return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Get customer by id
+     * Customer is read from cache, returned object is shared and must not be modified
      *
      * @param id
      * @return
      * @throws DataBaseException
      */
     public Customer getCustomer(Long id) throws DataBaseException {
+        return cache.get(id, this::loadCustomer);
+    }
+
+    /**
+     * Invalidate cached customer after it was changed in DB
+     *
+     * @param id
+     */
+    public void invalidateCustomer(Long id) {
+        cache.invalidate(id);
+    }
+
+    /**
+     * Load customer from DB
+     *
+     * @param id
+     * @return
+     * @throws DataBaseException
+     */
+    private Customer loadCustomer(Long id) throws DataBaseException {
         String sql = "SELECT * FROM customer WHERE id = ?";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
@@ -56,61 +115,139 @@ public class CustomerService {
             if (rs.next())
                 return createCustomerFromResultSet(rs);
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
         return null;
     }
 
     /**
      * Create a new customer
+     * Timestamps are set by application, so created customer is returned without reading it back from DB
      *
      * @param customer
      * @return
      * @throws DataBaseException
      */
     public Customer createCustomer(Customer customer) throws DataBaseException {
-        String sql = "INSERT INTO customer (first_name, last_name, updated, created) VALUES (?, ?, NOW(), NOW())";
+        String sql = "INSERT INTO customer (first_name, last_name, updated, created) VALUES (?, ?, ?, ?)";
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
             pst.setString(1, customer.getFirstName());
             pst.setString(2, customer.getLastName());
+            pst.setTimestamp(3, timestamp);
+            pst.setTimestamp(4, timestamp);
             int affectedRows = pst.executeUpdate();
             if (affectedRows == 0) {
                 throw new DataBaseException("Could not create user. No rows affected");
             }
 
             try (ResultSet generatedKeys = pst.getGeneratedKeys()) {
-                if (generatedKeys.next())
-                    return this.getCustomer(generatedKeys.getLong(1));
-                else
+                if (!generatedKeys.next())
                     throw new DataBaseException("Could not obtain newly created user ID");
+                Customer result = new Customer(customer.getFirstName(), customer.getLastName());
+                result.setId(generatedKeys.getLong(1));
+                result.setUpdated(timestamp);
+                result.setCreated(timestamp);
+                return result;
             }
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Create customers with single JDBC batch in single DB transaction
+     * Created ids are not read back, so customers are not changed
+     *
+     * @param customers
+     * @throws DataBaseException
+     */
+    public void createCustomers(List<Customer> customers) throws DataBaseException {
+        String sql = "INSERT INTO customer (first_name, last_name, updated, created) VALUES (?, ?, ?, ?)";
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            con.setAutoCommit(false);
+            try {
+                for (Customer customer : customers) {
+                    pst.setString(1, customer.getFirstName());
+                    pst.setString(2, customer.getLastName());
+                    pst.setTimestamp(3, timestamp);
+                    pst.setTimestamp(4, timestamp);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Get ids of existing customers
+     *
+     * @param ids
+     * @return ids from given ones which belong to existing customers
+     * @throws DataBaseException
+     */
+    public Set<Long> getExistingCustomerIds(Collection<Long> ids) throws DataBaseException {
+        Set<Long> result = new HashSet<>();
+        if (ids.isEmpty())
+            return result;
+        String sql = String.format("SELECT id FROM customer WHERE id IN (%s)",
+                String.join(", ", Collections.nCopies(ids.size(), "?")));
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            int i = 1;
+            for (Long id : ids)
+                pst.setLong(i++, id);
+            ResultSet rs = pst.executeQuery();
+            while (rs.next())
+                result.add(rs.getLong("id"));
+            return result;
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Update customer
+     * Updated customer is built from cached one instead of reading it back from DB
      *
      * @param customer
      * @return
      * @throws DataBaseException
      */
     public Customer updateCustomer(Customer customer) throws DataBaseException {
-        String sql = "UPDATE customer SET first_name = ?, last_name = ?, updated = NOW() WHERE id = ?";
+        String sql = "UPDATE customer SET first_name = ?, last_name = ?, updated = ? WHERE id = ?";
+        Customer existing = this.getCustomer(customer.getId());
+        if (existing == null)
+            throw new DataBaseException("Could not update user. No rows affected");
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
             pst.setString(1, customer.getFirstName());
             pst.setString(2, customer.getLastName());
-            pst.setLong(3, customer.getId());
+            pst.setTimestamp(3, timestamp);
+            pst.setLong(4, customer.getId());
             int affectedRows = pst.executeUpdate();
             if (affectedRows == 0) {
                 throw new DataBaseException("Could not update user. No rows affected");
             }
-            return this.getCustomer(customer.getId());
+            cache.invalidate(customer.getId());
+
+            Customer result = new Customer(customer.getFirstName(), customer.getLastName());
+            result.setId(customer.getId());
+            result.setUpdated(timestamp);
+            result.setCreated(existing.getCreated());
+            return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
         }
     }
 
@@ -0,0 +1,182 @@
+package app.services;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.constants.ModelConstants;
+import app.exceptions.DataBaseException;
+import app.exceptions.InvalidRequestData;
+import app.metrics.MetricsRegistry;
+import app.models.Account;
+import app.models.Customer;
+import app.models.ImportResult;
+import app.models.validators.AccountValidator;
+import app.models.validators.CustomerValidator;
+import app.transformers.RecordReader;
+import app.utils.ConfigUtils;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_CUSTOMER;
+import static app.constants.ErrorMessages.ERROR_EMPTY_IMPORT;
+import static app.constants.ErrorMessages.ERROR_INVALID_REQUEST_DATA;
+
+/**
+ * Bulk import of customers and accounts
+ * Records are validated one by one while they are read and valid ones are inserted with JDBC batches of
+ * importBatchSize records, each batch in its own DB transaction. Invalid record or failed batch does not stop import,
+ * its lines are reported in import result instead.
+ */
+@Singleton
+public class ImportService {
+    @Inject
+    private CustomerService customerService;
+    @Inject
+    private AccountService accountService;
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private final int batchSize = Math.max(1, ConfigUtils.getIntProperty(ConfigConstants.VAR_IMPORT_BATCH_SIZE,
+            ConfigConstants.DEFAULT_IMPORT_BATCH_SIZE));
+    private final int maxErrors = Math.max(0, ConfigUtils.getIntProperty(ConfigConstants.VAR_IMPORT_MAX_ERRORS,
+            ConfigConstants.DEFAULT_IMPORT_MAX_ERRORS));
+
+    /**
+     * Validate and insert records of one import batch
+     */
+    @FunctionalInterface
+    private interface BatchWriter<T> {
+        void write(List<T> records, List<Integer> lines, ImportResult result);
+    }
+
+    /**
+     * Validate record
+     */
+    @FunctionalInterface
+    private interface Validator<T> {
+        void validate(T record) throws InvalidRequestData;
+    }
+
+    /**
+     * Import customers
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     * @throws InvalidRequestData when there are no records
+     */
+    public ImportResult importCustomers(RecordReader<Customer> reader) throws IOException, InvalidRequestData {
+        return this.importRecords(reader, CustomerValidator::validateCustomerData, this::writeCustomers);
+    }
+
+    /**
+     * Import accounts
+     * Accounts are created with default balance, like accounts created one by one
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     * @throws InvalidRequestData when there are no records
+     */
+    public ImportResult importAccounts(RecordReader<Account> reader) throws IOException, InvalidRequestData {
+        return this.importRecords(reader, account -> {
+            AccountValidator.validateAccountData(account);
+            account.setBalance(ModelConstants.ACCOUNT_DEFAULT_BALANCE);
+        }, this::writeAccounts);
+    }
+
+    /**
+     * Read, validate and write records batch by batch
+     *
+     * @param reader
+     * @param validator
+     * @param writer
+     * @param <T>
+     * @return
+     * @throws IOException
+     * @throws InvalidRequestData when there are no records
+     */
+    private <T> ImportResult importRecords(RecordReader<T> reader, Validator<T> validator, BatchWriter<T> writer)
+            throws IOException, InvalidRequestData {
+        ImportResult result = new ImportResult();
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Integer> lines = new ArrayList<>(batchSize);
+        boolean empty = true;
+        while (reader.next()) {
+            empty = false;
+            try {
+                T record = reader.getRecord();
+                if (record == null)
+                    throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
+                validator.validate(record);
+                batch.add(record);
+                lines.add(reader.getLine());
+            } catch (InvalidRequestData e) {
+                result.addFailed(reader.getLine(), e.getMessage(), maxErrors);
+            }
+            if (batch.size() == batchSize) {
+                writer.write(batch, lines, result);
+                batch.clear();
+                lines.clear();
+            }
+        }
+        if (empty)
+            throw new InvalidRequestData(ERROR_EMPTY_IMPORT);
+        if (!batch.isEmpty())
+            writer.write(batch, lines, result);
+
+        metricsRegistry.counter(MetricConstants.IMPORT_RECORDS_IMPORTED).add(result.getImported());
+        metricsRegistry.counter(MetricConstants.IMPORT_RECORDS_FAILED).add(result.getFailed());
+        return result;
+    }
+
+    private void writeCustomers(List<Customer> customers, List<Integer> lines, ImportResult result) {
+        try {
+            customerService.createCustomers(customers);
+            result.addImported(customers.size());
+        } catch (DataBaseException e) {
+            lines.forEach(line -> result.addFailed(line, e.getMessage(), maxErrors));
+        }
+    }
+
+    /**
+     * Write accounts batch
+     * Customers of all batch accounts are looked up with single query, accounts of unknown customers are rejected
+     *
+     * @param accounts
+     * @param lines
+     * @param result
+     */
+    private void writeAccounts(List<Account> accounts, List<Integer> lines, ImportResult result) {
+        Set<Long> customerIds;
+        try {
+            customerIds = customerService.getExistingCustomerIds(
+                    accounts.stream().map(Account::getCustomerId).collect(Collectors.toSet()));
+        } catch (DataBaseException e) {
+            lines.forEach(line -> result.addFailed(line, e.getMessage(), maxErrors));
+            return;
+        }
+        List<Account> valid = new ArrayList<>(accounts.size());
+        List<Integer> validLines = new ArrayList<>(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            if (customerIds.contains(accounts.get(i).getCustomerId())) {
+                valid.add(accounts.get(i));
+                validLines.add(lines.get(i));
+            } else
+                result.addFailed(lines.get(i), ERROR_COULD_NOT_FIND_CUSTOMER, maxErrors);
+        }
+        if (valid.isEmpty())
+            return;
+        try {
+            accountService.createAccounts(valid);
+            result.addImported(valid.size());
+        } catch (DataBaseException e) {
+            validLines.forEach(line -> result.addFailed(line, e.getMessage(), maxErrors));
+        }
+    }
+}
@@ -1,19 +1,41 @@
 package app.services;
 
+import app.cache.IdempotencyStore;
+import app.constants.ConfigConstants;
+import app.constants.ErrorMessages;
+import app.constants.MetricConstants;
 import app.db.DataSource;
+import app.events.TransactionEvents;
 import app.exceptions.DataBaseException;
-import app.exceptions.DataConflictException;
-import app.models.Account;
+import app.exceptions.InsufficientBalanceException;
+import app.exceptions.InvalidRequestData;
+import app.exceptions.PaymentAPIException;
+import app.ledger.LedgerEngine;
+import app.metrics.MetricsRegistry;
+import app.models.AccountDailySummary;
+import app.models.AccountSummary;
 import app.models.Transaction;
+import app.models.TransactionBatchItem;
+import app.utils.ConfigUtils;
+import app.utils.PagingUtils;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.eclipse.jetty.http.HttpStatus;
 
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Transaction service for accessing and modifications in DB for @Transaction entity
@@ -22,17 +44,49 @@ import java.util.List;
 public class TransactionService {
     @Inject
     private DataSource dataSource;
+    @Inject
+    private LedgerEngine ledgerEngine;
+    @Inject
+    private AccountService accountService;
+    @Inject
+    private MetricsRegistry metricsRegistry;
+    @Inject
+    private IdempotencyStore idempotencyStore;
+    @Inject
+    private TransactionEvents transactionEvents;
+
+    private static final LocalDate SUMMARY_MIN_DAY = LocalDate.of(1, 1, 1);
+    private static final LocalDate SUMMARY_MAX_DAY = LocalDate.of(9999, 12, 31);
+
+    private final int batchCommitSize = Math.max(1, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_TRANSACTION_BATCH_COMMIT_SIZE, ConfigConstants.DEFAULT_TRANSACTION_BATCH_COMMIT_SIZE));
 
     /**
-     * Get all account transactions
+     * Stream all transactions
+     * Transactions are read page by page in id order and passed to consumer one by one, so they are not collected in
+     * memory and DB connection is not held while consumer writes them
      *
+     * @param consumer
+     * @throws DataBaseException
+     */
+    public void streamTransactions(Consumer<Transaction> consumer) throws DataBaseException {
+        PagingUtils.forEachRow(this::getTransactionsPage, Transaction::getId, consumer);
+    }
+
+    /**
+     * Get page of transactions ordered by id
+     *
+     * @param afterId id of last transaction of previous page, 0 for first page
+     * @param limit
      * @return
      * @throws DataBaseException
      */
-    public List<Transaction> getTransactions() throws DataBaseException {
-        String sql = "SELECT * FROM account_transaction";
+    public List<Transaction> getTransactionsPage(long afterId, int limit) throws DataBaseException {
+        String sql = "SELECT * FROM account_transaction WHERE id > ? ORDER BY id LIMIT ?";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, afterId);
+            pst.setInt(2, limit);
             ResultSet rs = pst.executeQuery();
 
             List<Transaction> result = new ArrayList<>();
@@ -41,23 +95,45 @@ public class TransactionService {
             }
             return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Get id of the last transaction
+     *
+     * @return 0 when there are no transactions
+     * @throws DataBaseException
+     */
+    public long getLastTransactionId() throws DataBaseException {
+        try (Connection con = dataSource.getConnection();
+             Statement stm = con.createStatement();
+             ResultSet rs = stm.executeQuery("SELECT MAX(id) FROM account_transaction")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Get transactions by sender or receiver account
+     * OR condition is split into UNION of sender and receiver index range scans. Sender can not be receiver of the
+     * same transaction, but receiver part still excludes it, so no transaction is returned twice.
      *
      * @param accountId
      * @return
      * @throws DataBaseException
      */
     public List<Transaction> getTransactionsByAccountId(Long accountId) throws DataBaseException {
-        String sql = "SELECT * FROM account_transaction WHERE sender_account_id = ? OR receiver_account_id = ?";
+        String sql = "SELECT * FROM account_transaction WHERE sender_account_id = ? " +
+                "UNION ALL " +
+                "SELECT * FROM account_transaction WHERE receiver_account_id = ? AND sender_account_id <> ? " +
+                "ORDER BY id";
         try (Connection con = dataSource.getConnection();
              PreparedStatement pst = con.prepareStatement(sql)) {
             pst.setLong(1, accountId);
             pst.setLong(2, accountId);
+            pst.setLong(3, accountId);
             ResultSet rs = pst.executeQuery();
 
             List<Transaction> result = new ArrayList<>();
@@ -66,74 +142,223 @@ public class TransactionService {
             }
             return result;
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Get page of sender or receiver account transactions ordered by id
+     * Each UNION part reads at most one page from its index, then pages are merged
+     *
+     * @param accountId
+     * @param afterId id of last transaction of previous page, 0 for first page
+     * @param limit
+     * @return
+     * @throws DataBaseException
+     */
+    public List<Transaction> getTransactionsPageByAccountId(Long accountId, long afterId, int limit)
+            throws DataBaseException {
+        String sql = "SELECT * FROM (" +
+                "(SELECT * FROM account_transaction WHERE sender_account_id = ? AND id > ? ORDER BY id LIMIT ?) " +
+                "UNION ALL " +
+                "(SELECT * FROM account_transaction WHERE receiver_account_id = ? AND sender_account_id <> ? " +
+                "AND id > ? ORDER BY id LIMIT ?)" +
+                ") ORDER BY id LIMIT ?";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, accountId);
+            pst.setLong(2, afterId);
+            pst.setInt(3, limit);
+            pst.setLong(4, accountId);
+            pst.setLong(5, accountId);
+            pst.setLong(6, afterId);
+            pst.setInt(7, limit);
+            pst.setInt(8, limit);
+            ResultSet rs = pst.executeQuery();
+
+            List<Transaction> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(createTransactionFromResultSet(rs));
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
         }
     }
 
     /**
      * Create new Transaction
-     * Creates 1 Transaction, updates 2 Account's in single DB transaction
-     * To ensure account data integrity (not outdated), uses 'created' attribute
+     * Money is moved by ledger engine, which creates 1 Transaction and updates 2 Account's in single DB transaction.
+     * Cached Account's are invalidated after transfer.
+     * Transaction with idempotency key is executed only once, repeated requests with the same key get the original
+     * Transaction. Failed transfer does not use the key up, so it can be retried.
      *
-     * @param sender
-     * @param receiver
      * @param transaction
      * @return
-     * @throws DataBaseException
+     * @throws PaymentAPIException
      */
-    public Transaction createTransaction(Account sender, Account receiver, Transaction transaction) throws DataBaseException {
-        Transaction result;
-        String sqlTransaction = "INSERT INTO account_transaction (title, amount, sender_account_id, " +
-                "receiver_account_id, updated, created) VALUES (?, ?, ?, ?, NOW(), NOW())";
-        String sqlAccount = "UPDATE account SET balance = ?, updated = NOW() WHERE id = ? AND updated = ?";
-        try (
-                Connection con = dataSource.getConnection();
-                PreparedStatement pstTransaction = con.prepareStatement(sqlTransaction,
-                        PreparedStatement.RETURN_GENERATED_KEYS);
-                PreparedStatement pstSender = con.prepareStatement(sqlAccount);
-                PreparedStatement pstReceiver = con.prepareStatement(sqlAccount)) {
-
-            //Turn off auto commit. Need all 3 statements to be executed
-            con.setAutoCommit(false);
-
-            // Set transaction data
-            pstTransaction.setString(1, transaction.getTitle());
-            pstTransaction.setBigDecimal(2, transaction.getAmount());
-            pstTransaction.setLong(3, transaction.getSenderAccountId());
-            pstTransaction.setLong(4, transaction.getReceiverAccountId());
-            int affectedRowsTransaction = pstTransaction.executeUpdate();
-            if (affectedRowsTransaction == 0)
-                throw new DataBaseException("Could not create transaction.");
-
-            //Sender account data
-            pstSender.setBigDecimal(1, sender.getBalance());
-            pstSender.setLong(2, sender.getId());
-            pstSender.setTimestamp(3, sender.getUpdated());
-            int affectedRowsSender = pstSender.executeUpdate();
-            if (affectedRowsSender == 0)
-                throw new DataConflictException("Could not update sender account.");
-
-            //Receiver account data
-            pstReceiver.setBigDecimal(1, receiver.getBalance());
-            pstReceiver.setLong(2, receiver.getId());
-            pstReceiver.setTimestamp(3, receiver.getUpdated());
-            int affectedRowsReceiver = pstReceiver.executeUpdate();
-            if (affectedRowsReceiver == 0)
-                throw new DataConflictException("Could not update receiver account.");
-
-            con.commit();
-
-            try (ResultSet generatedKeys = pstTransaction.getGeneratedKeys()) {
-                if (generatedKeys.next())
-                    result = this.getTransaction(generatedKeys.getLong(1));
-                else
-                    throw new DataBaseException("Could not obtain newly created transaction ID");
+    public Transaction createTransaction(Transaction transaction) throws PaymentAPIException {
+        String key = transaction.getIdempotencyKey();
+        if (key == null)
+            return this.transfer(transaction);
+
+        CompletableFuture<Transaction> result = new CompletableFuture<>();
+        CompletableFuture<Transaction> earlier = idempotencyStore.reserve(key, result);
+        if (earlier != null)
+            return this.replay(transaction, IdempotencyStore.await(earlier));
+
+        Transaction created;
+        boolean replayed = false;
+        try {
+            created = this.getTransactionByIdempotencyKey(key);
+            replayed = created != null;
+            if (!replayed) {
+                try {
+                    created = this.transfer(transaction);
+                } catch (PaymentAPIException e) {
+                    //Unique index rejected transfer, because the same key was committed after lookup
+                    created = this.getTransactionByIdempotencyKey(key);
+                    if (created == null)
+                        throw e;
+                    replayed = true;
+                }
             }
+        } catch (PaymentAPIException | RuntimeException e) {
+            idempotencyStore.release(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+        result.complete(created);
+        return replayed ? this.replay(transaction, created) : created;
+    }
 
+    /**
+     * Return Transaction created by earlier request with the same idempotency key
+     *
+     * @param transaction repeated request
+     * @param original
+     * @return
+     * @throws InvalidRequestData when the key was used for different transfer
+     */
+    private Transaction replay(Transaction transaction, Transaction original) throws InvalidRequestData {
+        if (!Objects.equals(transaction.getSenderAccountId(), original.getSenderAccountId())
+                || !Objects.equals(transaction.getReceiverAccountId(), original.getReceiverAccountId())
+                || transaction.getAmount().compareTo(original.getAmount()) != 0)
+            throw new InvalidRequestData(ErrorMessages.ERROR_IDEMPOTENCY_KEY_REUSED);
+        metricsRegistry.counter(MetricConstants.IDEMPOTENCY_REPLAYS).increment();
+        return original;
+    }
 
+    /**
+     * Transfer money and publish created Transaction to event subscribers
+     * Ledger engine sets id and timestamps of created Transaction, so it is not read back from DB
+     *
+     * @param transaction
+     * @return
+     * @throws PaymentAPIException
+     */
+    private Transaction transfer(Transaction transaction) throws PaymentAPIException {
+        long ticket = transactionEvents.begin();
+        try {
+            ledgerEngine.transfer(transaction);
+            metricsRegistry.counter(MetricConstants.TRANSFERS_SUCCESS).increment();
+            transactionEvents.publish(transaction);
+        } catch (PaymentAPIException e) {
+            this.countTransfer(e.getStatus(), e);
+            throw e;
+        } catch (RuntimeException e) {
+            metricsRegistry.counter(MetricConstants.TRANSFERS_ERROR).increment();
+            throw e;
+        } finally {
+            transactionEvents.end(ticket);
+            this.invalidateAccounts(Collections.singletonList(transaction));
+        }
+        return transaction;
+    }
+
+    /**
+     * Create multiple Transactions
+     * In atomic mode all transactions are committed in single DB transaction or none of them is created. Otherwise
+     * transactions are committed in groups and failure of one transaction does not affect others.
+     *
+     * @param transactions
+     * @param atomic
+     * @return result for each transaction, in the same order as transactions
+     * @throws PaymentAPIException
+     */
+    public List<TransactionBatchItem> createTransactions(List<Transaction> transactions, boolean atomic)
+            throws PaymentAPIException {
+        List<TransactionBatchItem> result = null;
+        long ticket = transactionEvents.begin();
+        try {
+            if (atomic) {
+                result = ledgerEngine.transferBatch(transactions, true);
+                return result;
+            }
+
+            result = new ArrayList<>(transactions.size());
+            for (List<Transaction> group : Lists.partition(transactions, batchCommitSize)) {
+                try {
+                    result.addAll(ledgerEngine.transferBatch(group, false));
+                } catch (PaymentAPIException e) {
+                    for (Transaction t : group)
+                        result.add(new TransactionBatchItem(e));
+                }
+            }
             return result;
-        } catch (SQLException | DataConflictException e) {
-            throw new DataBaseException(e.getMessage());
+        } finally {
+            if (result != null)
+                this.completeTransfers(result);
+            transactionEvents.end(ticket);
+            this.invalidateAccounts(transactions);
+        }
+    }
+
+    /**
+     * Count batch transfers and publish created Transactions to event subscribers
+     *
+     * @param items
+     */
+    private void completeTransfers(List<TransactionBatchItem> items) {
+        List<Transaction> created = new ArrayList<>(items.size());
+        for (TransactionBatchItem item : items) {
+            this.countTransfer(item.getStatus(), item.getException());
+            if (item.getStatus() == HttpStatus.CREATED_201)
+                created.add(item.getTransaction());
+        }
+        transactionEvents.publish(created);
+    }
+
+    /**
+     * Count transfer by its outcome
+     *
+     * @param status HTTP status of transfer result
+     * @param error  exception of failed transfer
+     */
+    private void countTransfer(int status, PaymentAPIException error) {
+        String name;
+        if (status == HttpStatus.CREATED_201 || status == HttpStatus.OK_200)
+            name = MetricConstants.TRANSFERS_SUCCESS;
+        else if (error instanceof InsufficientBalanceException)
+            name = MetricConstants.TRANSFERS_INSUFFICIENT_BALANCE;
+        else if (status == HttpStatus.CONFLICT_409)
+            name = MetricConstants.TRANSFERS_CONFLICT;
+        else if (HttpStatus.isClientError(status))
+            name = MetricConstants.TRANSFERS_REJECTED;
+        else
+            name = MetricConstants.TRANSFERS_ERROR;
+        metricsRegistry.counter(name).increment();
+    }
+
+    /**
+     * Invalidate cached sender and receiver accounts after transfers are committed
+     *
+     * @param transactions
+     */
+    private void invalidateAccounts(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            accountService.invalidateBalance(transaction.getSenderAccountId());
+            accountService.invalidateBalance(transaction.getReceiverAccountId());
         }
     }
 
@@ -153,7 +378,67 @@ public class TransactionService {
             if (rs.next())
                 return createTransactionFromResultSet(rs);
         } catch (SQLException e) {
-            throw new DataBaseException(e.getMessage());
+            throw new DataBaseException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Get account summary within date range
+     * Summary is read from daily summaries maintained with every transfer, so one row is read per day with
+     * transactions instead of scanning account history
+     *
+     * @param accountId
+     * @param from      first day of range, null for no lower bound
+     * @param to        last day of range, null for no upper bound
+     * @return
+     * @throws DataBaseException
+     */
+    public AccountSummary getAccountSummary(Long accountId, LocalDate from, LocalDate to) throws DataBaseException {
+        String sql = "SELECT * FROM account_daily_summary WHERE account_id = ? AND day >= ? AND day <= ? ORDER BY day";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setLong(1, accountId);
+            pst.setDate(2, Date.valueOf(from == null ? SUMMARY_MIN_DAY : from));
+            pst.setDate(3, Date.valueOf(to == null ? SUMMARY_MAX_DAY : to));
+            ResultSet rs = pst.executeQuery();
+
+            AccountSummary result = new AccountSummary();
+            result.setAccountId(accountId);
+            result.setFrom(from == null ? null : from.toString());
+            result.setTo(to == null ? null : to.toString());
+            while (rs.next()) {
+                AccountDailySummary day = new AccountDailySummary();
+                day.setDate(rs.getDate("day").toLocalDate().toString());
+                day.setDebitCount(rs.getLong("debit_count"));
+                day.setDebitSum(rs.getBigDecimal("debit_sum"));
+                day.setCreditCount(rs.getLong("credit_count"));
+                day.setCreditSum(rs.getBigDecimal("credit_sum"));
+                result.addDay(day);
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
+        }
+    }
+
+    /**
+     * Get transaction by idempotency key
+     *
+     * @param key
+     * @return
+     * @throws DataBaseException
+     */
+    public Transaction getTransactionByIdempotencyKey(String key) throws DataBaseException {
+        String sql = "SELECT * FROM account_transaction WHERE idempotency_key = ?";
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+            pst.setString(1, key);
+            ResultSet rs = pst.executeQuery();
+            if (rs.next())
+                return createTransactionFromResultSet(rs);
+        } catch (SQLException e) {
+            throw new DataBaseException(e);
         }
         return null;
     }
@@ -174,6 +459,7 @@ public class TransactionService {
         transaction.setReceiverAccountId(res.getLong("receiver_account_id"));
         transaction.setUpdated(res.getTimestamp("updated"));
         transaction.setCreated(res.getTimestamp("created"));
+        transaction.setIdempotencyKey(res.getString("idempotency_key"));
         return transaction;
     }
 }
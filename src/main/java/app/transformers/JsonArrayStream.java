@@ -0,0 +1,77 @@
+package app.transformers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.eclipse.jetty.server.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Json array written element by element to output stream
+ * Elements are serialized as soon as they are written, so whole array is never held in memory.
+ * Closing the stream ends json array, but leaves underlying output stream open. Stream failed in the middle is
+ * aborted instead of closed, so client never receives truncated array looking like complete one.
+ */
+public class JsonArrayStream implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(JsonArrayStream.class);
+
+    private final JsonGenerator generator;
+    private final SequenceWriter sequenceWriter;
+
+    JsonArrayStream(JsonGenerator generator, SequenceWriter sequenceWriter) {
+        this.generator = generator;
+        this.sequenceWriter = sequenceWriter;
+    }
+
+    /**
+     * Write array element
+     *
+     * @param element
+     * @throws UncheckedIOException
+     */
+    public void write(Object element) {
+        try {
+            sequenceWriter.write(element);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Give up unfinished array after error
+     * Array is not ended. When response is not committed yet, written elements are discarded, so error response
+     * replaces them. Committed response can not change its status anymore, so its connection is aborted and client
+     * sees incomplete response.
+     *
+     * @param response
+     * @param error
+     */
+    public void abort(ServletResponse response, Exception error) {
+        if (!response.isCommitted()) {
+            response.resetBuffer();
+            return;
+        }
+        logger.error("Streamed list response aborted", error);
+        while (response instanceof ServletResponseWrapper)
+            response = ((ServletResponseWrapper) response).getResponse();
+        if (response instanceof Response)
+            ((Response) response).getHttpChannel().abort(error);
+    }
+
+    /**
+     * End json array and flush it to output stream
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        sequenceWriter.close();
+        generator.close();
+    }
+}
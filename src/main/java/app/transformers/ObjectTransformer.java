@@ -1,19 +1,37 @@
 package app.transformers;
 
+import app.constants.ConfigConstants;
 import app.exceptions.InvalidRequestData;
+import app.utils.ConfigUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static app.constants.ErrorMessages.ERROR_INVALID_REQUEST_DATA;
 
 /**
  * Object transformer to transform objects to/from json based string
+ * Uses single configured ObjectMapper. Readers and writers are immutable and thread safe, so they are created once
+ * per type and shared between requests.
  */
 public class ObjectTransformer {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter writer = createWriter();
+    private static final ObjectWriter streamWriter = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final ObjectWriter lineWriter = writer.without(SerializationFeature.INDENT_OUTPUT);
+    private static final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
 
     /**
      * Get object from Request body
@@ -28,7 +46,7 @@ public class ObjectTransformer {
         try {
             return getObject(content, typeParameterClass);
         } catch (IOException e) {
-            throw new InvalidRequestData("Invalid request data");
+            throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
         }
     }
 
@@ -42,8 +60,20 @@ public class ObjectTransformer {
      * @throws IOException
      */
     public static <T> T getObject(String content, Class<T> typeParameterClass) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(content, typeParameterClass);
+        return getReader(typeParameterClass).readValue(content);
+    }
+
+    /**
+     * Convert property values to object, e.g. CSV record read as strings
+     *
+     * @param values
+     * @param typeParameterClass
+     * @param <T>
+     * @return
+     * @throws IllegalArgumentException when values do not match object properties
+     */
+    public static <T> T convert(Map<String, ?> values, Class<T> typeParameterClass) {
+        return mapper.convertValue(values, typeParameterClass);
     }
 
     /**
@@ -54,34 +84,85 @@ public class ObjectTransformer {
      */
     public static String objectToString(Object obj) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            StringWriter sw = new StringWriter();
-            mapper.writeValue(sw, obj);
-            return sw.toString();
+            return getWriter(obj).writeValueAsString(obj);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage());
         }
     }
 
     /**
-     * Create json string for Exception object
+     * Create single line json string from object, regardless of indented output
      *
-     * @param ex
+     * @param obj
      * @return
      */
-    public static String exceptionToString(Exception ex) {
+    public static String objectToLine(Object obj) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            StringWriter sw = new StringWriter();
-            mapper.writeValue(sw, new ErrorResponse(ex.getMessage()));
-            return sw.toString();
+            return lineWriter.writeValueAsString(obj);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage());
         }
     }
 
+    /**
+     * Create json string for Exception object
+     *
+     * @param ex
+     * @return
+     */
+    public static String exceptionToString(Exception ex) {
+        return objectToString(new ErrorResponse(ex.getMessage()));
+    }
+
+    /**
+     * Create json array stream writing directly to output stream
+     *
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public static JsonArrayStream createArrayStream(OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        SequenceWriter sequenceWriter = streamWriter.writeValuesAsArray(generator);
+        return new JsonArrayStream(generator, sequenceWriter);
+    }
+
+    /**
+     * Get shared reader for type
+     *
+     * @param type
+     * @return
+     */
+    public static ObjectReader getReader(Class<?> type) {
+        return readers.computeIfAbsent(type, mapper::reader);
+    }
+
+    /**
+     * Get shared writer for object type
+     *
+     * @param obj
+     * @return
+     */
+    public static ObjectWriter getWriter(Object obj) {
+        if (obj == null)
+            return writer;
+        return writers.computeIfAbsent(obj.getClass(), writer::forType);
+    }
+
+    /**
+     * Create base writer
+     * Indented output can be turned off with system property jsonIndentOutput
+     *
+     * @return
+     */
+    private static ObjectWriter createWriter() {
+        ObjectWriter result = mapper.writer();
+        if (ConfigUtils.getBooleanProperty(ConfigConstants.VAR_JSON_INDENT_OUTPUT, true))
+            result = result.with(SerializationFeature.INDENT_OUTPUT);
+        return result;
+    }
+
     /**
      * Inner class used for error response mapping
      */
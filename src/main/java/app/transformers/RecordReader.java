@@ -0,0 +1,197 @@
+package app.transformers;
+
+import app.exceptions.InvalidRequestData;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static app.constants.ErrorMessages.ERROR_INVALID_CSV_HEADER;
+import static app.constants.ErrorMessages.ERROR_INVALID_REQUEST_DATA;
+import static app.constants.ErrorMessages.ERROR_LINE_TOO_LONG;
+
+/**
+ * Reader of records from NDJSON (one json object per line) or CSV (header line with property names, then one record
+ * per line) stream
+ * Stream is read line by line, so only current record is held in memory. Blank lines are skipped. Quoted CSV values
+ * may contain commas and doubled quotes, but not line breaks. Only maxLineLength characters of a line are kept, longer
+ * record is reported as invalid.
+ *
+ * @param <T>
+ */
+public class RecordReader<T> implements Closeable {
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final Class<T> type;
+    private final int maxLineLength;
+    private final StringBuilder buffer = new StringBuilder();
+    private String[] columns;
+    private String current;
+    private boolean tooLong;
+    private int line;
+
+    public RecordReader(InputStream in, Format format, Class<T> type, int maxLineLength) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.format = format;
+        this.type = type;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Move to next record
+     *
+     * @return false when stream has no more records
+     * @throws IOException
+     * @throws InvalidRequestData when CSV stream does not start with valid header
+     */
+    public boolean next() throws IOException, InvalidRequestData {
+        current = this.readLine();
+        if (format == Format.CSV && columns == null && current != null) {
+            if (tooLong)
+                throw new InvalidRequestData(ERROR_INVALID_CSV_HEADER);
+            List<String> header = parseCsvLine(current);
+            if (header.stream().anyMatch(c -> c == null))
+                throw new InvalidRequestData(ERROR_INVALID_CSV_HEADER);
+            columns = header.toArray(new String[0]);
+            current = this.readLine();
+        }
+        return current != null;
+    }
+
+    /**
+     * Get line number of current record, counted from 1
+     *
+     * @return
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Parse current record
+     *
+     * @return
+     * @throws InvalidRequestData when record can not be parsed or its line is too long
+     */
+    public T getRecord() throws InvalidRequestData {
+        if (tooLong)
+            throw new InvalidRequestData(String.format(ERROR_LINE_TOO_LONG, maxLineLength));
+        try {
+            if (format == Format.NDJSON)
+                return ObjectTransformer.getObject(current, type);
+
+            List<String> values = parseCsvLine(current);
+            if (values.size() != columns.length)
+                throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < columns.length; i++)
+                record.put(columns[i], values.get(i));
+            return ObjectTransformer.convert(record, type);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Read next non blank line
+     *
+     * @return null at the end of stream
+     * @throws IOException
+     */
+    private String readLine() throws IOException {
+        String result;
+        do {
+            result = this.readBoundedLine();
+            if (result == null)
+                return null;
+            //Byte order mark written by some spreadsheet applications
+            if (line++ == 0 && result.startsWith("\uFEFF"))
+                result = result.substring(1);
+        } while (!tooLong && result.trim().isEmpty());
+        return result;
+    }
+
+    /**
+     * Read line ended by \n, \r or \r\n, characters over maxLineLength are skipped and mark line as too long
+     *
+     * @return null at the end of stream
+     * @throws IOException
+     */
+    private String readBoundedLine() throws IOException {
+        int c = reader.read();
+        if (c < 0)
+            return null;
+        buffer.setLength(0);
+        tooLong = false;
+        while (c >= 0 && c != '\n' && c != '\r') {
+            if (buffer.length() < maxLineLength)
+                buffer.append((char) c);
+            else
+                tooLong = true;
+            c = reader.read();
+        }
+        if (c == '\r') {
+            reader.mark(1);
+            if (reader.read() != '\n')
+                reader.reset();
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Split CSV line into values
+     * Empty unquoted value is returned as null
+     *
+     * @param line
+     * @return
+     * @throws InvalidRequestData when quoted value is not closed
+     */
+    private static List<String> parseCsvLine(String line) throws InvalidRequestData {
+        List<String> result = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        while (true) {
+            boolean quoted = i < line.length() && line.charAt(i) == '"';
+            value.setLength(0);
+            if (quoted) {
+                i++;
+                while (true) {
+                    if (i >= line.length())
+                        throw new InvalidRequestData(ERROR_INVALID_REQUEST_DATA);
+                    char c = line.charAt(i++);
+                    if (c != '"')
+                        value.append(c);
+                    else if (i < line.length() && line.charAt(i) == '"')
+                        value.append(line.charAt(i++));
+                    else
+                        break;
+                }
+            }
+            int end = line.indexOf(',', i);
+            if (end < 0)
+                end = line.length();
+            value.append(line, i, end);
+            String text = quoted ? value.toString() : value.toString().trim();
+            result.add(!quoted && text.isEmpty() ? null : text);
+            if (end == line.length())
+                return result;
+            i = end + 1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package app.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Utility class for reading application configuration from system properties
+ */
+public class ConfigUtils {
+    private static Logger logger = LoggerFactory.getLogger(ConfigUtils.class);
+
+    /**
+     * Get integer system property or default value if property is missing or invalid
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static int getIntProperty(String name, int defaultValue) {
+        try {
+            Optional<String> valueOpt = Optional.ofNullable(System.getProperty(name));
+            if (valueOpt.isPresent())
+                return Integer.valueOf(valueOpt.get().trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid {} provided. Will use default {}", name, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get string system property or default value if property is missing
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static String getStringProperty(String name, String defaultValue) {
+        return Optional.ofNullable(System.getProperty(name)).map(String::trim).orElse(defaultValue);
+    }
+
+    /**
+     * Get boolean system property or default value if property is missing
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public static boolean getBooleanProperty(String name, boolean defaultValue) {
+        return Optional.ofNullable(System.getProperty(name)).map(v -> Boolean.valueOf(v.trim())).orElse(defaultValue);
+    }
+}
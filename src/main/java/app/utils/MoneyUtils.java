@@ -0,0 +1,43 @@
+package app.utils;
+
+import java.math.BigDecimal;
+
+/**
+ * Utility class for money amounts
+ * Amounts are kept as long number of cents on ledger path, so balance arithmetic does not allocate and overflow is
+ * detected with exact long operations. BigDecimal is used only for json and DB values.
+ */
+public class MoneyUtils {
+    public static final int SCALE = 2;
+
+    /**
+     * Round amount to cents
+     *
+     * @param amount
+     * @return
+     */
+    public static BigDecimal round(BigDecimal amount) {
+        return amount.setScale(SCALE, BigDecimal.ROUND_HALF_DOWN);
+    }
+
+    /**
+     * Convert amount to cents
+     *
+     * @param amount
+     * @return
+     * @throws ArithmeticException when amount has fraction of cent or does not fit into long
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * Convert cents to amount
+     *
+     * @param cents
+     * @return
+     */
+    public static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+}
@@ -0,0 +1,150 @@
+package app.utils;
+
+import app.constants.ConfigConstants;
+import app.constants.RouteConstants;
+import app.db.RequestConnection;
+import app.exceptions.DataBaseException;
+import app.exceptions.InvalidRequestData;
+import spark.Request;
+import spark.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static app.constants.ErrorMessages.ERROR_INVALID_PAGE_CURSOR;
+import static app.constants.ErrorMessages.ERROR_INVALID_PAGE_LIMIT;
+
+/**
+ * Utility class for keyset (id based) pagination of list routes
+ * Page is requested with query parameters limit and after. Cursor of the next page is returned in X-Next-Cursor
+ * header, so response body stays the same json array as for unpaged request.
+ */
+public class PagingUtils {
+    private static final String CURSOR_PREFIX = "id:";
+    private static final int defaultLimit = ConfigUtils.getIntProperty(ConfigConstants.VAR_PAGE_DEFAULT_LIMIT,
+            ConfigConstants.DEFAULT_PAGE_DEFAULT_LIMIT);
+    private static final int maxLimit = ConfigUtils.getIntProperty(ConfigConstants.VAR_PAGE_MAX_LIMIT,
+            ConfigConstants.DEFAULT_PAGE_MAX_LIMIT);
+    private static final int streamPageSize = Math.max(1, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_STREAM_PAGE_SIZE, ConfigConstants.DEFAULT_STREAM_PAGE_SIZE));
+
+    /**
+     * Page query by id
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        List<T> load(long afterId, int limit) throws DataBaseException;
+    }
+
+    /**
+     * Check if request asks for single page instead of whole list
+     *
+     * @param req
+     * @return
+     */
+    public static boolean isPageRequest(Request req) {
+        return req.queryParams(RouteConstants.Query.LIMIT) != null
+                || req.queryParams(RouteConstants.Query.AFTER) != null;
+    }
+
+    /**
+     * Get page size from request
+     *
+     * @param req
+     * @return
+     * @throws InvalidRequestData
+     */
+    public static int getLimit(Request req) throws InvalidRequestData {
+        String limit = req.queryParams(RouteConstants.Query.LIMIT);
+        if (limit == null)
+            return Math.min(defaultLimit, maxLimit);
+        try {
+            int result = Integer.parseInt(limit.trim());
+            if (result >= 1 && result <= maxLimit)
+                return result;
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        throw new InvalidRequestData(String.format(ERROR_INVALID_PAGE_LIMIT, maxLimit));
+    }
+
+    /**
+     * Get id after which page starts
+     *
+     * @param req
+     * @return 0 for first page
+     * @throws InvalidRequestData
+     */
+    public static long getAfterId(Request req) throws InvalidRequestData {
+        String cursor = req.queryParams(RouteConstants.Query.AFTER);
+        if (cursor == null || cursor.isEmpty())
+            return 0;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(CURSOR_PREFIX))
+                return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            // Handled below, NumberFormatException is IllegalArgumentException as well
+        }
+        throw new InvalidRequestData(ERROR_INVALID_PAGE_CURSOR);
+    }
+
+    /**
+     * Cut page from rows and set next page cursor header
+     * Rows should be loaded with limit + 1, extra row only tells that next page exists.
+     *
+     * @param res
+     * @param rows  rows ordered by id
+     * @param limit
+     * @param id    id getter of row
+     * @param <T>
+     * @return
+     */
+    public static <T> List<T> toPage(Response res, List<T> rows, int limit, Function<T, Long> id) {
+        if (rows.size() <= limit)
+            return rows;
+        List<T> page = rows.subList(0, limit);
+        res.header(RouteConstants.Header.NEXT_CURSOR, encodeCursor(id.apply(page.get(limit - 1))));
+        return page;
+    }
+
+    /**
+     * Pass all rows to consumer, reading them page by page in id order
+     * Only one page is held in memory and pooled connection is released before page is consumed, so slow consumer
+     * (e.g. client downloading streamed list) does not hold DB connection
+     *
+     * @param loader
+     * @param id       id getter of row
+     * @param consumer
+     * @param <T>
+     * @throws DataBaseException
+     */
+    public static <T> void forEachRow(PageLoader<T> loader, Function<T, Long> id, Consumer<T> consumer)
+            throws DataBaseException {
+        long afterId = 0;
+        while (true) {
+            List<T> page = loader.load(afterId, streamPageSize);
+            RequestConnection.release();
+            page.forEach(consumer);
+            if (page.size() < streamPageSize)
+                return;
+            afterId = id.apply(page.get(page.size() - 1));
+        }
+    }
+
+    /**
+     * Create opaque cursor pointing after given id
+     *
+     * @param id
+     * @return
+     */
+    public static String encodeCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,12 +1,29 @@
 package app.utils;
 
+import app.constants.ConfigConstants;
+import app.constants.RouteConstants;
 import app.exceptions.ApplicationException;
+import app.exceptions.InvalidRequestData;
+import app.transformers.RecordReader;
 import spark.Request;
 
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import java.io.IOException;
+
+import static app.constants.ErrorMessages.ERROR_INVALID_IMPORT_TYPE;
+import static app.constants.ErrorMessages.ERROR_INVALID_LAST_EVENT_ID;
+
 /**
  * Utility class for processing requests
  */
 public class RequestUtils {
+    public static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+    public static final String CONTENT_TYPE_CSV = "text/csv";
+
+    private static final int maxImportLineLength = Math.max(1, ConfigUtils.getIntProperty(
+            ConfigConstants.VAR_IMPORT_MAX_LINE_LENGTH, ConfigConstants.DEFAULT_IMPORT_MAX_LINE_LENGTH));
+
     /**
      * Extract parameter from request path of type Long
      *
@@ -22,4 +39,56 @@ public class RequestUtils {
             throw new ApplicationException("Invalid id");
         }
     }
+
+    /**
+     * Extract id of last received event from Last-Event-ID header or lastEventId query parameter
+     *
+     * @param req
+     * @return id or null if client does not resume
+     * @throws InvalidRequestData
+     */
+    public static Long getLastEventId(Request req) throws InvalidRequestData {
+        String lastEventId = req.headers(RouteConstants.Header.LAST_EVENT_ID);
+        if (lastEventId == null)
+            lastEventId = req.queryParams(RouteConstants.Query.LAST_EVENT_ID);
+        if (lastEventId == null || lastEventId.isEmpty())
+            return null;
+        try {
+            long id = Long.parseLong(lastEventId);
+            if (id < 0)
+                throw new InvalidRequestData(ERROR_INVALID_LAST_EVENT_ID);
+            return id;
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestData(ERROR_INVALID_LAST_EVENT_ID);
+        }
+    }
+
+    /**
+     * Create reader of records streamed in request body
+     * Content-Type application/x-ndjson selects NDJSON and text/csv selects CSV. Body is read from underlying server
+     * request, because Spark request buffers whole body in memory. Lines are limited to importMaxLineLength characters.
+     *
+     * @param req
+     * @param type
+     * @param <T>
+     * @return
+     * @throws InvalidRequestData when content type is not supported
+     * @throws IOException
+     */
+    public static <T> RecordReader<T> getRecordReader(Request req, Class<T> type) throws InvalidRequestData,
+            IOException {
+        String contentType = req.contentType() == null ? "" : req.contentType().toLowerCase();
+        RecordReader.Format format;
+        if (contentType.startsWith(CONTENT_TYPE_NDJSON))
+            format = RecordReader.Format.NDJSON;
+        else if (contentType.startsWith(CONTENT_TYPE_CSV))
+            format = RecordReader.Format.CSV;
+        else
+            throw new InvalidRequestData(ERROR_INVALID_IMPORT_TYPE);
+
+        ServletRequest raw = req.raw();
+        while (raw instanceof ServletRequestWrapper)
+            raw = ((ServletRequestWrapper) raw).getRequest();
+        return new RecordReader<>(raw.getInputStream(), format, type, maxImportLineLength);
+    }
 }
@@ -9,6 +9,7 @@ import app.models.Account;
 import app.services.AccountService;
 import app.services.CustomerService;
 import app.services.TransactionService;
+import app.transformers.JsonArrayStream;
 import app.transformers.ObjectTransformer;
 import app.utils.RequestUtils;
 import com.google.inject.AbstractModule;
@@ -31,8 +32,8 @@ import spark.Request;
 import spark.Response;
 import spark.Route;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 
 import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_ACCOUNT;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -117,20 +118,30 @@ public class AccountControllerTest {
 
     @Test
     public void testGetAllAccounts() throws Exception {
-        List<Account> accountsMock = new ArrayList<>();
-        when(accountServiceMock.getAccounts()).thenReturn(accountsMock);
-        when(ObjectTransformer.objectToString(accountsMock)).thenReturn(expectedResult);
+        HttpServletResponse rawResponse = Mockito.mock(HttpServletResponse.class);
+        ServletOutputStream outputStream = Mockito.mock(ServletOutputStream.class);
+        JsonArrayStream arrayStream = Mockito.mock(JsonArrayStream.class);
+        when(res.raw()).thenReturn(rawResponse);
+        when(rawResponse.getOutputStream()).thenReturn(outputStream);
+        when(ObjectTransformer.createArrayStream(outputStream)).thenReturn(arrayStream);
 
         Route getAllAccountsImpl = Whitebox.getInternalState(accountController, "getAllAccounts");
         Object result = getAllAccountsImpl.handle(req, res);
 
-        Assert.assertEquals(expectedResult, result);
+        Assert.assertEquals("", result);
+        Mockito.verify(accountServiceMock, Mockito.times(1)).streamAccounts(Mockito.any());
+        Mockito.verify(arrayStream, Mockito.times(1)).close();
+        Mockito.verify(res, Mockito.times(1)).status(HttpStatus.OK_200);
     }
 
     @Test(expected = DataBaseException.class)
     public void testGetAllAccountsWithDbException() throws Exception {
         DataBaseException ex = new DataBaseException();
-        when(accountServiceMock.getAccounts()).thenThrow(ex);
+        HttpServletResponse rawResponse = Mockito.mock(HttpServletResponse.class);
+        JsonArrayStream arrayStream = Mockito.mock(JsonArrayStream.class);
+        when(res.raw()).thenReturn(rawResponse);
+        when(ObjectTransformer.createArrayStream(Mockito.any())).thenReturn(arrayStream);
+        Mockito.doThrow(ex).when(accountServiceMock).streamAccounts(Mockito.any());
 
         Route getAllAccountsImpl = Whitebox.getInternalState(accountController, "getAllAccounts");
 
@@ -138,6 +149,8 @@ public class AccountControllerTest {
             getAllAccountsImpl.handle(req, res);
         } catch (DataBaseException e) {
             Assert.assertEquals(ex, e);
+            // Unfinished array is not closed, so error response is not appended to partial list
+            Mockito.verify(arrayStream, Mockito.never()).close();
             throw e;
         }
     }
@@ -0,0 +1,130 @@
+package app.db;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class RequestConnectionTest {
+    private HikariDataSource dataSource;
+    private Connection first;
+    private Connection second;
+
+    @Before
+    public void setUp() throws SQLException {
+        first = this.mockConnection();
+        second = this.mockConnection();
+        dataSource = Mockito.mock(HikariDataSource.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(first, second);
+        RequestConnection.begin();
+    }
+
+    @After
+    public void tearDown() {
+        RequestConnection.end();
+    }
+
+    @Test
+    public void testNestedUsersShareConnection() throws SQLException {
+        Connection outer = RequestConnection.current().open(dataSource);
+        Connection inner = RequestConnection.current().open(dataSource);
+        inner.createStatement();
+        inner.close();
+        outer.createStatement();
+        outer.close();
+
+        Mockito.verify(dataSource, Mockito.times(1)).getConnection();
+        Mockito.verify(first, Mockito.times(2)).createStatement();
+        Mockito.verify(first, Mockito.never()).close();
+    }
+
+    @Test
+    public void testRollbackOnLastClose() throws SQLException {
+        Connection outer = RequestConnection.current().open(dataSource);
+        Connection inner = RequestConnection.current().open(dataSource);
+        inner.close();
+        outer.setAutoCommit(false);
+        outer.close();
+
+        Mockito.verify(first).rollback();
+        Assert.assertTrue(first.getAutoCommit());
+    }
+
+    @Test
+    public void testNestedUserGetsSeparateConnectionInTransaction() throws SQLException {
+        Connection outer = RequestConnection.current().open(dataSource);
+        outer.setAutoCommit(false);
+        Connection inner = RequestConnection.current().open(dataSource);
+        Assert.assertSame(second, inner);
+        inner.setAutoCommit(false);
+        inner.commit();
+        inner.close();
+
+        Mockito.verify(first, Mockito.never()).commit();
+        Mockito.verify(first, Mockito.never()).rollback();
+        Assert.assertFalse(first.getAutoCommit());
+        outer.commit();
+        outer.close();
+        Mockito.verify(first).commit();
+    }
+
+    @Test
+    public void testNestedTransactionRolledBackOnItsClose() throws SQLException {
+        Connection outer = RequestConnection.current().open(dataSource);
+        Connection inner = RequestConnection.current().open(dataSource);
+        inner.setAutoCommit(false);
+        inner.close();
+
+        Mockito.verify(first).rollback();
+        Assert.assertTrue(first.getAutoCommit());
+        //Outer user works in auto commit mode again and later users share the connection
+        Assert.assertSame(outer.unwrap(Connection.class), RequestConnection.current().open(dataSource)
+                .unwrap(Connection.class));
+        Mockito.verify(dataSource, Mockito.times(1)).getConnection();
+    }
+
+    @Test
+    public void testCloseTwice() throws SQLException {
+        Connection outer = RequestConnection.current().open(dataSource);
+        Connection inner = RequestConnection.current().open(dataSource);
+        inner.close();
+        inner.close();
+        outer.setAutoCommit(false);
+        RequestConnection.release();
+
+        Mockito.verify(first, Mockito.never()).rollback();
+        Mockito.verify(first, Mockito.never()).close();
+    }
+
+    @Test
+    public void testRelease() throws SQLException {
+        Connection connection = RequestConnection.current().open(dataSource);
+        RequestConnection.release();
+        Mockito.verify(first, Mockito.never()).close();
+
+        connection.close();
+        RequestConnection.release();
+        Mockito.verify(first).close();
+
+        RequestConnection.current().open(dataSource).createStatement();
+        Mockito.verify(second).createStatement();
+        RequestConnection.end();
+        Mockito.verify(second).close();
+        Assert.assertNull(RequestConnection.current());
+    }
+
+    private Connection mockConnection() throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        boolean[] autoCommit = {true};
+        Mockito.when(connection.getAutoCommit()).thenAnswer(invocation -> autoCommit[0]);
+        Mockito.doAnswer(invocation -> autoCommit[0] = (Boolean) invocation.getArguments()[0])
+                .when(connection).setAutoCommit(Mockito.anyBoolean());
+        Mockito.when(connection.unwrap(Connection.class)).thenReturn(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,73 @@
+package app.events;
+
+import app.metrics.MetricsRegistry;
+import app.models.Transaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+public class TransactionEventsTest {
+    private static final long WAIT_MILLIS = 1000;
+
+    private TransactionEvents events;
+    private EventSubscription subscription;
+
+    @Before
+    public void setUp() {
+        events = new TransactionEvents(new MetricsRegistry());
+        events.start(10);
+        subscription = events.subscribe(null);
+    }
+
+    @Test
+    public void testDispatchInIdOrder() throws InterruptedException {
+        long first = events.begin();
+        long second = events.begin();
+        //Transaction with higher id is committed first
+        events.publish(this.createTransaction(12));
+        events.end(second);
+        Assert.assertNull(subscription.poll(50));
+        Assert.assertEquals(10, events.getDispatchedId());
+
+        events.publish(this.createTransaction(11));
+        events.end(first);
+        Assert.assertEquals(11, subscription.poll(WAIT_MILLIS).getId());
+        Assert.assertEquals(12, subscription.poll(WAIT_MILLIS).getId());
+        Assert.assertEquals(12, events.getDispatchedId());
+    }
+
+    @Test
+    public void testDispatchWhenEarlierTransferFails() throws InterruptedException {
+        long failed = events.begin();
+        long committed = events.begin();
+        events.publish(this.createTransaction(12));
+        events.end(committed);
+        Assert.assertNull(subscription.poll(50));
+
+        events.end(failed);
+        Assert.assertEquals(12, subscription.poll(WAIT_MILLIS).getId());
+    }
+
+    @Test
+    public void testNotWaitForLaterTransfer() throws InterruptedException {
+        long committed = events.begin();
+        events.publish(this.createTransaction(11));
+        events.end(committed);
+        //Transfer started after transaction was published can only get higher id
+        long later = events.begin();
+        Assert.assertEquals(11, subscription.poll(WAIT_MILLIS).getId());
+        events.end(later);
+    }
+
+    private Transaction createTransaction(long id) {
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setTitle("Event");
+        transaction.setAmount(BigDecimal.ONE);
+        transaction.setSenderAccountId(1L);
+        transaction.setReceiverAccountId(2L);
+        return transaction;
+    }
+}
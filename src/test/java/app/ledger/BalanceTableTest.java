@@ -0,0 +1,122 @@
+package app.ledger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class BalanceTableTest {
+    private static final int OPERATIONS = 200_000;
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            //Small id range keeps probe sequences long and makes table grow around resize thresholds
+            int range = 8 << random.nextInt(8);
+            BalanceTable table = new BalanceTable();
+            Map<Long, long[]> expected = new HashMap<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long accountId = this.randomId(random, range);
+                if (random.nextInt(3) == 0) {
+                    table.remove(accountId);
+                    expected.remove(accountId);
+                } else {
+                    long balance = random.nextLong();
+                    long updated = random.nextLong();
+                    table.put(accountId, balance, updated);
+                    expected.put(accountId, new long[]{balance, updated});
+                }
+                this.assertEntry(table, expected, this.randomId(random, range), seed);
+            }
+            this.assertTable(table, expected, seed);
+        }
+    }
+
+    @Test
+    public void testCollidingIds() throws Exception {
+        //Ids with the last home slot of initial table, so probe sequence wraps around to the first slot
+        List<Long> ids = this.findCollidingIds(7, 7, 6);
+        for (int removed = 0; removed < ids.size(); removed++) {
+            BalanceTable table = new BalanceTable();
+            Map<Long, long[]> expected = new HashMap<>();
+            for (Long id : ids) {
+                table.put(id, id * 100, id);
+                expected.put(id, new long[]{id * 100, id});
+            }
+            table.remove(ids.get(removed));
+            expected.remove(ids.get(removed));
+            this.assertTable(table, expected, removed);
+            Assert.assertFalse(table.contains(ids.get(removed)));
+        }
+    }
+
+    @Test
+    public void testResizeKeepsEntries() {
+        BalanceTable table = new BalanceTable();
+        Map<Long, long[]> expected = new HashMap<>();
+        for (long id = -1000; id <= 1000; id++) {
+            table.put(id, -id, id);
+            expected.put(id, new long[]{-id, id});
+        }
+        table.put(Long.MAX_VALUE, 1, 2);
+        expected.put(Long.MAX_VALUE, new long[]{1, 2});
+        table.put(Long.MIN_VALUE + 1, 3, 4);
+        expected.put(Long.MIN_VALUE + 1, new long[]{3, 4});
+        this.assertTable(table, expected, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutEmptyMarkerId() {
+        new BalanceTable().put(Long.MIN_VALUE, 0, 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetMissingBalance() {
+        new BalanceTable().getBalance(1);
+    }
+
+    private long randomId(Random random, int range) {
+        switch (random.nextInt(20)) {
+            case 0:
+                return Long.MAX_VALUE - random.nextInt(4);
+            case 1:
+                return Long.MIN_VALUE + 1 + random.nextInt(4);
+            default:
+                return random.nextInt(range * 2) - range;
+        }
+    }
+
+    private List<Long> findCollidingIds(int home, int mask, int count) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = -1; ids.size() < count; id = id < 0 ? -id : -id - 1) {
+            int idHome = Whitebox.invokeMethod(BalanceTable.class, "home", id, mask);
+            if (idHome == home)
+                ids.add(id);
+        }
+        return ids;
+    }
+
+    private void assertTable(BalanceTable table, Map<Long, long[]> expected, long seed) {
+        Assert.assertEquals("seed " + seed, expected.size(), (int) Whitebox.getInternalState(table, "size"));
+        for (Long accountId : expected.keySet())
+            this.assertEntry(table, expected, accountId, seed);
+    }
+
+    private void assertEntry(BalanceTable table, Map<Long, long[]> expected, long accountId, long seed) {
+        String message = "seed " + seed + ", account " + accountId;
+        long[] expectedEntry = expected.get(accountId);
+        long[] entry = new long[BalanceTable.ENTRY_SIZE];
+        Assert.assertEquals(message, expectedEntry != null, table.contains(accountId));
+        Assert.assertEquals(message, expectedEntry != null, table.read(accountId, entry));
+        if (expectedEntry != null) {
+            Assert.assertEquals(message, expectedEntry[0], table.getBalance(accountId));
+            Assert.assertArrayEquals(message, expectedEntry, entry);
+        }
+    }
+}
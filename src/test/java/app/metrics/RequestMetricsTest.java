@@ -0,0 +1,67 @@
+package app.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RequestMetricsTest {
+    private static final String[] PATHS = {"", "/", "/account", "/account/", "/account/12", "/account/-12",
+            "/account/12/transaction", "/account/abc", "/account/a b",
+            "/transaction/async/3f2b8c1e-9a4d-4e6f-b1c2-7d8e9f0a1b2c", "/metrics",
+            "/account/12/transaction/summary", "/-", "//", "/account//12"};
+
+    @Test
+    public void testPathMatchesItsRoute() {
+        for (String path : PATHS)
+            Assert.assertTrue(path, RequestMetrics.matches(RequestMetrics.toRoute(path), path));
+    }
+
+    @Test
+    public void testPathDoesNotMatchOtherRoutes() {
+        for (String path : PATHS) {
+            for (String other : PATHS) {
+                String route = RequestMetrics.toRoute(other);
+                if (!route.equals(RequestMetrics.toRoute(path)))
+                    Assert.assertFalse(path + " " + route, RequestMetrics.matches(route, path));
+            }
+        }
+    }
+
+    @Test
+    public void testIdSegment() {
+        Assert.assertTrue(RequestMetrics.matches("/account/:id/transaction", "/account/42/transaction"));
+        Assert.assertFalse(RequestMetrics.matches("/account/:id", "/account/42x"));
+        Assert.assertFalse(RequestMetrics.matches("/account/:id", "/account"));
+        Assert.assertFalse(RequestMetrics.matches("/account", "/accounts"));
+    }
+
+    @Test
+    public void testUuidSegment() {
+        String path = "/transaction/async/" + UUID.randomUUID();
+        Assert.assertEquals("/transaction/async/:id", RequestMetrics.toRoute(path));
+        Assert.assertTrue(RequestMetrics.matches("/transaction/async/:id", path));
+        Assert.assertTrue(RequestMetrics.matches("/transaction/async/:id",
+                "/transaction/async/3F2B8C1E-9A4D-4E6F-B1C2-7D8E9F0A1B2C"));
+        //Segment of UUID length with misplaced dashes is not an id
+        Assert.assertEquals("/transaction/async/3f2b8c1e9-a4d-4e6f-b1c2-7d8e9f0a1b2c",
+                RequestMetrics.toRoute("/transaction/async/3f2b8c1e9-a4d-4e6f-b1c2-7d8e9f0a1b2c"));
+    }
+
+    @Test
+    public void testAsyncTransferPollsShareRoute() throws Exception {
+        RequestMetrics requestMetrics = new RequestMetrics();
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        Whitebox.setInternalState(requestMetrics, "metricsRegistry", metricsRegistry);
+        for (int i = 0; i < 500; i++)
+            Whitebox.invokeMethod(requestMetrics, "findRouteMetrics", "GET", "/transaction/async/" + UUID.randomUUID());
+
+        LongAdder routeCount = Whitebox.getInternalState(requestMetrics, "routeCount");
+        Assert.assertEquals(1, routeCount.sum());
+        Assert.assertEquals(1, metricsRegistry.getHistograms().size());
+        String histogram = metricsRegistry.getHistograms().keySet().iterator().next();
+        Assert.assertTrue(histogram, histogram.contains("/transaction/async/:id"));
+    }
+}
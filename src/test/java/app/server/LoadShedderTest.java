@@ -0,0 +1,124 @@
+package app.server;
+
+import app.constants.ConfigConstants;
+import app.constants.MetricConstants;
+import app.constants.RouteConstants;
+import app.db.DataSource;
+import app.metrics.MetricsRegistry;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+
+import java.util.concurrent.TimeUnit;
+
+import static app.constants.ErrorMessages.ERROR_SERVICE_UNAVAILABLE;
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("app.db.DataSource")
+public class LoadShedderTest {
+    private static final int POOL_SIZE = 10;
+
+    @Mock
+    private ServerThreadPool threadPoolMock;
+    @Mock
+    private DataSource dataSourceMock;
+    @Mock
+    private Request req;
+    @Mock
+    private Response res;
+
+    private MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private LoadShedder loadShedder;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        loadShedder = new LoadShedder();
+        Whitebox.setInternalState(loadShedder, "threadPool", threadPoolMock);
+        Whitebox.setInternalState(loadShedder, "dataSource", dataSourceMock);
+        Whitebox.setInternalState(loadShedder, "metricsRegistry", metricsRegistry);
+
+        when(req.pathInfo()).thenReturn(RouteConstants.Path.ACCOUNT);
+        when(dataSourceMock.getMaxPoolSize()).thenReturn(POOL_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        this.givenQueueWaitMillis(0);
+    }
+
+    @Test
+    public void testPassWhenNotSaturated() {
+        when(dataSourceMock.getThreadsAwaitingConnection()).thenReturn(POOL_SIZE - 1);
+
+        loadShedder.handle(req, res);
+
+        Mockito.verifyZeroInteractions(res);
+        Assert.assertEquals(0, metricsRegistry.counter(MetricConstants.SERVER_SHED_REQUESTS).sum());
+    }
+
+    @Test
+    public void testRejectWhenDbSaturated() {
+        when(dataSourceMock.getThreadsAwaitingConnection()).thenReturn(POOL_SIZE);
+
+        this.assertRejected();
+    }
+
+    @Test
+    public void testRejectAfterLongQueueWait() {
+        this.givenQueueWaitMillis(ConfigConstants.DEFAULT_SERVER_MAX_QUEUE_WAIT_MILLIS + 1);
+
+        this.assertRejected();
+    }
+
+    @Test
+    public void testVirtualThreadsWaitForDb() {
+        when(threadPoolMock.isVirtual()).thenReturn(true);
+        when(dataSourceMock.getThreadsAwaitingConnection()).thenReturn(POOL_SIZE * 10);
+
+        loadShedder.handle(req, res);
+
+        Mockito.verifyZeroInteractions(res);
+    }
+
+    @Test
+    public void testMonitoringIsNeverRejected() {
+        when(dataSourceMock.getThreadsAwaitingConnection()).thenReturn(POOL_SIZE);
+        for (String path : new String[]{RouteConstants.Path.HEALTH, RouteConstants.Path.METRICS}) {
+            when(req.pathInfo()).thenReturn(path);
+            loadShedder.handle(req, res);
+        }
+
+        Mockito.verifyZeroInteractions(res);
+    }
+
+    private void assertRejected() {
+        try {
+            loadShedder.handle(req, res);
+            Assert.fail("Request should be rejected");
+        } catch (HaltException e) {
+            Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, e.statusCode());
+            Assert.assertTrue(e.body().contains(ERROR_SERVICE_UNAVAILABLE));
+        }
+        Mockito.verify(res).header(RouteConstants.Header.RETRY_AFTER, "1");
+        Assert.assertEquals(1, metricsRegistry.counter(MetricConstants.SERVER_SHED_REQUESTS).sum());
+    }
+
+    private void givenQueueWaitMillis(long millis) {
+        ThreadLocal<Long> queueWait = Whitebox.getInternalState(ServerThreadPool.class, "currentQueueWaitNanos");
+        queueWait.set(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
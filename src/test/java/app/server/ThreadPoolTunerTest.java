@@ -0,0 +1,128 @@
+package app.server;
+
+import app.db.DataSource;
+import app.metrics.Histogram;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import static org.mockito.Mockito.when;
+
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("app.db.DataSource")
+public class ThreadPoolTunerTest {
+    private static final long SLOW_QUEUE_WAIT_MICROS = 20000;
+    private static final long FAST_QUEUE_WAIT_MICROS = 10;
+
+    @Mock
+    private ServerThreadPool threadPoolMock;
+    @Mock
+    private DataSource dataSourceMock;
+    @Mock
+    private Histogram queueWaitMock;
+
+    private ThreadPoolTuner tuner;
+    private int configuredMaxThreads = ServerThreadPool.getConfiguredMaxThreads();
+    private int maxMaxThreads;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        tuner = new ThreadPoolTuner();
+        Whitebox.setInternalState(tuner, "threadPool", threadPoolMock);
+        Whitebox.setInternalState(tuner, "dataSource", dataSourceMock);
+
+        when(threadPoolMock.getQueueWaitMicros()).thenReturn(queueWaitMock);
+        when(threadPoolMock.getMinThreads()).thenReturn(2);
+        when(dataSourceMock.getMaxPoolSize()).thenReturn(configuredMaxThreads);
+        maxMaxThreads = configuredMaxThreads + Runtime.getRuntime().availableProcessors();
+    }
+
+    @Test
+    public void testGrowWhenJobsWaitForBusyThreads() {
+        this.givenQueueWait(SLOW_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(configuredMaxThreads);
+        when(threadPoolMock.getIdleThreads()).thenReturn(0);
+
+        tuner.tune();
+
+        int newMaxThreads = this.captureMaxThreads();
+        Assert.assertTrue(newMaxThreads > configuredMaxThreads);
+        Assert.assertTrue(newMaxThreads <= maxMaxThreads);
+    }
+
+    @Test
+    public void testNotGrowBeyondDBPool() {
+        this.givenQueueWait(SLOW_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(maxMaxThreads);
+        when(threadPoolMock.getIdleThreads()).thenReturn(0);
+
+        tuner.tune();
+
+        Mockito.verify(threadPoolMock, Mockito.never()).setMaxThreads(Mockito.anyInt());
+    }
+
+    @Test
+    public void testNotGrowWhenThreadsAreIdle() {
+        this.givenQueueWait(SLOW_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(configuredMaxThreads);
+        when(threadPoolMock.getIdleThreads()).thenReturn(1);
+
+        tuner.tune();
+
+        Mockito.verify(threadPoolMock, Mockito.never()).setMaxThreads(Mockito.anyInt());
+    }
+
+    @Test
+    public void testShrinkWhenThreadsWaitForDB() {
+        this.givenQueueWait(SLOW_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(maxMaxThreads);
+        when(threadPoolMock.getIdleThreads()).thenReturn(0);
+        when(dataSourceMock.getThreadsAwaitingConnection()).thenReturn(1);
+
+        tuner.tune();
+
+        int newMaxThreads = this.captureMaxThreads();
+        Assert.assertTrue(newMaxThreads < maxMaxThreads);
+        Assert.assertTrue(newMaxThreads >= Math.min(configuredMaxThreads, maxMaxThreads));
+    }
+
+    @Test
+    public void testReturnToConfiguredSizeWhenJobsDoNotWait() {
+        this.givenQueueWait(FAST_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(configuredMaxThreads + 1);
+
+        tuner.tune();
+
+        Assert.assertEquals(configuredMaxThreads, this.captureMaxThreads());
+    }
+
+    @Test
+    public void testKeepConfiguredSizeWhenJobsDoNotWait() {
+        this.givenQueueWait(FAST_QUEUE_WAIT_MICROS);
+        when(threadPoolMock.getMaxThreads()).thenReturn(configuredMaxThreads);
+
+        tuner.tune();
+
+        Mockito.verify(threadPoolMock, Mockito.never()).setMaxThreads(Mockito.anyInt());
+    }
+
+    private void givenQueueWait(long meanWaitMicros) {
+        when(queueWaitMock.getCount()).thenReturn(10L);
+        when(queueWaitMock.getSum()).thenReturn(10 * meanWaitMicros);
+    }
+
+    private int captureMaxThreads() {
+        ArgumentCaptor<Integer> maxThreads = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(threadPoolMock).setMaxThreads(maxThreads.capture());
+        return maxThreads.getValue();
+    }
+}
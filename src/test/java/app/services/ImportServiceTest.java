@@ -0,0 +1,126 @@
+package app.services;
+
+import app.constants.ConfigConstants;
+import app.constants.ModelConstants;
+import app.exceptions.DataBaseException;
+import app.metrics.MetricsRegistry;
+import app.models.Account;
+import app.models.ImportResult;
+import app.transformers.RecordReader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static app.constants.ErrorMessages.ERROR_COULD_NOT_FIND_CUSTOMER;
+import static app.constants.ErrorMessages.ERROR_INVALID_PROPERTY_TITLE;
+
+public class ImportServiceTest {
+    private static final Long CUSTOMER_ID = 7L;
+    private static final Long UNKNOWN_CUSTOMER_ID = -155478L;
+
+    @Mock
+    private AccountService accountServiceMock;
+    @Mock
+    private CustomerService customerServiceMock;
+
+    private ImportService importService;
+
+    @Before
+    public void setUp() throws DataBaseException {
+        MockitoAnnotations.initMocks(this);
+        System.setProperty(ConfigConstants.VAR_IMPORT_BATCH_SIZE, "3");
+        System.setProperty(ConfigConstants.VAR_IMPORT_MAX_ERRORS, "2");
+        importService = new ImportService();
+        Whitebox.setInternalState(importService, "accountService", accountServiceMock);
+        Whitebox.setInternalState(importService, "customerService", customerServiceMock);
+        Whitebox.setInternalState(importService, "metricsRegistry", new MetricsRegistry());
+
+        Mockito.when(customerServiceMock.getExistingCustomerIds(Mockito.anyCollectionOf(Long.class)))
+                .thenAnswer(invocation -> {
+                    Set<Long> result = new HashSet<>((Collection<Long>) invocation.getArguments()[0]);
+                    result.remove(UNKNOWN_CUSTOMER_ID);
+                    return result;
+                });
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ConfigConstants.VAR_IMPORT_BATCH_SIZE);
+        System.clearProperty(ConfigConstants.VAR_IMPORT_MAX_ERRORS);
+    }
+
+    @Test
+    public void testBatchesAndLowestErrorLines() throws Exception {
+        //Unknown customer on line 2 is found only when batch is written, after invalid lines 3 and 4 were read
+        StringBuilder csv = new StringBuilder("customerId,title\n")
+                .append(UNKNOWN_CUSTOMER_ID).append(",Unknown customer\n")
+                .append(CUSTOMER_ID).append(",\n")
+                .append(CUSTOMER_ID).append(",\n");
+        for (int i = 5; i <= 10; i++)
+            csv.append(CUSTOMER_ID).append(",Imported ").append(i).append("\n");
+
+        ImportResult result = importService.importAccounts(this.createReader(csv.toString()));
+
+        Assert.assertEquals(6, result.getImported());
+        Assert.assertEquals(3, result.getFailed());
+        Assert.assertEquals(2, result.getErrors().size());
+        Assert.assertEquals(2, result.getErrors().get(0).getLine());
+        Assert.assertEquals(ERROR_COULD_NOT_FIND_CUSTOMER, result.getErrors().get(0).getError());
+        Assert.assertEquals(3, result.getErrors().get(1).getLine());
+        Assert.assertEquals(ERROR_INVALID_PROPERTY_TITLE, result.getErrors().get(1).getError());
+
+        //Batches of lines 2, 5, 6 and 7, 8, 9 and last incomplete batch of line 10
+        ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(accountServiceMock, Mockito.times(3)).createAccounts(batches.capture());
+        List<List<String>> titles = batches.getAllValues().stream().map(batch -> ((List<Account>) batch).stream()
+                .map(Account::getTitle).collect(Collectors.toList())).collect(Collectors.toList());
+        Assert.assertEquals("[[Imported 5, Imported 6], [Imported 7, Imported 8, Imported 9], [Imported 10]]",
+                titles.toString());
+        Mockito.verify(customerServiceMock, Mockito.times(3)).getExistingCustomerIds(Mockito.anyCollectionOf(
+                Long.class));
+        ((List<Account>) batches.getAllValues().get(0)).forEach(account ->
+                Assert.assertEquals(ModelConstants.ACCOUNT_DEFAULT_BALANCE, account.getBalance()));
+    }
+
+    @Test
+    public void testFailedBatchErrorsKeepLowestLines() throws Exception {
+        //Whole first batch of lines 2, 4 and 5 fails in DB after invalid line 3 was listed
+        Mockito.doThrow(new DataBaseException("Batch failed")).doNothing().when(accountServiceMock)
+                .createAccounts(Mockito.anyListOf(Account.class));
+        String csv = "customerId,title\n" +
+                CUSTOMER_ID + ",First\n" +
+                CUSTOMER_ID + ",\n" +
+                CUSTOMER_ID + ",Second\n" +
+                CUSTOMER_ID + ",Third\n" +
+                CUSTOMER_ID + ",Fourth\n";
+
+        ImportResult result = importService.importAccounts(this.createReader(csv));
+
+        Assert.assertEquals(1, result.getImported());
+        Assert.assertEquals(4, result.getFailed());
+        Assert.assertEquals(2, result.getErrors().size());
+        Assert.assertEquals(2, result.getErrors().get(0).getLine());
+        Assert.assertEquals("Batch failed", result.getErrors().get(0).getError());
+        Assert.assertEquals(3, result.getErrors().get(1).getLine());
+        Assert.assertEquals(ERROR_INVALID_PROPERTY_TITLE, result.getErrors().get(1).getError());
+    }
+
+    private RecordReader<Account> createReader(String csv) {
+        return new RecordReader<>(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                RecordReader.Format.CSV, Account.class, ConfigConstants.DEFAULT_IMPORT_MAX_LINE_LENGTH);
+    }
+}
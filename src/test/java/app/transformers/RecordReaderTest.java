@@ -0,0 +1,142 @@
+package app.transformers;
+
+import app.exceptions.InvalidRequestData;
+import app.models.Customer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static app.constants.ErrorMessages.ERROR_INVALID_CSV_HEADER;
+import static app.constants.ErrorMessages.ERROR_INVALID_REQUEST_DATA;
+import static app.constants.ErrorMessages.ERROR_LINE_TOO_LONG;
+
+public class RecordReaderTest {
+    private static final int MAX_LINE_LENGTH = 40;
+
+    @Test
+    public void testQuotedValues() throws Exception {
+        RecordReader<Customer> reader = this.createCsvReader("firstName,lastName\n" +
+                "\"Anna, Marie\",\"O\"\"Neil\"\n" +
+                " Thomas ,\"\"\n" +
+                ",Missing\n");
+
+        Customer customer = this.nextRecord(reader, 2);
+        Assert.assertEquals("Anna, Marie", customer.getFirstName());
+        Assert.assertEquals("O\"Neil", customer.getLastName());
+        //Unquoted values are trimmed, quoted empty value is kept
+        customer = this.nextRecord(reader, 3);
+        Assert.assertEquals("Thomas", customer.getFirstName());
+        Assert.assertEquals("", customer.getLastName());
+        //Empty unquoted value is missing
+        customer = this.nextRecord(reader, 4);
+        Assert.assertNull(customer.getFirstName());
+        Assert.assertEquals("Missing", customer.getLastName());
+        Assert.assertFalse(reader.next());
+    }
+
+    @Test
+    public void testInvalidCsvLines() throws Exception {
+        RecordReader<Customer> reader = this.createCsvReader("firstName,lastName\n" +
+                "\"Anna,Doe\n" +
+                "Anna\n" +
+                "John,Doe\n");
+
+        this.assertRecordError(reader, 2, ERROR_INVALID_REQUEST_DATA);
+        this.assertRecordError(reader, 3, ERROR_INVALID_REQUEST_DATA);
+        Assert.assertEquals("John", this.nextRecord(reader, 4).getFirstName());
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        RecordReader<Customer> reader = this.createCsvReader("\uFEFFfirstName,lastName\nJohn,Doe\n");
+
+        Assert.assertEquals("John", this.nextRecord(reader, 2).getFirstName());
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        RecordReader<Customer> reader = this.createCsvReader("firstName,lastName\r\n" +
+                "John,Doe\r\n" +
+                "\r\n" +
+                "Jane,Doe\r" +
+                "Mike,Doe");
+
+        Assert.assertEquals("Doe", this.nextRecord(reader, 2).getLastName());
+        //Blank line is skipped, but counted
+        Assert.assertEquals("Jane", this.nextRecord(reader, 4).getFirstName());
+        Assert.assertEquals("Mike", this.nextRecord(reader, 5).getFirstName());
+        Assert.assertFalse(reader.next());
+    }
+
+    @Test
+    public void testTooLongLine() throws Exception {
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() <= MAX_LINE_LENGTH)
+            longName.append("Long name ");
+        RecordReader<Customer> reader = this.createCsvReader("firstName,lastName\r\n" +
+                longName + ",Doe\r\n" +
+                "John,Doe\r\n");
+
+        //Rest of long line is skipped, next line is read as usual
+        this.assertRecordError(reader, 2, String.format(ERROR_LINE_TOO_LONG, MAX_LINE_LENGTH));
+        Assert.assertEquals("John", this.nextRecord(reader, 3).getFirstName());
+        Assert.assertFalse(reader.next());
+    }
+
+    @Test
+    public void testTooLongNdjsonLine() throws Exception {
+        String line = "{\"firstName\":\"John\",\"lastName\":\"Doe\"}\n";
+        StringBuilder longLine = new StringBuilder("{\"firstName\":\"");
+        while (longLine.length() <= MAX_LINE_LENGTH)
+            longLine.append("Long name ");
+        longLine.append("\",\"lastName\":\"Doe\"}\n");
+        RecordReader<Customer> reader = new RecordReader<>(this.createStream(longLine + line),
+                RecordReader.Format.NDJSON, Customer.class, MAX_LINE_LENGTH);
+
+        this.assertRecordError(reader, 1, String.format(ERROR_LINE_TOO_LONG, MAX_LINE_LENGTH));
+        Assert.assertEquals("John", this.nextRecord(reader, 2).getFirstName());
+    }
+
+    @Test
+    public void testTooLongHeader() throws IOException {
+        StringBuilder header = new StringBuilder("firstName");
+        while (header.length() <= MAX_LINE_LENGTH)
+            header.append(",lastName");
+        RecordReader<Customer> reader = this.createCsvReader(header + "\nJohn,Doe\n");
+
+        try {
+            reader.next();
+            Assert.fail("Header should be rejected");
+        } catch (InvalidRequestData e) {
+            Assert.assertEquals(ERROR_INVALID_CSV_HEADER, e.getMessage());
+        }
+    }
+
+    private Customer nextRecord(RecordReader<Customer> reader, int line) throws Exception {
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(line, reader.getLine());
+        return reader.getRecord();
+    }
+
+    private void assertRecordError(RecordReader<Customer> reader, int line, String error) throws Exception {
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(line, reader.getLine());
+        try {
+            reader.getRecord();
+            Assert.fail("Line " + line + " should be rejected");
+        } catch (InvalidRequestData e) {
+            Assert.assertEquals(error, e.getMessage());
+        }
+    }
+
+    private RecordReader<Customer> createCsvReader(String csv) {
+        return new RecordReader<>(this.createStream(csv), RecordReader.Format.CSV, Customer.class, MAX_LINE_LENGTH);
+    }
+
+    private ByteArrayInputStream createStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}